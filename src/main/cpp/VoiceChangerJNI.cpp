@@ -2,6 +2,7 @@
 #include <jni.h>
 #include <cstring>
 #include <memory>
+#include <string>
 #include <vector>
 
 // JNI method implementations
@@ -47,6 +48,24 @@ Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_configureProcessor(
     }
 }
 
+JNIEXPORT jboolean JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_configureTierNative(JNIEnv *env, jobject obj, jlong handle, jint sampleRate, jint maxBufferLength, jint blockSamples, jint intervalSamples, jboolean splitComputation) {
+    if (handle == 0) return JNI_FALSE;
+
+    try {
+        VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+        processor->configure(static_cast<float>(sampleRate), static_cast<size_t>(maxBufferLength),
+                             blockSamples, intervalSamples, splitComputation == JNI_TRUE);
+        return JNI_TRUE;
+    } catch (const std::exception& e) {
+        jclass exClass = env->FindClass("java/lang/RuntimeException");
+        if (exClass != nullptr) {
+            env->ThrowNew(exClass, e.what());
+        }
+        return JNI_FALSE;
+    }
+}
+
 JNIEXPORT jshortArray JNICALL
 Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_processAudioNative(JNIEnv *env, jobject obj, jlong handle, jshortArray inputBuffer, jint length) {
     if (handle == 0 || inputBuffer == nullptr || length <= 0) {
@@ -116,4 +135,290 @@ Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_setSettings(JNIEnv
     }
 }
 
+JNIEXPORT void JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_resetProcessor(JNIEnv *env, jobject obj, jlong handle) {
+    if (handle == 0) return;
+
+    VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+    processor->reset();
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_processBlockNative(JNIEnv *env, jobject obj, jlong handle, jshortArray inputBuffer, jint inputOffset, jshortArray outputBuffer, jint outputOffset, jint length) {
+    if (handle == 0 || inputBuffer == nullptr || outputBuffer == nullptr || length <= 0) {
+        return JNI_FALSE;
+    }
+
+    try {
+        VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+        if (static_cast<size_t>(length) > processor->getMaxBufferLength()) {
+            jclass exClass = env->FindClass("java/lang/IllegalArgumentException");
+            if (exClass != nullptr) {
+                env->ThrowNew(exClass, "Block length exceeds configured buffer length");
+            }
+            return JNI_FALSE;
+        }
+
+        // Stage the block in the processor's own buffer and process it in place - no allocation per block
+        int16_t* block = processor->blockBuffer();
+        env->GetShortArrayRegion(inputBuffer, inputOffset, length, reinterpret_cast<jshort*>(block));
+        if (env->ExceptionCheck()) {
+            return JNI_FALSE;
+        }
+
+        processor->processBlock(block, block, length);
+
+        env->SetShortArrayRegion(outputBuffer, outputOffset, length, reinterpret_cast<const jshort*>(block));
+        return env->ExceptionCheck() ? JNI_FALSE : JNI_TRUE;
+
+    } catch (const std::exception& e) {
+        jclass exClass = env->FindClass("java/lang/RuntimeException");
+        if (exClass != nullptr) {
+            env->ThrowNew(exClass, e.what());
+        }
+        return JNI_FALSE;
+    }
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_processDirectNative(JNIEnv *env, jobject obj, jlong handle, jobject directBuffer, jint byteOffset, jint length) {
+    if (handle == 0 || directBuffer == nullptr || length <= 0) {
+        return JNI_FALSE;
+    }
+
+    try {
+        VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+        if (static_cast<size_t>(length) > processor->getMaxBufferLength()) {
+            jclass exClass = env->FindClass("java/lang/IllegalArgumentException");
+            if (exClass != nullptr) {
+                env->ThrowNew(exClass, "Block length exceeds configured buffer length");
+            }
+            return JNI_FALSE;
+        }
+
+        char* address = static_cast<char*>(env->GetDirectBufferAddress(directBuffer));
+        if (address == nullptr) {
+            return JNI_FALSE;
+        }
+
+        // Samples are read and written straight from the caller's off-heap buffer
+        int16_t* samples = reinterpret_cast<int16_t*>(address + byteOffset);
+        processor->processBlock(samples, samples, length);
+        return JNI_TRUE;
+
+    } catch (const std::exception& e) {
+        jclass exClass = env->FindClass("java/lang/RuntimeException");
+        if (exClass != nullptr) {
+            env->ThrowNew(exClass, e.what());
+        }
+        return JNI_FALSE;
+    }
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_processCriticalNative(JNIEnv *env, jobject obj, jlong handle, jshortArray buffer, jint offset, jint length) {
+    if (handle == 0 || buffer == nullptr || length <= 0) {
+        return JNI_FALSE;
+    }
+
+    VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+    if (static_cast<size_t>(length) > processor->getMaxBufferLength()) {
+        jclass exClass = env->FindClass("java/lang/IllegalArgumentException");
+        if (exClass != nullptr) {
+            env->ThrowNew(exClass, "Block length exceeds configured buffer length");
+        }
+        return JNI_FALSE;
+    }
+
+    // No JNI calls and no exceptions may escape between Get and Release, so any error is
+    // recorded and rethrown once the array is released
+    const char* error = nullptr;
+    std::string message;
+    jshort* samples = static_cast<jshort*>(env->GetPrimitiveArrayCritical(buffer, nullptr));
+    if (samples == nullptr) {
+        return JNI_FALSE;
+    }
+    try {
+        int16_t* block = reinterpret_cast<int16_t*>(samples + offset);
+        processor->processBlock(block, block, length);
+    } catch (const std::exception& e) {
+        message = e.what();
+        error = message.c_str();
+    }
+    env->ReleasePrimitiveArrayCritical(buffer, samples, error == nullptr ? 0 : JNI_ABORT);
+
+    if (error != nullptr) {
+        jclass exClass = env->FindClass("java/lang/RuntimeException");
+        if (exClass != nullptr) {
+            env->ThrowNew(exClass, error);
+        }
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+JNIEXPORT jshortArray JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_processBatchNative(JNIEnv *env, jobject obj, jlong handle, jshortArray packedInput, jintArray offsets, jintArray lengths, jfloatArray settings) {
+    if (handle == 0 || packedInput == nullptr || offsets == nullptr || lengths == nullptr || settings == nullptr) {
+        return nullptr;
+    }
+
+    try {
+        VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+        jsize clipCount = env->GetArrayLength(offsets);
+        jsize inputLength = env->GetArrayLength(packedInput);
+        if (env->GetArrayLength(lengths) != clipCount || env->GetArrayLength(settings) != clipCount * 3) {
+            jclass exClass = env->FindClass("java/lang/IllegalArgumentException");
+            if (exClass != nullptr) {
+                env->ThrowNew(exClass, "offsets, lengths and settings (3 per clip) must describe the same clips");
+            }
+            return nullptr;
+        }
+
+        // Pull all descriptors and samples across in one copy each
+        std::vector<jint> clipOffsets(clipCount), clipLengths(clipCount);
+        std::vector<jfloat> clipSettings(clipCount * 3);
+        std::vector<int16_t> input(inputLength);
+        env->GetIntArrayRegion(offsets, 0, clipCount, clipOffsets.data());
+        env->GetIntArrayRegion(lengths, 0, clipCount, clipLengths.data());
+        env->GetFloatArrayRegion(settings, 0, clipCount * 3, clipSettings.data());
+        env->GetShortArrayRegion(packedInput, 0, inputLength, reinterpret_cast<jshort*>(input.data()));
+
+        size_t tail = processor->tailLength();
+        size_t outputLength = 0;
+        for (jsize i = 0; i < clipCount; ++i) {
+            if (clipOffsets[i] < 0 || clipLengths[i] < 0 || static_cast<jlong>(clipOffsets[i]) + clipLengths[i] > inputLength) {
+                jclass exClass = env->FindClass("java/lang/IndexOutOfBoundsException");
+                if (exClass != nullptr) {
+                    env->ThrowNew(exClass, "Clip lies outside the packed input");
+                }
+                return nullptr;
+            }
+            outputLength += clipLengths[i] + tail;
+        }
+
+        // Every clip is a fresh stream with its own settings; outputs are packed back to back
+        std::vector<int16_t> output(outputLength);
+        size_t outputOffset = 0;
+        for (jsize i = 0; i < clipCount; ++i) {
+            processor->reset();
+            processor->setSettings(clipSettings[i * 3], clipSettings[i * 3 + 1], clipSettings[i * 3 + 2]);
+            outputOffset += processor->processStream(input.data() + clipOffsets[i], clipLengths[i], output.data() + outputOffset);
+        }
+        processor->reset();
+
+        jshortArray outputArray = env->NewShortArray(static_cast<jsize>(outputLength));
+        if (outputArray == nullptr) {
+            return nullptr;
+        }
+        env->SetShortArrayRegion(outputArray, 0, static_cast<jsize>(outputLength), reinterpret_cast<const jshort*>(output.data()));
+        return outputArray;
+
+    } catch (const std::exception& e) {
+        jclass exClass = env->FindClass("java/lang/RuntimeException");
+        if (exClass != nullptr) {
+            env->ThrowNew(exClass, e.what());
+        }
+        return nullptr;
+    }
+}
+
+JNIEXPORT jshortArray JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_processMultiNative(JNIEnv *env, jobject obj, jlong handle, jshortArray inputBuffer, jint inputOffset, jint length, jfloatArray settings) {
+    if (handle == 0 || inputBuffer == nullptr || settings == nullptr) {
+        return nullptr;
+    }
+
+    try {
+        VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+        jsize settingsLength = env->GetArrayLength(settings);
+        if (settingsLength == 0 || settingsLength % 3 != 0) {
+            jclass exClass = env->FindClass("java/lang/IllegalArgumentException");
+            if (exClass != nullptr) {
+                env->ThrowNew(exClass, "settings must hold shift, formant and base for each voice");
+            }
+            return nullptr;
+        }
+        if (inputOffset < 0 || length < 0 || static_cast<jlong>(inputOffset) + length > env->GetArrayLength(inputBuffer)) {
+            jclass exClass = env->FindClass("java/lang/IndexOutOfBoundsException");
+            if (exClass != nullptr) {
+                env->ThrowNew(exClass, "Input range lies outside the array");
+            }
+            return nullptr;
+        }
+
+        size_t voiceCount = settingsLength / 3;
+        std::vector<jfloat> voiceSettings(settingsLength);
+        std::vector<int16_t> input(length);
+        env->GetFloatArrayRegion(settings, 0, settingsLength, voiceSettings.data());
+        env->GetShortArrayRegion(inputBuffer, inputOffset, length, reinterpret_cast<jshort*>(input.data()));
+
+        // The input is analysed once; every voice is rendered from that analysis
+        size_t outputLength = voiceCount * (length + processor->tailLength());
+        std::vector<int16_t> output(outputLength);
+        processor->processMulti(input.data(), length, voiceSettings.data(), voiceCount, output.data());
+
+        jshortArray outputArray = env->NewShortArray(static_cast<jsize>(outputLength));
+        if (outputArray == nullptr) {
+            return nullptr;
+        }
+        env->SetShortArrayRegion(outputArray, 0, static_cast<jsize>(outputLength), reinterpret_cast<const jshort*>(output.data()));
+        return outputArray;
+
+    } catch (const std::exception& e) {
+        jclass exClass = env->FindClass("java/lang/RuntimeException");
+        if (exClass != nullptr) {
+            env->ThrowNew(exClass, e.what());
+        }
+        return nullptr;
+    }
+}
+
+JNIEXPORT jint JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_flushNative(JNIEnv *env, jobject obj, jlong handle, jshortArray outputBuffer, jint outputOffset) {
+    if (handle == 0 || outputBuffer == nullptr) {
+        return 0;
+    }
+
+    try {
+        VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+        int16_t* block = processor->blockBuffer();
+        size_t written = processor->flush(block);
+
+        env->SetShortArrayRegion(outputBuffer, outputOffset, static_cast<jsize>(written), reinterpret_cast<const jshort*>(block));
+        return env->ExceptionCheck() ? 0 : static_cast<jint>(written);
+
+    } catch (const std::exception& e) {
+        jclass exClass = env->FindClass("java/lang/RuntimeException");
+        if (exClass != nullptr) {
+            env->ThrowNew(exClass, e.what());
+        }
+        return 0;
+    }
+}
+
+JNIEXPORT jint JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_tailLengthNative(JNIEnv *env, jobject obj, jlong handle) {
+    if (handle == 0) return 0;
+
+    VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+    return static_cast<jint>(processor->tailLength());
+}
+
+JNIEXPORT jint JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_inputLatencyNative(JNIEnv *env, jobject obj, jlong handle) {
+    if (handle == 0) return 0;
+
+    VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+    return static_cast<jint>(processor->inputLatency());
+}
+
+JNIEXPORT jint JNICALL
+Java_com_example_voicechanger_nativelib_NativeVoiceProcessor_outputLatencyNative(JNIEnv *env, jobject obj, jlong handle) {
+    if (handle == 0) return 0;
+
+    VoiceProcessor* processor = reinterpret_cast<VoiceProcessor*>(handle);
+    return static_cast<jint>(processor->outputLatency());
+}
+
 } // extern "C"
\ No newline at end of file
@@ -9,6 +9,10 @@ VoiceProcessor::VoiceProcessor()
     , configured(false)
     , sampleRate(44100.0f)
     , maxBufferLength(8192)
+    , blockSamples(0)
+    , intervalSamples(0)
+    , splitComputation(true)
+    , groupConfigured(false)
     , currentShift(0.0f)
     , currentFormant(0.0f)
     , currentBase(100.0f) {
@@ -17,15 +21,30 @@ VoiceProcessor::VoiceProcessor()
 VoiceProcessor::~VoiceProcessor() = default;
 
 void VoiceProcessor::configure(float sampleRate, size_t maxBufferLength) {
+    // Standard tier: 60 ms blocks, 15 ms interval
+    configure(sampleRate, maxBufferLength,
+              static_cast<int>(sampleRate * 0.06f), static_cast<int>(sampleRate * 0.015f), true);
+}
+
+void VoiceProcessor::configure(float sampleRate, size_t maxBufferLength, int blockSamples, int intervalSamples, bool splitComputation) {
     this->sampleRate = sampleRate;
     this->maxBufferLength = maxBufferLength;
+    this->blockSamples = blockSamples;
+    this->intervalSamples = intervalSamples;
+    this->splitComputation = splitComputation;
+    groupConfigured = false;
+
+    if (blockSamples <= 0 || intervalSamples <= 0 || intervalSamples > blockSamples) {
+        configured = false;
+        throw std::runtime_error("Invalid STFT block/interval sizes");
+    }
 
     try {
         // Configure the StretchVocal processor
-        stretcher->configure(sampleRate, maxBufferLength);
+        stretcher->configure(sampleRate, maxBufferLength, blockSamples, intervalSamples, splitComputation);
 
-        // Allocate conversion buffers
-        int16Buffer.resize(maxBufferLength);
+        // Allocate conversion buffers (large enough for a block or the flushed tail)
+        int16Buffer.resize(std::max(maxBufferLength, stretcher->tailLength()));
 
         configured = true;
 
@@ -82,6 +101,84 @@ std::vector<int16_t> VoiceProcessor::process(const int16_t* inputBuffer, size_t
     }
 }
 
+void VoiceProcessor::processBlock(const int16_t* inputBuffer, int16_t* outputBuffer, size_t length) {
+    if (!configured) {
+        throw std::runtime_error("VoiceProcessor not configured");
+    }
+
+    if (length > maxBufferLength) {
+        throw std::runtime_error("Block length exceeds maximum configured length");
+    }
+
+    stretcher->process(inputBuffer, outputBuffer, length);
+}
+
+size_t VoiceProcessor::flush(int16_t* outputBuffer) {
+    if (!configured) {
+        throw std::runtime_error("VoiceProcessor not configured");
+    }
+
+    return stretcher->flush(outputBuffer);
+}
+
+size_t VoiceProcessor::processStream(const int16_t* inputBuffer, size_t length, int16_t* outputBuffer) {
+    for (size_t offset = 0; offset < length; offset += maxBufferLength) {
+        size_t blockLength = std::min(maxBufferLength, length - offset);
+        processBlock(inputBuffer + offset, outputBuffer + offset, blockLength);
+    }
+    return length + flush(outputBuffer + length);
+}
+
+size_t VoiceProcessor::processMulti(const int16_t* inputBuffer, size_t length, const float* settings, size_t voiceCount,
+                                    int16_t* outputBuffer) {
+    if (!configured) {
+        throw std::runtime_error("VoiceProcessor not configured");
+    }
+    if (voiceCount == 0) {
+        return 0;
+    }
+
+    if (!group) {
+        group = std::make_unique<StretchVocalGroup>();
+    }
+    if (!groupConfigured || group->size() != voiceCount) {
+        group->configure(voiceCount, sampleRate, maxBufferLength, blockSamples, intervalSamples, splitComputation);
+        groupConfigured = true;
+    }
+
+    group->reset();
+    for (size_t v = 0; v < voiceCount; ++v) {
+        group->settings(v, settings[v * 3], settings[v * 3 + 1], settings[v * 3 + 2]);
+    }
+
+    size_t voiceLength = length + group->tailLength();
+    std::vector<int16_t*> outputs(voiceCount);
+    for (size_t offset = 0; offset < length; offset += maxBufferLength) {
+        size_t blockLength = std::min(maxBufferLength, length - offset);
+        for (size_t v = 0; v < voiceCount; ++v) {
+            outputs[v] = outputBuffer + v * voiceLength + offset;
+        }
+        group->process(inputBuffer + offset, outputs.data(), blockLength);
+    }
+    for (size_t v = 0; v < voiceCount; ++v) {
+        outputs[v] = outputBuffer + v * voiceLength + length;
+    }
+    group->flush(outputs.data());
+    return voiceLength;
+}
+
+size_t VoiceProcessor::tailLength() const {
+    return configured ? stretcher->tailLength() : 0;
+}
+
+size_t VoiceProcessor::inputLatency() const {
+    return configured ? stretcher->inputLatency() : 0;
+}
+
+size_t VoiceProcessor::outputLatency() const {
+    return configured ? stretcher->outputLatency() : 0;
+}
+
 void VoiceProcessor::reset() {
     if (!configured) return;
 
@@ -90,4 +187,103 @@ void VoiceProcessor::reset() {
     } catch (const std::exception& e) {
         // Log error but don't throw - reset should be robust
     }
-}
\ No newline at end of file
+}
+
+// ------------------- C ABI (FFM backend) -------------------
+extern "C" {
+
+void* vc_create() {
+    try {
+        return new VoiceProcessor();
+    } catch (...) {
+        return nullptr;
+    }
+}
+
+void vc_destroy(void* handle) {
+    delete static_cast<VoiceProcessor*>(handle);
+}
+
+int32_t vc_configure(void* handle, float sampleRate, int32_t maxBufferLength) {
+    if (handle == nullptr || maxBufferLength <= 0) return 0;
+    try {
+        static_cast<VoiceProcessor*>(handle)->configure(sampleRate, static_cast<size_t>(maxBufferLength));
+        return 1;
+    } catch (...) {
+        return 0;
+    }
+}
+
+int32_t vc_configure_tier(void* handle, float sampleRate, int32_t maxBufferLength,
+                          int32_t blockSamples, int32_t intervalSamples, int32_t splitComputation) {
+    if (handle == nullptr || maxBufferLength <= 0) return 0;
+    try {
+        static_cast<VoiceProcessor*>(handle)->configure(sampleRate, static_cast<size_t>(maxBufferLength),
+                                                        blockSamples, intervalSamples, splitComputation != 0);
+        return 1;
+    } catch (...) {
+        return 0;
+    }
+}
+
+int32_t vc_set_settings(void* handle, float shiftSemitones, float formantSemitones, float formantBaseHz) {
+    if (handle == nullptr) return 0;
+    try {
+        static_cast<VoiceProcessor*>(handle)->setSettings(shiftSemitones, formantSemitones, formantBaseHz);
+        return 1;
+    } catch (...) {
+        return 0;
+    }
+}
+
+int32_t vc_process(void* handle, const int16_t* input, int16_t* output, int32_t length) {
+    if (handle == nullptr || input == nullptr || output == nullptr || length < 0) return 0;
+    try {
+        static_cast<VoiceProcessor*>(handle)->processBlock(input, output, static_cast<size_t>(length));
+        return 1;
+    } catch (...) {
+        return 0;
+    }
+}
+
+int32_t vc_flush(void* handle, int16_t* output) {
+    if (handle == nullptr || output == nullptr) return 0;
+    try {
+        return static_cast<int32_t>(static_cast<VoiceProcessor*>(handle)->flush(output));
+    } catch (...) {
+        return 0;
+    }
+}
+
+int32_t vc_process_multi(void* handle, const int16_t* input, int32_t length,
+                         const float* settings, int32_t voiceCount, int16_t* output) {
+    if (handle == nullptr || input == nullptr || settings == nullptr || output == nullptr || length < 0 || voiceCount <= 0) return 0;
+    try {
+        return static_cast<int32_t>(static_cast<VoiceProcessor*>(handle)->processMulti(
+                input, static_cast<size_t>(length), settings, static_cast<size_t>(voiceCount), output));
+    } catch (...) {
+        return 0;
+    }
+}
+
+int32_t vc_tail_length(void* handle) {
+    if (handle == nullptr) return 0;
+    return static_cast<int32_t>(static_cast<VoiceProcessor*>(handle)->tailLength());
+}
+
+int32_t vc_input_latency(void* handle) {
+    if (handle == nullptr) return 0;
+    return static_cast<int32_t>(static_cast<VoiceProcessor*>(handle)->inputLatency());
+}
+
+int32_t vc_output_latency(void* handle) {
+    if (handle == nullptr) return 0;
+    return static_cast<int32_t>(static_cast<VoiceProcessor*>(handle)->outputLatency());
+}
+
+void vc_reset(void* handle) {
+    if (handle == nullptr) return;
+    static_cast<VoiceProcessor*>(handle)->reset();
+}
+
+} // extern "C"
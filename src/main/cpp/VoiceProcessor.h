@@ -6,8 +6,9 @@
 #include <vector>
 #include <memory>
 
-// Forward declaration
+// Forward declarations
 class StretchVocal;
+class StretchVocalGroup;
 
 class VoiceProcessor {
 public:
@@ -15,9 +16,31 @@ public:
     ~VoiceProcessor();
 
     void configure(float sampleRate, size_t maxBufferLength);
+    // Quality tier: STFT block/interval sizes in samples (see StretchVocal::configure)
+    void configure(float sampleRate, size_t maxBufferLength, int blockSamples, int intervalSamples, bool splitComputation);
     void setSettings(float shiftSemitones, float formantSemitones, float formantBaseHz);
     std::vector<int16_t> process(const int16_t* inputBuffer, size_t length);
     void reset();
+
+    // Streaming: push blocks of at most maxBufferLength samples, then flush the tail
+    void processBlock(const int16_t* inputBuffer, int16_t* outputBuffer, size_t length);
+    size_t flush(int16_t* outputBuffer);
+    size_t tailLength() const;
+    // tailLength() split into its two parts; output lags input by their sum
+    size_t inputLatency() const;
+    size_t outputLatency() const;
+
+    // Processes a complete clip as one stream (blocks + flush); output must hold length + tailLength() samples
+    size_t processStream(const int16_t* inputBuffer, size_t length, int16_t* outputBuffer);
+    // Renders a complete clip with several settings (3 floats per voice: shift, formant, base) at once,
+    // sharing one STFT analysis between the voices. Output holds voiceCount * (length + tailLength())
+    // samples, voice after voice. The single stream above is not touched.
+    size_t processMulti(const int16_t* inputBuffer, size_t length, const float* settings, size_t voiceCount,
+                        int16_t* outputBuffer);
+    size_t getMaxBufferLength() const { return maxBufferLength; }
+
+    // Scratch space of at least max(maxBufferLength, tailLength()) samples for callers that need to stage a block
+    int16_t* blockBuffer() { return int16Buffer.data(); }
     bool isConfigured() const { return configured; }
 
 private:
@@ -25,6 +48,13 @@ private:
     bool configured;
     float sampleRate;
     size_t maxBufferLength;
+    int blockSamples;
+    int intervalSamples;
+    bool splitComputation;
+
+    // Voices for processMulti(), created on first use and rebuilt when the voice count or configuration changes
+    std::unique_ptr<StretchVocalGroup> group;
+    bool groupConfigured;
 
     // Current settings
     float currentShift;
@@ -35,4 +65,24 @@ private:
     std::vector<int16_t> int16Buffer;
 };
 
+// Plain C ABI for the Foreign Function & Memory (Panama) backend.
+// All functions return 0 / nullptr on failure and never let a C++ exception escape.
+extern "C" {
+    void* vc_create();
+    void vc_destroy(void* handle);
+    int32_t vc_configure(void* handle, float sampleRate, int32_t maxBufferLength);
+    int32_t vc_configure_tier(void* handle, float sampleRate, int32_t maxBufferLength,
+                              int32_t blockSamples, int32_t intervalSamples, int32_t splitComputation);
+    int32_t vc_set_settings(void* handle, float shiftSemitones, float formantSemitones, float formantBaseHz);
+    int32_t vc_process(void* handle, const int16_t* input, int16_t* output, int32_t length);
+    int32_t vc_flush(void* handle, int16_t* output);
+    // Returns the samples written per voice (length + tail), or 0 on failure
+    int32_t vc_process_multi(void* handle, const int16_t* input, int32_t length,
+                             const float* settings, int32_t voiceCount, int16_t* output);
+    int32_t vc_tail_length(void* handle);
+    int32_t vc_input_latency(void* handle);
+    int32_t vc_output_latency(void* handle);
+    void vc_reset(void* handle);
+}
+
 #endif // VOICE_PROCESSOR_H
\ No newline at end of file
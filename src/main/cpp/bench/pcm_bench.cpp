@@ -0,0 +1,194 @@
+// Micro-benchmarks for the sample-format kernels and limiter in StretchVocal (see pcm-simd.h).
+//
+// Build with -DVOICECHANGER_BUILD_BENCH=ON and run ./pcm_bench; set VOICECHANGER_SIMD to change
+// which kernels the block limiter uses. Before timing, every kernel set is checked against the
+// scalar one, and the block limiter's loudness is compared with the original per-sample limiter.
+
+#include "pcm-simd.h"
+
+#include <chrono>
+#include <cstdio>
+#include <random>
+#include <vector>
+
+namespace {
+
+constexpr float maxOutput = 32760;
+constexpr float sampleRate = 8000;
+
+// The per-sample limiter StretchVocal used before the block version. The original set
+// `gain = maxOutput/absY` from the already-scaled sample, which overshoots (and wraps in int16)
+// whenever the gain is below 1; this reference uses the intended `maxOutput/|x|`.
+struct SampleLimiter {
+    float gain = 1, slew = 1/(0.05f*sampleRate + 1);
+
+    void process(const float *in, int16_t *out, size_t length) {
+        for (size_t i = 0; i < length; ++i) {
+            float x = in[i];
+            gain += (1 - gain)*slew;
+            float y = x*gain, absY = std::abs(y);
+            if (absY > maxOutput) {
+                gain = maxOutput/std::abs(x);
+                y = x*gain;
+            }
+            out[i] = y;
+        }
+    }
+};
+
+// Mirrors StretchVocal::limitOutput
+struct BlockLimiter {
+    static constexpr size_t block = 32;
+    const pcm::Kernels &simd;
+    float gain = 1, slew = 1/(0.05f*sampleRate + 1);
+    float blockRecovery = std::pow(1 - slew, float(block));
+
+    explicit BlockLimiter(const pcm::Kernels &simd) : simd(simd) {}
+
+    void process(float *samples, int16_t *out, size_t length) {
+        for (size_t start = 0; start < length; start += block) {
+            size_t n = std::min(block, length - start);
+            float recovery = (n == block) ? blockRecovery : std::pow(1 - slew, float(n));
+            float endGain = 1 - (1 - gain)*recovery;
+            float peak = simd.peak(samples + start, n);
+            if (peak*endGain > maxOutput) endGain = maxOutput/peak;
+            if (endGain < gain) {
+                float *x = samples + start;
+                for (size_t i = 0; i < n; ++i) {
+                    gain += (1 - gain)*slew;
+                    if (std::abs(x[i]*gain) > maxOutput) gain = maxOutput/std::abs(x[i]);
+                    x[i] *= gain;
+                }
+            } else {
+                simd.gainRamp(samples + start, n, gain, endGain);
+                gain = endGain;
+            }
+        }
+        simd.toInt16(samples, out, length);
+    }
+};
+
+template<class Fn>
+double nsPerSample(size_t samplesPerCall, Fn &&fn) {
+    using Clock = std::chrono::steady_clock;
+    size_t calls = 0;
+    auto start = Clock::now(), end = start;
+    // Run for ~200ms after a short warm-up
+    for (int i = 0; i < 1000; ++i) fn();
+    start = Clock::now();
+    do {
+        for (int i = 0; i < 100; ++i) fn();
+        calls += 100;
+        end = Clock::now();
+    } while (end - start < std::chrono::milliseconds(200));
+    return std::chrono::duration<double, std::nano>(end - start).count()/double(calls*samplesPerCall);
+}
+
+// Speech-like test signal that is hot enough to make the limiter work
+std::vector<float> testSignal(size_t length) {
+    std::mt19937 random(1);
+    std::normal_distribution<float> noise(0, 2000);
+    std::vector<float> signal(length);
+    for (size_t i = 0; i < length; ++i) {
+        float t = i/sampleRate;
+        float envelope = 1.5f + std::sin(2*float(M_PI)*3*t);
+        signal[i] = envelope*(20000*std::sin(2*float(M_PI)*150*t) + noise(random));
+    }
+    return signal;
+}
+
+bool checkAgainstScalar(const pcm::Kernels &k, const std::vector<float> &signal) {
+    size_t length = signal.size() - 3; // odd length exercises the scalar tails
+    std::vector<int16_t> a(length), b(length);
+    std::vector<float> fa(length), fb(length);
+
+    pcm::scalar::toInt16(signal.data(), a.data(), length);
+    k.toInt16(signal.data(), b.data(), length);
+    if (a != b) return false;
+
+    pcm::scalar::toFloat(a.data(), fa.data(), length);
+    k.toFloat(a.data(), fb.data(), length);
+    if (fa != fb) return false;
+
+    if (pcm::scalar::peak(signal.data(), length) != k.peak(signal.data(), length)) return false;
+
+    fa.assign(signal.begin(), signal.begin() + length);
+    fb = fa;
+    pcm::scalar::gainRamp(fa.data(), length, 0.5f, 0.9f);
+    k.gainRamp(fb.data(), length, 0.5f, 0.9f);
+    for (size_t i = 0; i < length; ++i) {
+        if (std::abs(fa[i] - fb[i]) > 1e-3f*std::abs(fa[i]) + 1e-3f) return false;
+    }
+    return true;
+}
+
+double rms(const std::vector<int16_t> &samples) {
+    double sum = 0;
+    for (int16_t s : samples) sum += double(s)*s;
+    return std::sqrt(sum/samples.size());
+}
+
+} // namespace
+
+int main() {
+    std::vector<float> signal = testSignal(8000*4);
+
+    std::vector<const pcm::Kernels *> kernelSets;
+    for (const char *name : {"scalar", "sse2", "avx2", "neon"}) {
+        if (const pcm::Kernels *k = pcm::kernelsNamed(name)) kernelSets.push_back(k);
+    }
+    std::printf("Selected kernels: %s\n\n", pcm::kernels().name);
+
+    bool ok = true;
+    for (const pcm::Kernels *k : kernelSets) {
+        bool matches = checkAgainstScalar(*k, signal);
+        std::printf("%-7s matches scalar: %s\n", k->name, matches ? "yes" : "NO");
+        ok = ok && matches;
+    }
+
+    // Loudness and peak of the block limiter vs the per-sample one, on the whole signal in 160-sample frames
+    {
+        const size_t frame = 160;
+        std::vector<int16_t> reference(signal.size()), blocked(signal.size());
+        std::vector<float> scratch(signal);
+        SampleLimiter sampleLimiter;
+        BlockLimiter blockLimiter(pcm::kernels());
+        int16_t peak = 0;
+        for (size_t i = 0; i + frame <= signal.size(); i += frame) {
+            sampleLimiter.process(signal.data() + i, reference.data() + i, frame);
+            blockLimiter.process(scratch.data() + i, blocked.data() + i, frame);
+        }
+        for (int16_t s : blocked) peak = std::max<int16_t>(peak, std::abs(s));
+        double referenceRms = rms(reference), blockedRms = rms(blocked);
+        std::printf("\nLimiter RMS: per-sample %.1f, block %.1f (%+.2f dB), block peak %d\n",
+                referenceRms, blockedRms, 20*std::log10(blockedRms/referenceRms), peak);
+        ok = ok && peak <= maxOutput;
+    }
+
+    std::printf("\n%-8s %8s %14s %14s %14s\n", "kernels", "frame", "toFloat", "limit+toInt16", "(ns/sample)");
+    for (size_t frame : {size_t(160), size_t(8192)}) {
+        std::vector<int16_t> pcmIn(frame), pcmOut(frame);
+        std::vector<float> floats(frame), scratch(frame);
+        pcm::scalar::toInt16(signal.data(), pcmIn.data(), frame);
+
+        SampleLimiter sampleLimiter;
+        double legacyIn = nsPerSample(frame, [&] {
+            for (size_t i = 0; i < frame; ++i) floats[i] = pcmIn[i];
+        });
+        double legacyOut = nsPerSample(frame, [&] {
+            sampleLimiter.process(signal.data(), pcmOut.data(), frame);
+        });
+        std::printf("%-8s %8zu %14.3f %14.3f\n", "legacy", frame, legacyIn, legacyOut);
+
+        for (const pcm::Kernels *k : kernelSets) {
+            BlockLimiter limiter(*k);
+            double in = nsPerSample(frame, [&] { k->toFloat(pcmIn.data(), floats.data(), frame); });
+            double out = nsPerSample(frame, [&] {
+                std::copy(signal.begin(), signal.begin() + frame, scratch.begin());
+                limiter.process(scratch.data(), pcmOut.data(), frame);
+            });
+            std::printf("%-8s %8zu %14.3f %14.3f\n", k->name, frame, in, out);
+        }
+    }
+    return ok ? 0 : 1;
+}
@@ -0,0 +1,269 @@
+#pragma once
+
+#include <cstddef>
+#include <cstdint>
+#include <cmath>
+#include <algorithm>
+
+/* Vectorised sample-format kernels for `StretchVocal`
+
+	int16 -> float, float -> int16 (truncating like a plain cast, saturating to the int16 range), block peak, and a linear gain ramp.
+
+There are SSE2, AVX2 and NEON versions plus a scalar fallback.  `pcm::kernels()` picks the best one for the running CPU the first time it's called (AVX2 is only used when the CPU reports it, so the library still runs on older x86-64).  Setting `VOICECHANGER_SIMD=scalar|sse2|avx2|neon` forces a particular set, which is handy for benchmarks and for ruling the kernels out when debugging.
+*/
+
+#if defined(__x86_64__) || defined(_M_X64) || defined(__SSE2__)
+#	define PCM_SIMD_SSE2 1
+#	include <emmintrin.h>
+#	if defined(__GNUC__) || defined(__clang__)
+#		define PCM_SIMD_AVX2 1
+#		include <immintrin.h>
+#	endif
+#endif
+#if defined(__aarch64__) || defined(_M_ARM64)
+#	define PCM_SIMD_NEON 1
+#	include <arm_neon.h>
+#endif
+
+#include <cstdlib>
+#include <cstring>
+
+namespace pcm {
+
+struct Kernels {
+	const char *name;
+	void (*toFloat)(const int16_t *in, float *out, size_t length);
+	// Truncates towards zero and saturates to [-32768, 32767]
+	void (*toInt16)(const float *in, int16_t *out, size_t length);
+	// Largest absolute value in the buffer (0 for an empty buffer)
+	float (*peak)(const float *in, size_t length);
+	// Multiplies sample i by startGain + (endGain - startGain)*(i + 1)/length, so the last sample gets exactly endGain
+	void (*gainRamp)(float *buffer, size_t length, float startGain, float endGain);
+};
+
+namespace scalar {
+	inline void toFloat(const int16_t *in, float *out, size_t length) {
+		for (size_t i = 0; i < length; ++i) out[i] = in[i];
+	}
+	inline int16_t toInt16(float x) {
+		x = std::max(-32768.0f, std::min(32767.0f, x));
+		return int16_t(x);
+	}
+	inline void toInt16(const float *in, int16_t *out, size_t length) {
+		for (size_t i = 0; i < length; ++i) out[i] = toInt16(in[i]);
+	}
+	inline float peak(const float *in, size_t length) {
+		float p = 0;
+		for (size_t i = 0; i < length; ++i) p = std::max(p, std::abs(in[i]));
+		return p;
+	}
+	inline void gainRamp(float *buffer, size_t length, float startGain, float endGain) {
+		float step = (endGain - startGain)/float(length);
+		for (size_t i = 0; i < length; ++i) buffer[i] *= startGain + step*float(i + 1);
+	}
+	inline const Kernels & kernels() {
+		static const Kernels k{"scalar", toFloat, toInt16, peak, gainRamp};
+		return k;
+	}
+}
+
+#ifdef PCM_SIMD_SSE2
+namespace sse2 {
+	inline void toFloat(const int16_t *in, float *out, size_t length) {
+		size_t i = 0;
+		for (; i + 8 <= length; i += 8) {
+			__m128i v = _mm_loadu_si128(reinterpret_cast<const __m128i *>(in + i));
+			// Put each int16 in the top half of an int32, then shift back down to sign-extend
+			__m128i lo = _mm_srai_epi32(_mm_unpacklo_epi16(v, v), 16);
+			__m128i hi = _mm_srai_epi32(_mm_unpackhi_epi16(v, v), 16);
+			_mm_storeu_ps(out + i, _mm_cvtepi32_ps(lo));
+			_mm_storeu_ps(out + i + 4, _mm_cvtepi32_ps(hi));
+		}
+		scalar::toFloat(in + i, out + i, length - i);
+	}
+	inline void toInt16(const float *in, int16_t *out, size_t length) {
+		const __m128 lower = _mm_set1_ps(-32768.0f), upper = _mm_set1_ps(32767.0f);
+		size_t i = 0;
+		for (; i + 8 <= length; i += 8) {
+			// Clamp first: cvtt returns INT_MIN for out-of-range values
+			__m128 a = _mm_min_ps(_mm_max_ps(_mm_loadu_ps(in + i), lower), upper);
+			__m128 b = _mm_min_ps(_mm_max_ps(_mm_loadu_ps(in + i + 4), lower), upper);
+			__m128i packed = _mm_packs_epi32(_mm_cvttps_epi32(a), _mm_cvttps_epi32(b));
+			_mm_storeu_si128(reinterpret_cast<__m128i *>(out + i), packed);
+		}
+		scalar::toInt16(in + i, out + i, length - i);
+	}
+	inline float peak(const float *in, size_t length) {
+		const __m128 absMask = _mm_castsi128_ps(_mm_set1_epi32(0x7fffffff));
+		__m128 p = _mm_setzero_ps();
+		size_t i = 0;
+		for (; i + 4 <= length; i += 4) {
+			p = _mm_max_ps(p, _mm_and_ps(_mm_loadu_ps(in + i), absMask));
+		}
+		p = _mm_max_ps(p, _mm_shuffle_ps(p, p, _MM_SHUFFLE(1, 0, 3, 2)));
+		p = _mm_max_ps(p, _mm_shuffle_ps(p, p, _MM_SHUFFLE(2, 3, 0, 1)));
+		return std::max(_mm_cvtss_f32(p), scalar::peak(in + i, length - i));
+	}
+	inline void gainRamp(float *buffer, size_t length, float startGain, float endGain) {
+		float step = (endGain - startGain)/float(length);
+		__m128 gain = _mm_add_ps(_mm_set1_ps(startGain), _mm_mul_ps(_mm_set1_ps(step), _mm_setr_ps(1, 2, 3, 4)));
+		const __m128 increment = _mm_set1_ps(step*4);
+		size_t i = 0;
+		for (; i + 4 <= length; i += 4) {
+			_mm_storeu_ps(buffer + i, _mm_mul_ps(_mm_loadu_ps(buffer + i), gain));
+			gain = _mm_add_ps(gain, increment);
+		}
+		for (; i < length; ++i) buffer[i] *= startGain + step*float(i + 1);
+	}
+	inline const Kernels & kernels() {
+		static const Kernels k{"sse2", toFloat, toInt16, peak, gainRamp};
+		return k;
+	}
+}
+#endif
+
+#ifdef PCM_SIMD_AVX2
+namespace avx2 {
+	__attribute__((target("avx2"))) inline void toFloat(const int16_t *in, float *out, size_t length) {
+		size_t i = 0;
+		for (; i + 16 <= length; i += 16) {
+			__m256i lo = _mm256_cvtepi16_epi32(_mm_loadu_si128(reinterpret_cast<const __m128i *>(in + i)));
+			__m256i hi = _mm256_cvtepi16_epi32(_mm_loadu_si128(reinterpret_cast<const __m128i *>(in + i + 8)));
+			_mm256_storeu_ps(out + i, _mm256_cvtepi32_ps(lo));
+			_mm256_storeu_ps(out + i + 8, _mm256_cvtepi32_ps(hi));
+		}
+		scalar::toFloat(in + i, out + i, length - i);
+	}
+	__attribute__((target("avx2"))) inline void toInt16(const float *in, int16_t *out, size_t length) {
+		const __m256 lower = _mm256_set1_ps(-32768.0f), upper = _mm256_set1_ps(32767.0f);
+		size_t i = 0;
+		for (; i + 16 <= length; i += 16) {
+			__m256 a = _mm256_min_ps(_mm256_max_ps(_mm256_loadu_ps(in + i), lower), upper);
+			__m256 b = _mm256_min_ps(_mm256_max_ps(_mm256_loadu_ps(in + i + 8), lower), upper);
+			// packs works within 128-bit lanes, so put the 64-bit quarters back in order afterwards
+			__m256i packed = _mm256_packs_epi32(_mm256_cvttps_epi32(a), _mm256_cvttps_epi32(b));
+			packed = _mm256_permute4x64_epi64(packed, _MM_SHUFFLE(3, 1, 2, 0));
+			_mm256_storeu_si256(reinterpret_cast<__m256i *>(out + i), packed);
+		}
+		scalar::toInt16(in + i, out + i, length - i);
+	}
+	__attribute__((target("avx2"))) inline float peak(const float *in, size_t length) {
+		const __m256 absMask = _mm256_castsi256_ps(_mm256_set1_epi32(0x7fffffff));
+		__m256 p = _mm256_setzero_ps();
+		size_t i = 0;
+		for (; i + 8 <= length; i += 8) {
+			p = _mm256_max_ps(p, _mm256_and_ps(_mm256_loadu_ps(in + i), absMask));
+		}
+		__m128 q = _mm_max_ps(_mm256_castps256_ps128(p), _mm256_extractf128_ps(p, 1));
+		q = _mm_max_ps(q, _mm_shuffle_ps(q, q, _MM_SHUFFLE(1, 0, 3, 2)));
+		q = _mm_max_ps(q, _mm_shuffle_ps(q, q, _MM_SHUFFLE(2, 3, 0, 1)));
+		return std::max(_mm_cvtss_f32(q), scalar::peak(in + i, length - i));
+	}
+	__attribute__((target("avx2"))) inline void gainRamp(float *buffer, size_t length, float startGain, float endGain) {
+		float step = (endGain - startGain)/float(length);
+		__m256 gain = _mm256_add_ps(_mm256_set1_ps(startGain),
+			_mm256_mul_ps(_mm256_set1_ps(step), _mm256_setr_ps(1, 2, 3, 4, 5, 6, 7, 8)));
+		const __m256 increment = _mm256_set1_ps(step*8);
+		size_t i = 0;
+		for (; i + 8 <= length; i += 8) {
+			_mm256_storeu_ps(buffer + i, _mm256_mul_ps(_mm256_loadu_ps(buffer + i), gain));
+			gain = _mm256_add_ps(gain, increment);
+		}
+		for (; i < length; ++i) buffer[i] *= startGain + step*float(i + 1);
+	}
+	inline bool supported() {
+		return __builtin_cpu_supports("avx2");
+	}
+	inline const Kernels & kernels() {
+		static const Kernels k{"avx2", toFloat, toInt16, peak, gainRamp};
+		return k;
+	}
+}
+#endif
+
+#ifdef PCM_SIMD_NEON
+namespace neon {
+	inline void toFloat(const int16_t *in, float *out, size_t length) {
+		size_t i = 0;
+		for (; i + 8 <= length; i += 8) {
+			int16x8_t v = vld1q_s16(in + i);
+			vst1q_f32(out + i, vcvtq_f32_s32(vmovl_s16(vget_low_s16(v))));
+			vst1q_f32(out + i + 4, vcvtq_f32_s32(vmovl_s16(vget_high_s16(v))));
+		}
+		scalar::toFloat(in + i, out + i, length - i);
+	}
+	inline void toInt16(const float *in, int16_t *out, size_t length) {
+		size_t i = 0;
+		for (; i + 8 <= length; i += 8) {
+			// vcvtq truncates towards zero and saturates; vqmovn then saturates to int16
+			int16x4_t a = vqmovn_s32(vcvtq_s32_f32(vld1q_f32(in + i)));
+			int16x4_t b = vqmovn_s32(vcvtq_s32_f32(vld1q_f32(in + i + 4)));
+			vst1q_s16(out + i, vcombine_s16(a, b));
+		}
+		scalar::toInt16(in + i, out + i, length - i);
+	}
+	inline float peak(const float *in, size_t length) {
+		float32x4_t p = vdupq_n_f32(0);
+		size_t i = 0;
+		for (; i + 4 <= length; i += 4) {
+			p = vmaxq_f32(p, vabsq_f32(vld1q_f32(in + i)));
+		}
+		return std::max(vmaxvq_f32(p), scalar::peak(in + i, length - i));
+	}
+	inline void gainRamp(float *buffer, size_t length, float startGain, float endGain) {
+		float step = (endGain - startGain)/float(length);
+		const float offsets[4] = {1, 2, 3, 4};
+		float32x4_t gain = vmlaq_n_f32(vdupq_n_f32(startGain), vld1q_f32(offsets), step);
+		const float32x4_t increment = vdupq_n_f32(step*4);
+		size_t i = 0;
+		for (; i + 4 <= length; i += 4) {
+			vst1q_f32(buffer + i, vmulq_f32(vld1q_f32(buffer + i), gain));
+			gain = vaddq_f32(gain, increment);
+		}
+		for (; i < length; ++i) buffer[i] *= startGain + step*float(i + 1);
+	}
+	inline const Kernels & kernels() {
+		static const Kernels k{"neon", toFloat, toInt16, peak, gainRamp};
+		return k;
+	}
+}
+#endif
+
+// Kernel set by name, or nullptr if it isn't compiled in or the CPU can't run it
+inline const Kernels * kernelsNamed(const char *name) {
+	if (std::strcmp(name, "scalar") == 0) return &scalar::kernels();
+#ifdef PCM_SIMD_SSE2
+	if (std::strcmp(name, "sse2") == 0) return &sse2::kernels();
+#endif
+#ifdef PCM_SIMD_AVX2
+	if (std::strcmp(name, "avx2") == 0) return avx2::supported() ? &avx2::kernels() : nullptr;
+#endif
+#ifdef PCM_SIMD_NEON
+	if (std::strcmp(name, "neon") == 0) return &neon::kernels();
+#endif
+	return nullptr;
+}
+
+inline const Kernels & selectKernels() {
+	if (const char *forced = std::getenv("VOICECHANGER_SIMD")) {
+		if (const Kernels *k = kernelsNamed(forced)) return *k;
+	}
+#ifdef PCM_SIMD_AVX2
+	if (avx2::supported()) return avx2::kernels();
+#endif
+#ifdef PCM_SIMD_SSE2
+	return sse2::kernels();
+#elif defined(PCM_SIMD_NEON)
+	return neon::kernels();
+#else
+	return scalar::kernels();
+#endif
+}
+
+// Best kernels for this CPU, chosen once
+inline const Kernels & kernels() {
+	static const Kernels &selected = selectKernels();
+	return selected;
+}
+
+} // namespace pcm
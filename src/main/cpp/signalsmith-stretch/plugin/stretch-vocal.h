@@ -2,6 +2,9 @@
 
 #include "../signalsmith-stretch.h"
 #include "./stop-denormals.h"
+#include "./pcm-simd.h"
+
+#include <memory>
 
 /* Vocal Shifting wrapper class
 
@@ -35,10 +38,20 @@ Or out-of-place:
 struct StretchVocal {
 
 	void configure(float sampleRate, size_t maxBufferLength) {
-		stretch.configure(1, sampleRate*0.06, sampleRate*0.015, true);
-		floatBufferIn.resize(maxBufferLength);
-		floatBufferOut.resize(maxBufferLength);
+		configure(sampleRate, maxBufferLength, sampleRate*0.06, sampleRate*0.015, true);
+	}
+	/* Explicit STFT block and interval (hop) sizes, in samples.
+
+	Larger blocks give better frequency resolution for low voices; CPU cost per sample is roughly proportional to `blockSamples*log(blockSamples)/intervalSamples`.  `splitComputation` spreads each block's work evenly across calls, at the cost of one extra interval of output latency.
+	*/
+	void configure(float sampleRate, size_t maxBufferLength, int blockSamples, int intervalSamples, bool splitComputation) {
+		stretch.configure(1, blockSamples, intervalSamples, splitComputation);
+		// the buffers also have to hold the tail produced by flush()
+		size_t bufferLength = std::max(maxBufferLength, tailLength());
+		floatBufferIn.resize(bufferLength);
+		floatBufferOut.resize(bufferLength);
 		limiterSlew = 1/(0.05*sampleRate + 1);
+		limiterBlockRecovery = std::pow(1 - limiterSlew, float(limiterBlock));
 		sRate = sampleRate;
 
 		settings(12, 3, 100);
@@ -59,33 +72,167 @@ struct StretchVocal {
 		process(buffer, buffer, length);
 	}
 
-	void process(int16_t *inBuffer, int16_t *outBuffer, size_t length) {
+	void process(const int16_t *inBuffer, int16_t *outBuffer, size_t length) {
 		StopDenormals scoped;
 
 		// 16-bit to float
-		for (size_t i = 0; i < length; ++i) {
-			floatBufferIn[i] = inBuffer[i];
-		}
+		pcm::kernels().toFloat(inBuffer, floatBufferIn.data(), length);
 
 		stretch.process(&floatBufferIn, length, &floatBufferOut, length);
 
-		// float to 16-bit, with a basic limiter
-		for (size_t i = 0; i < length; ++i) {
-			float x = floatBufferOut[i];
-			limiterGain += (1 - limiterGain)*limiterSlew;
-			float y = x*limiterGain, absY = std::abs(y);
-			if (absY > maxOutput) {
-				limiterGain = maxOutput/absY;
-				y = x*limiterGain;
+		limitOutput(outBuffer, length);
+	}
+
+	// `.process()` for input which is already float, so several voices can share one conversion
+	void processFloat(const std::vector<float> &input, int16_t *outBuffer, size_t length) {
+		StopDenormals scoped;
+		stretch.process(&input, length, &floatBufferOut, length);
+		limitOutput(outBuffer, length);
+	}
+
+	using SharedAnalysis = signalsmith::stretch::SignalsmithStretch<float>::SharedAnalysis;
+	// Takes the input analysis from `shared` (see `StretchVocalGroup`), or does its own if `nullptr`
+	void shareAnalysis(SharedAnalysis *shared) {
+		stretch.shareAnalysis(shared);
+	}
+
+	/* Number of samples still held inside the stretcher once all input has been passed to `.process()`.
+
+	The output lags the input by `inputLatency() + outputLatency()`, so this is exactly the audio which would otherwise be cut off the end.
+	*/
+	size_t tailLength() const {
+		return inputLatency() + outputLatency();
+	}
+	// Samples of input the stretcher must see before the matching output can be produced
+	size_t inputLatency() const {
+		return stretch.inputLatency();
+	}
+	// Samples of synthesis delay between producing output and it leaving `.process()`
+	size_t outputLatency() const {
+		return stretch.outputLatency();
+	}
+
+	/* Writes the remaining `tailLength()` samples to `outBuffer` and ends the stream.
+
+	Call `.reset()` before processing another stream.
+	*/
+	size_t flush(int16_t *outBuffer) {
+		StopDenormals scoped;
+		size_t inputTail = inputLatency(), outputTail = outputLatency();
+
+		// Push silence through the analysis window, then read out what's left in the synthesis buffer
+		std::fill(floatBufferIn.begin(), floatBufferIn.begin() + inputTail, 0.0f);
+		stretch.process(&floatBufferIn, inputTail, &floatBufferOut, inputTail);
+		limitOutput(outBuffer, inputTail);
+
+		stretch.flush(&floatBufferOut, outputTail);
+		limitOutput(outBuffer + inputTail, outputTail);
+
+		return inputTail + outputTail;
+	}
+
+private:
+	/* float to 16-bit, with a basic limiter
+
+	The gain drops instantly to keep peaks below `maxOutput`, and otherwise recovers towards 1 with a ~50ms time constant.  This is worked out per `limiterBlock` samples: the block peak tells us whether the recovering gain would clip anywhere in the block.  If not (almost always), recovery is applied as one vectorised linear ramp to where the per-sample recurrence would have got to - the ramp sits just under that concave curve, so it can't clip either.  Only blocks that need the gain to drop run the per-sample recurrence.  Peak, ramp and conversion all run as vector loops.
+	*/
+	void limitOutput(int16_t *outBuffer, size_t length) {
+		const pcm::Kernels &simd = pcm::kernels();
+		float *samples = floatBufferOut.data();
+		for (size_t start = 0; start < length; start += limiterBlock) {
+			size_t n = std::min(limiterBlock, length - start);
+			float *block = samples + start;
+
+			float recovery = (n == limiterBlock) ? limiterBlockRecovery : std::pow(1 - limiterSlew, float(n));
+			float endGain = 1 - (1 - limiterGain)*recovery;
+			float peak = simd.peak(block, n);
+			if (peak*endGain > maxOutput) endGain = maxOutput/peak;
+
+			if (endGain < limiterGain) {
+				// Attack: drop the gain at exactly the samples which need it
+				for (size_t i = 0; i < n; ++i) {
+					limiterGain += (1 - limiterGain)*limiterSlew;
+					if (std::abs(block[i]*limiterGain) > maxOutput) limiterGain = maxOutput/std::abs(block[i]);
+					block[i] *= limiterGain;
+				}
+			} else {
+				simd.gainRamp(block, n, limiterGain, endGain);
+				limiterGain = endGain;
 			}
-			outBuffer[i] = y;
 		}
+		simd.toInt16(samples, outBuffer, length);
 	}
 
-private:
 	float sRate = 1;
 	std::vector<float> floatBufferIn, floatBufferOut;
 	static constexpr float maxOutput = 32760;
 	float limiterGain = 1, limiterSlew = 1;
+	static constexpr size_t limiterBlock = 32;
+	float limiterBlockRecovery = 0;
 	signalsmith::stretch::SignalsmithStretch<float> stretch;
-};
\ No newline at end of file
+};
+
+/* Several shifts of the same input at once, e.g. one recording rendered with a list of presets.
+
+Separate `StretchVocal`s would each run an identical STFT analysis of the input.  Here it runs once per block and is shared, so each extra voice only costs its own spectral processing (peaks, frequency map, formants) and synthesis.  The output is the same as from separate `StretchVocal`s with the same configuration and settings.
+
+	StretchVocalGroup group;
+	group.configure(3, sampleRate, maxPacketLength);
+	group.settings(0, 10, 2, 100);
+	...
+	int16_t *outputs[3] = {...};
+	group.process(inData, outputs, packet.length);
+*/
+struct StretchVocalGroup {
+
+	void configure(size_t voiceCount, float sampleRate, size_t maxBufferLength) {
+		configure(voiceCount, sampleRate, maxBufferLength, sampleRate*0.06, sampleRate*0.015, true);
+	}
+	void configure(size_t voiceCount, float sampleRate, size_t maxBufferLength, int blockSamples, int intervalSamples, bool splitComputation) {
+		voices.resize(voiceCount);
+		for (auto &voice : voices) {
+			if (!voice) voice.reset(new StretchVocal());
+			voice->configure(sampleRate, maxBufferLength, blockSamples, intervalSamples, splitComputation);
+			voice->shareAnalysis(&analysis);
+		}
+		analysis.configure(int(voiceCount));
+		floatBufferIn.resize(std::max(maxBufferLength, tailLength()));
+	}
+	size_t size() const {
+		return voices.size();
+	}
+	void settings(size_t voice, float shiftSemitones, float formantSemitones, float formantBaseHz) {
+		voices[voice]->settings(shiftSemitones, formantSemitones, formantBaseHz);
+	}
+
+	void reset() {
+		for (auto &voice : voices) voice->reset();
+		analysis.reset();
+	}
+
+	// Writes voice `i` to `outBuffers[i]`
+	void process(const int16_t *inBuffer, int16_t *const *outBuffers, size_t length) {
+		pcm::kernels().toFloat(inBuffer, floatBufferIn.data(), length);
+		for (size_t i = 0; i < voices.size(); ++i) {
+			voices[i]->processFloat(floatBufferIn, outBuffers[i], length);
+		}
+	}
+
+	size_t tailLength() const {
+		return voices.empty() ? 0 : voices[0]->tailLength();
+	}
+
+	// Writes the remaining `tailLength()` samples of each voice and ends the stream
+	size_t flush(int16_t *const *outBuffers) {
+		size_t length = 0;
+		for (size_t i = 0; i < voices.size(); ++i) {
+			length = voices[i]->flush(outBuffers[i]);
+		}
+		return length;
+	}
+
+private:
+	StretchVocal::SharedAnalysis analysis;
+	std::vector<std::unique_ptr<StretchVocal>> voices;
+	std::vector<float> floatBufferIn;
+};
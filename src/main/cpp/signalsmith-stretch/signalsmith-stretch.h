@@ -4,6 +4,7 @@
 #include "signalsmith-linear/stft.h" // https://github.com/Signalsmith-Audio/linear
 
 #include <vector>
+#include <deque>
 #include <array>
 #include <algorithm>
 #include <functional>
@@ -57,6 +58,7 @@ struct SignalsmithStretch {
 		didSeek = false;
 		blockProcess = {};
 		freqEstimateWeighted = freqEstimateWeight = 0;
+		analysisIndex = 0;
 	}
 
 	// Configures using a default preset
@@ -326,6 +328,7 @@ struct SignalsmithStretch {
 					if (blockProcess.reanalysePrev) {
 						// analyse past input
 						if (step < stft.analyseSteps()) {
+							if (sharedAnalysis) continue; // done (or copied) all at once below
 							stashedInput.swap(stft.input);
 							stft.analyseStep(step, stft.defaultInterval());
 							stashedInput.swap(stft.input);
@@ -333,6 +336,10 @@ struct SignalsmithStretch {
 						}
 						step -= stft.analyseSteps();
 						if (step < 1) {
+							if (sharedAnalysis) {
+								takeSharedAnalysis(true);
+								continue;
+							}
 							// Copy previous analysis to our band objects
 							for (int c = 0; c < channels; ++c) {
 								auto channelBands = bandsForChannel(c);
@@ -348,6 +355,7 @@ struct SignalsmithStretch {
 
 					// Analyse latest (stashed) input
 					if (step < stft.analyseSteps()) {
+						if (sharedAnalysis) continue;
 						stashedInput.swap(stft.input);
 						stft.analyseStep(step);
 						stashedInput.swap(stft.input);
@@ -355,6 +363,10 @@ struct SignalsmithStretch {
 					}
 					step -= stft.analyseSteps();
 					if (step < 1) {
+						if (sharedAnalysis) {
+							takeSharedAnalysis(false);
+							continue;
+						}
 						// Copy analysed spectrum into our band objects
 						for (int c = 0; c < channels; ++c) {
 							auto channelBands = bandsForChannel(c);
@@ -487,7 +499,107 @@ struct SignalsmithStretch {
 		return true;
 	}
 
+	/* Input analyses shared between stretchers which are fed identical input (in identical-sized chunks) but have different pitch/formant settings.
+
+	Which analyses happen depends only on the input, so every stretcher performs the same numbered sequence of them.  The first stretcher to reach analysis N computes it, and the others copy its spectrum instead of repeating the STFT.  Each analysis is dropped once all `users` stretchers have taken it.  Not thread-safe: the stretchers must be driven from one thread.
+	*/
+	struct SharedAnalysis {
+		void configure(int users) {
+			this->users = users;
+			reset();
+		}
+		// Call whenever the stretchers are reset
+		void reset() {
+			while (!pending.empty()) dropFirst();
+			firstIndex = 0;
+		}
+
+	private:
+		friend struct SignalsmithStretch;
+		struct Entry {
+			std::vector<std::complex<Sample>> spectrum;
+			int remaining;
+		};
+		int users = 0;
+		size_t firstIndex = 0;
+		std::deque<Entry> pending;
+		std::vector<std::vector<std::complex<Sample>>> spare;
+
+		const std::complex<Sample> * find(size_t index) const {
+			if (index < firstIndex || index - firstIndex >= pending.size()) return nullptr;
+			return pending[index - firstIndex].spectrum.data();
+		}
+		// Analyses are added in order, so this is always the next index
+		std::complex<Sample> * add(size_t spectrumSize) {
+			std::vector<std::complex<Sample>> spectrum;
+			if (!spare.empty()) {
+				spectrum.swap(spare.back());
+				spare.pop_back();
+			}
+			spectrum.resize(spectrumSize);
+			pending.push_back({std::move(spectrum), users});
+			return pending.back().spectrum.data();
+		}
+		void release(size_t index) {
+			--pending[index - firstIndex].remaining;
+			while (!pending.empty() && pending.front().remaining <= 0) {
+				dropFirst();
+				++firstIndex;
+			}
+		}
+		void dropFirst() {
+			spare.push_back(std::move(pending.front().spectrum));
+			pending.pop_front();
+		}
+	};
+
+	// Takes input analyses from (and contributes them to) `shared`, or stops sharing if `nullptr`.  Sharing stretchers must have identical configurations, and be reset together with `shared`.
+	void shareAnalysis(SharedAnalysis *shared) {
+		sharedAnalysis = shared;
+		analysisIndex = 0;
+	}
+
 private:
+	SharedAnalysis *sharedAnalysis = nullptr;
+	size_t analysisIndex = 0;
+
+	// Copies the next shared analysis into the bands' `.prevInput` (or `.input`), first computing it from our stashed input if no other stretcher has
+	void takeSharedAnalysis(bool previous) {
+		size_t index = analysisIndex++;
+		const Complex *spectrum = sharedAnalysis->find(index);
+		if (!spectrum) {
+			stashedInput.swap(stft.input);
+			for (size_t s = 0; s < stft.analyseSteps(); ++s) {
+				if (previous) {
+					stft.analyseStep(s, stft.defaultInterval());
+				} else {
+					stft.analyseStep(s);
+				}
+			}
+			stashedInput.swap(stft.input);
+
+			Complex *stored = sharedAnalysis->add(size_t(channels)*bands);
+			for (int c = 0; c < channels; ++c) {
+				auto *spectrumBands = stft.spectrum(c);
+				for (int b = 0; b < bands; ++b) {
+					stored[c*bands + b] = spectrumBands[b];
+				}
+			}
+			spectrum = stored;
+		}
+		for (int c = 0; c < channels; ++c) {
+			auto channelBands = bandsForChannel(c);
+			for (int b = 0; b < bands; ++b) {
+				if (previous) {
+					channelBands[b].prevInput = spectrum[c*bands + b];
+				} else {
+					channelBands[b].input = spectrum[c*bands + b];
+				}
+			}
+		}
+		sharedAnalysis->release(index);
+	}
+
 	bool _splitComputation = false;
 	struct {
 		size_t samplesSinceLast = std::numeric_limits<size_t>::max();
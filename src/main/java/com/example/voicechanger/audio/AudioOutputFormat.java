@@ -0,0 +1,140 @@
+package com.example.voicechanger.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Encodings a processed file can be returned in: 16-bit PCM WAV (the default), G.711 inside a WAV
+ * container, or headerless G.711 as FreeSWITCH reads it from {@code .PCMU}/{@code .PCMA} files.
+ * G.711 is half the size of 16-bit PCM and plays on a G.711 call leg without transcoding.
+ */
+public enum AudioOutputFormat {
+
+    WAV("application/octet-stream", "wav", WavFormat.PCM),
+    WAV_ULAW("application/octet-stream", "wav", WavFormat.MULAW),
+    WAV_ALAW("application/octet-stream", "wav", WavFormat.ALAW),
+    PCMU("audio/PCMU", "PCMU", WavFormat.MULAW),
+    PCMA("audio/PCMA", "PCMA", WavFormat.ALAW);
+
+    // G.711 WAVs carry an 18-byte fmt chunk (cbSize = 0) and a fact chunk
+    private static final int G711_WAV_HEADER_SIZE = 58;
+
+    private final String contentType;
+    private final String extension;
+    private final int formatTag;
+
+    AudioOutputFormat(String contentType, String extension, int formatTag) {
+        this.contentType = contentType;
+        this.extension = extension;
+        this.formatTag = formatTag;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public boolean hasHeader() {
+        return this == WAV || this == WAV_ULAW || this == WAV_ALAW;
+    }
+
+    public int bytesPerSample() {
+        return formatTag == WavFormat.PCM ? 2 : 1;
+    }
+
+    public int headerSize() {
+        if (!hasHeader()) return 0;
+        return formatTag == WavFormat.PCM ? WavWriter.HEADER_SIZE : G711_WAV_HEADER_SIZE;
+    }
+
+    /**
+     * Size in bytes of a mono file holding {@code sampleCount} samples.
+     */
+    public long fileSize(int sampleCount) {
+        return headerSize() + (long) bytesPerSample() * sampleCount;
+    }
+
+    /**
+     * Writes this format's file header (nothing for headerless formats) at the position of the
+     * little-endian {@code target}. {@code sampleCount} counts samples per channel (frames); a
+     * negative one marks the length as unknown, for a file streamed before its end is known (see
+     * {@link WavWriter#writeHeader}).
+     */
+    public void writeHeader(ByteBuffer target, int sampleRate, int channels, int sampleCount) {
+        if (this == WAV) {
+            WavWriter.writeHeader(target, sampleRate, channels, sampleCount < 0 ? -1 : sampleCount * 2 * channels);
+        } else if (hasHeader()) {
+            int dataSize = sampleCount < 0 ? -1 : sampleCount * channels;
+            target.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+            target.putInt(dataSize < 0 ? -1 : G711_WAV_HEADER_SIZE - 8 + dataSize);
+            target.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+
+            target.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+            target.putInt(18);
+            target.putShort((short) formatTag);
+            target.putShort((short) channels);
+            target.putInt(sampleRate);
+            target.putInt(sampleRate * channels); // byte rate
+            target.putShort((short) channels);    // block align
+            target.putShort((short) 8);
+            target.putShort((short) 0);           // cbSize
+
+            target.put((byte) 'f').put((byte) 'a').put((byte) 'c').put((byte) 't');
+            target.putInt(4);
+            target.putInt(sampleCount < 0 ? -1 : sampleCount);
+
+            target.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+            target.putInt(dataSize);
+        }
+    }
+
+    /**
+     * Encodes the remaining samples of {@code samples} (consuming them) into {@code target}, which
+     * must be a heap buffer with room for {@code bytesPerSample()} bytes per sample.
+     */
+    public void encode(ShortBuffer samples, ByteBuffer target) {
+        int count = samples.remaining();
+        switch (formatTag) {
+            case WavFormat.PCM -> {
+                target.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(samples);
+                target.position(target.position() + count * 2);
+            }
+            case WavFormat.MULAW -> {
+                G711.encodeUlaw(samples, target.array(), target.arrayOffset() + target.position());
+                target.position(target.position() + count);
+            }
+            default -> {
+                G711.encodeAlaw(samples, target.array(), target.arrayOffset() + target.position());
+                target.position(target.position() + count);
+            }
+        }
+    }
+
+    /**
+     * Encodes the remaining samples of {@code pcm} as a complete mono file in one allocation. The
+     * position of {@code pcm} is left unchanged.
+     */
+    public byte[] toByteArray(ShortBuffer pcm, int sampleRate) {
+        ByteBuffer file = ByteBuffer.allocate(Math.toIntExact(fileSize(pcm.remaining()))).order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(file, sampleRate, 1, pcm.remaining());
+        encode(pcm.duplicate(), file);
+        return file.array();
+    }
+
+    /**
+     * Looks up a format by name, case-insensitively and accepting {@code -} for {@code _}
+     * (e.g. {@code wav-ulaw}). A blank name means {@link #WAV}.
+     *
+     * @throws IllegalArgumentException if no format has that name
+     */
+    public static AudioOutputFormat fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return WAV;
+        }
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
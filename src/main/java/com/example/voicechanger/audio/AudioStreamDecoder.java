@@ -0,0 +1,267 @@
+package com.example.voicechanger.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Decodes an upload that arrives in pieces - a WAV file or a headerless {@link RawAudioFormat}
+ * body - to 16-bit mono samples at a target rate, without ever holding the whole upload.
+ * <p>
+ * Each {@link #decode} call takes the next bytes and returns the samples they complete: whole
+ * frames are mixed down by {@link ChannelMixer} (or G.711-decoded) and resampled by a
+ * {@link Resampler.Stream}, so the result is sample for sample what decoding the whole body at once
+ * gives. A WAV header is parsed once enough of it has arrived; anything after the {@code data}
+ * chunk is ignored. Not thread-safe.
+ * <p>
+ * Bodies are limited to a maximum number of decoded samples: one that declares more is rejected
+ * as soon as its length is known, one that does not declare its length fails once it has decoded
+ * more. A body shorter than it declared is padded with silence, handed out in bounded pieces by
+ * {@link #nextPadding()}.
+ */
+public final class AudioStreamDecoder {
+
+    // Bytes of WAV header (fmt, LIST, ... chunks) buffered before giving up
+    private static final int MAX_HEADER_SIZE = 1 << 20;
+    // Padding for bodies shorter than they declared is handed out in pieces of at most this size
+    private static final short[] SILENCE = new short[8192];
+
+    private final int targetRate;
+    private final long maxSamples;
+    // Known once the header is parsed (at once for raw bodies)
+    private WavFormat format;
+    private boolean bigEndian;
+    private Resampler.Stream resampler;
+    // Payload bytes still expected, or Long.MAX_VALUE if the length is not declared
+    private long remaining = Long.MAX_VALUE;
+    private long expectedFrames = -1;
+
+    private byte[] header = new byte[0];
+    // Start of a frame that has not fully arrived yet
+    private byte[] partial;
+    private int partialLength;
+    private float[] mono = new float[0];
+    private short[] output = new short[0];
+    private long decoded;
+
+    private AudioStreamDecoder(int targetRate, long maxSamples) {
+        this.targetRate = targetRate;
+        this.maxSamples = maxSamples;
+    }
+
+    /**
+     * A decoder for a WAV file of at most {@code maxSamples} samples at {@code targetRate};
+     * {@link #decode} returns nothing until its header has arrived.
+     */
+    public static AudioStreamDecoder wav(int targetRate, long maxSamples) {
+        return new AudioStreamDecoder(targetRate, maxSamples);
+    }
+
+    /**
+     * A decoder for a headerless body, {@code contentLength} bytes long (or -1 if unknown), of at
+     * most {@code maxSamples} samples at {@code targetRate}.
+     *
+     * @throws IllegalArgumentException if the rate or channel count is not positive, or the body
+     *                                  is declared longer than {@code maxSamples}
+     */
+    public static AudioStreamDecoder raw(RawAudioFormat raw, long contentLength, int targetRate, long maxSamples) {
+        if (raw.sampleRate() <= 0 || raw.channels() <= 0) {
+            throw new IllegalArgumentException("Invalid raw " + raw.encoding() + " format: " + raw.sampleRate() + " Hz, " +
+                    raw.channels() + " channels");
+        }
+        AudioStreamDecoder decoder = new AudioStreamDecoder(targetRate, maxSamples);
+        int bits = raw.encoding() == RawAudioFormat.Encoding.L16 ? 16 : 8;
+        int formatTag = switch (raw.encoding()) {
+            case L16 -> WavFormat.PCM;
+            case PCMU -> WavFormat.MULAW;
+            case PCMA -> WavFormat.ALAW;
+        };
+        int blockAlign = raw.channels() * bits / 8;
+        decoder.bigEndian = raw.encoding() == RawAudioFormat.Encoding.L16;
+        decoder.start(new WavFormat(formatTag, raw.channels(), raw.sampleRate(), raw.sampleRate() * blockAlign,
+                blockAlign, bits, bits, 0), contentLength);
+        return decoder;
+    }
+
+    /**
+     * Whether the format is known (the WAV header has been parsed).
+     */
+    public boolean isReady() {
+        return format != null;
+    }
+
+    public WavFormat format() {
+        return format;
+    }
+
+    /**
+     * Number of samples the whole body decodes to, or -1 if its length is not declared (or the
+     * header has not arrived yet).
+     */
+    public long expectedLength() {
+        if (expectedFrames < 0) {
+            return -1;
+        }
+        return format.sampleRate() == targetRate
+                ? expectedFrames
+                : Resampler.of(format.sampleRate(), targetRate).outputLength(expectedFrames);
+    }
+
+    /**
+     * Decodes the remaining bytes of {@code chunk} (consuming them).
+     *
+     * @return the samples completed by this chunk; valid until the next call
+     * @throws IOException              if the WAV header is malformed or its sample format cannot
+     *                                  be decoded incrementally, or a body of undeclared length
+     *                                  decodes to more than the maximum number of samples
+     * @throws IllegalArgumentException if the WAV header declares more than the maximum number
+     *                                  of samples
+     */
+    public ShortBuffer decode(ByteBuffer chunk) throws IOException {
+        if (format == null) {
+            chunk = parseHeader(chunk);
+            if (format == null) {
+                return ShortBuffer.allocate(0);
+            }
+        }
+
+        int payload = (int) Math.min(chunk.remaining(), remaining);
+        remaining -= payload;
+        int blockAlign = format.blockAlign();
+        int frames = (partialLength + payload) / blockAlign;
+        int written = 0;
+        ensureOutput(frames);
+
+        // Complete the frame left over from the previous chunk
+        int position = chunk.position();
+        int limit = position + payload;
+        if (partialLength > 0 && frames > 0) {
+            int missing = blockAlign - partialLength;
+            chunk.get(position, partial, partialLength, missing);
+            position += missing;
+            written += convert(ByteBuffer.wrap(partial, 0, blockAlign), 1, written);
+            partialLength = 0;
+            frames--;
+        }
+        written += convert(chunk.slice(position, frames * blockAlign), frames, written);
+        position += frames * blockAlign;
+
+        // Keep the start of the next frame
+        chunk.get(position, partial, partialLength, limit - position);
+        partialLength += limit - position;
+        chunk.position(chunk.limit());
+
+        decoded += written;
+        if (decoded > maxSamples) {
+            throw new IOException("Audio longer than " + maxSamples + " samples");
+        }
+        return ShortBuffer.wrap(output, 0, written);
+    }
+
+    /**
+     * Ends the body and returns the last samples. If the body was shorter than it declared,
+     * {@link #nextPadding()} then makes up the difference.
+     *
+     * @throws IOException if the body ended inside the WAV header
+     */
+    public ShortBuffer finish() throws IOException {
+        if (format == null) {
+            throw new EOFException("Unexpected end of WAV header");
+        }
+        int written = 0;
+        if (resampler != null) {
+            ensureOutput(0);
+            written = resampler.finish(output, 0);
+        }
+        decoded += written;
+        return ShortBuffer.wrap(output, 0, written);
+    }
+
+    /**
+     * After {@link #finish()}, the next piece of silence still needed to reach
+     * {@link #expectedLength()}; empty once the body is complete. The buffer is read-only.
+     */
+    public ShortBuffer nextPadding() {
+        int count = (int) Math.min(SILENCE.length, Math.max(0, expectedLength() - decoded));
+        decoded += count;
+        return ShortBuffer.wrap(SILENCE, 0, count).asReadOnlyBuffer();
+    }
+
+    private ByteBuffer parseHeader(ByteBuffer chunk) throws IOException {
+        int previous = header.length;
+        if (previous + chunk.remaining() > MAX_HEADER_SIZE) {
+            throw new IOException("WAV header longer than " + MAX_HEADER_SIZE + " bytes");
+        }
+        header = Arrays.copyOf(header, previous + chunk.remaining());
+        chunk.get(header, previous, chunk.remaining());
+        ByteArrayInputStream in = new ByteArrayInputStream(header);
+        WavParser.WavStream wav;
+        try {
+            wav = WavParser.open(in);
+        } catch (EOFException e) {
+            // Wait for the rest of the header
+            return chunk;
+        }
+        if (!ChannelMixer.supports(wav.format())) {
+            throw new IOException("Cannot stream " + wav.format().encoding() + " audio");
+        }
+        start(wav.format(), wav.dataLength());
+        // Whatever followed the header in the buffered bytes is the first payload
+        ByteBuffer rest = ByteBuffer.wrap(header, header.length - in.available(), in.available());
+        header = null;
+        return rest;
+    }
+
+    private void start(WavFormat format, long dataLength) {
+        this.format = format;
+        this.partial = new byte[format.blockAlign()];
+        if (dataLength >= 0) {
+            remaining = dataLength;
+            expectedFrames = dataLength / format.blockAlign();
+            if (expectedLength() > maxSamples) {
+                throw new IllegalArgumentException("Audio of " + expectedLength() + " samples is longer than "
+                        + maxSamples);
+            }
+        }
+        if (!isPassThrough()) {
+            resampler = Resampler.of(format.sampleRate(), targetRate).stream();
+        }
+    }
+
+    // 16-bit mono at the target rate needs neither mixing nor resampling
+    private boolean isPassThrough() {
+        return format.formatTag() == WavFormat.PCM && format.bitsPerSample() == 16 && format.channels() == 1
+                && format.sampleRate() == targetRate;
+    }
+
+    private int convert(ByteBuffer frames, int count, int outputOffset) {
+        if (count == 0) {
+            return 0;
+        }
+        ByteOrder order = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        if (isPassThrough()) {
+            frames.order(order).asShortBuffer().get(output, outputOffset, count);
+            return count;
+        }
+        if (mono.length < count) {
+            mono = new float[count];
+        }
+        if (bigEndian) {
+            ChannelMixer.toMono(frames.order(order).asShortBuffer(), format.channels(), mono, 0);
+        } else {
+            ChannelMixer.toMono(frames, format, mono, 0);
+        }
+        return resampler.process(mono, 0, count, output, outputOffset);
+    }
+
+    private void ensureOutput(int frames) {
+        int needed = resampler == null ? frames + 1 : resampler.maxOutput(frames) + 1;
+        if (output.length < needed) {
+            output = new short[needed];
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.voicechanger.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Decodes interleaved PCM of any common WAV sample format and averages its channels to mono
+ * floats in 16-bit scale (full scale = 32768), ready for {@link Resampler}.
+ */
+public final class ChannelMixer {
+
+    private ChannelMixer() {
+    }
+
+    /**
+     * Whether {@link #toMono(ByteBuffer, WavFormat, float[], int)} can decode this format:
+     * 8/16/24/32-bit integer PCM, 32/64-bit float, or G.711 µ-law/A-law.
+     */
+    public static boolean supports(WavFormat format) {
+        return switch (format.formatTag()) {
+            case WavFormat.PCM -> format.bitsPerSample() == 8 || format.bitsPerSample() == 16 ||
+                    format.bitsPerSample() == 24 || format.bitsPerSample() == 32;
+            case WavFormat.IEEE_FLOAT -> format.bitsPerSample() == 32 || format.bitsPerSample() == 64;
+            case WavFormat.MULAW, WavFormat.ALAW -> format.bitsPerSample() == 8;
+            default -> false;
+        };
+    }
+
+    public static float[] toMono(WavData wav) {
+        float[] mono = new float[wav.frameCount()];
+        toMono(wav.payload(), wav.format(), mono, 0);
+        return mono;
+    }
+
+    /**
+     * Mixes every whole frame of {@code payload} (not consumed) into {@code output}.
+     *
+     * @return number of frames written
+     * @throws IllegalArgumentException if the format is not {@linkplain #supports supported}
+     */
+    public static int toMono(ByteBuffer payload, WavFormat format, float[] output, int outputOffset) {
+        if (!supports(format)) {
+            throw new IllegalArgumentException("Unsupported sample format: " + format);
+        }
+        ByteBuffer data = payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int channels = format.channels();
+        int bytesPerSample = format.bitsPerSample() / 8;
+        int frames = data.remaining() / format.blockAlign();
+        // blockAlign may include padding beyond channels * bytesPerSample
+        int padding = format.blockAlign() - channels * bytesPerSample;
+        float scale = 1.0f / channels;
+
+        int position = data.position();
+        for (int f = 0; f < frames; f++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += sample(data, position, format);
+                position += bytesPerSample;
+            }
+            position += padding;
+            output[outputOffset + f] = sum * scale;
+        }
+        return frames;
+    }
+
+    /**
+     * Mixes interleaved 16-bit samples (in the buffer's byte order) to mono.
+     *
+     * @return number of frames written
+     */
+    public static int toMono(ShortBuffer interleaved, int channels, float[] output, int outputOffset) {
+        int frames = interleaved.remaining() / channels;
+        int position = interleaved.position();
+        float scale = 1.0f / channels;
+        for (int f = 0; f < frames; f++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += interleaved.get(position++);
+            }
+            output[outputOffset + f] = sum * scale;
+        }
+        return frames;
+    }
+
+    private static float sample(ByteBuffer data, int position, WavFormat format) {
+        return switch (format.formatTag()) {
+            case WavFormat.PCM -> switch (format.bitsPerSample()) {
+                case 8 -> ((data.get(position) & 0xFF) - 128) * 256f;
+                case 16 -> data.getShort(position);
+                case 24 -> ((data.get(position + 2) << 16) | ((data.get(position + 1) & 0xFF) << 8) |
+                        (data.get(position) & 0xFF)) / 256f;
+                default -> data.getInt(position) / 65536f;
+            };
+            case WavFormat.IEEE_FLOAT -> format.bitsPerSample() == 32
+                    ? data.getFloat(position) * 32768f
+                    : (float) (data.getDouble(position) * 32768);
+            case WavFormat.MULAW -> G711.ulawToLinear(data.get(position));
+            default -> G711.alawToLinear(data.get(position));
+        };
+    }
+}
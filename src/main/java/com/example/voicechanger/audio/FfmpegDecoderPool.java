@@ -0,0 +1,210 @@
+package com.example.voicechanger.audio;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes uploads with FFmpeg over pipes: the upload goes to stdin, raw 8 kHz mono {@code s16le}
+ * comes back on stdout. No temporary files are written.
+ * <p>
+ * An FFmpeg process decodes exactly one input (it exits at end of stdin), so the pool keeps
+ * {@code size} processes already started and waiting on stdin. A request takes one and a
+ * replacement is started in the background, which keeps fork/exec and FFmpeg start-up off the
+ * request path. Processes that have died while idle are discarded when taken, and a decode that
+ * runs past the timeout is killed.
+ */
+@Component
+public class FfmpegDecoderPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmpegDecoderPool.class);
+    private static final int STDERR_LIMIT = 2048;
+
+    private final LinkedBlockingQueue<Process> idle = new LinkedBlockingQueue<>();
+    private final ExecutorService io = Executors.newCachedThreadPool(daemon("ffmpeg-io"));
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(daemon("ffmpeg-watchdog"));
+
+    @Value("${voice.ffmpeg.path:ffmpeg}")
+    private String ffmpegPath;
+
+    @Value("${voice.ffmpeg.pool.size:2}")
+    private int size;
+
+    @Value("${voice.ffmpeg.timeout.ms:30000}")
+    private long timeoutMs;
+
+    @Value("${voice.ffmpeg.sample.rate:8000}")
+    private int sampleRate;
+
+    private volatile boolean available;
+
+    @PostConstruct
+    public void init() {
+        if (size <= 0) {
+            logger.info("FFmpeg decoder pool disabled");
+            return;
+        }
+        try {
+            for (int i = 0; i < size; i++) {
+                idle.add(spawn());
+            }
+            available = true;
+            logger.info("FFmpeg decoder pool started with {} waiting processes", size);
+        } catch (IOException e) {
+            logger.warn("Cannot start {}; FFmpeg decoding falls back to temporary files", ffmpegPath, e);
+        }
+    }
+
+    /**
+     * Whether decoders could be started at all. When false, callers should use another decoder.
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Decodes any format FFmpeg understands to mono 16-bit PCM at the configured sample rate.
+     *
+     * @throws IOException if FFmpeg fails, produces no audio or times out
+     */
+    public ShortBuffer decode(byte[] input) throws IOException {
+        Process process = take();
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> kill(process), timeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            // Feed stdin and drain stderr concurrently, or FFmpeg blocks on a full pipe
+            Future<?> writer = io.submit(() -> {
+                try (OutputStream stdin = process.getOutputStream()) {
+                    stdin.write(input);
+                }
+                return null;
+            });
+            Future<String> errors = io.submit(() -> tail(process.getErrorStream()));
+
+            byte[] pcm;
+            try (InputStream stdout = process.getInputStream()) {
+                pcm = stdout.readAllBytes();
+            }
+            if (!process.waitFor(timeoutMs, TimeUnit.MILLISECONDS) || timeout.isDone()) {
+                throw new IOException("FFmpeg timed out after " + timeoutMs + " ms");
+            }
+            int exitCode = process.exitValue();
+            if (exitCode != 0 || pcm.length < 2) {
+                writer.cancel(true);
+                throw new IOException("FFmpeg exited with " + exitCode + ": " + errors.get(1, TimeUnit.SECONDS).trim());
+            }
+            return ByteBuffer.wrap(pcm, 0, pcm.length & ~1).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        } catch (IOException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding", e);
+        } catch (Exception e) {
+            throw new IOException("FFmpeg decoding failed: " + e.getMessage(), e);
+        } finally {
+            timeout.cancel(false);
+            kill(process);
+        }
+    }
+
+    private Process take() throws IOException {
+        Process process;
+        while ((process = idle.poll()) != null) {
+            replenish();
+            if (process.isAlive()) {
+                return process;
+            }
+            logger.warn("Discarding FFmpeg decoder that exited while idle (exit code {})", process.exitValue());
+        }
+        // Pool drained by a burst of requests: start one on the request path
+        replenish();
+        return spawn();
+    }
+
+    private void replenish() {
+        if (io.isShutdown()) return;
+        io.execute(() -> {
+            try {
+                Process process = spawn();
+                if (idle.size() < size) {
+                    idle.add(process);
+                } else {
+                    process.destroyForcibly();
+                }
+            } catch (IOException e) {
+                logger.error("Failed to start FFmpeg decoder", e);
+            }
+        });
+    }
+
+    private Process spawn() throws IOException {
+        return new ProcessBuilder(List.of(
+                ffmpegPath, "-hide_banner", "-loglevel", "error",
+                "-i", "pipe:0",
+                "-vn", "-f", "s16le", "-acodec", "pcm_s16le", "-ac", "1", "-ar", String.valueOf(sampleRate),
+                "pipe:1"))
+                .start();
+    }
+
+    // A wrapper script's children would otherwise keep stdout open after it dies
+    private static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static String tail(InputStream stderr) throws IOException {
+        byte[] last = new byte[STDERR_LIMIT];
+        int length = 0;
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = stderr.read(buffer)) != -1) {
+            if (length + read > last.length) {
+                int keep = Math.max(0, last.length - read);
+                System.arraycopy(last, length - keep, last, 0, keep);
+                length = keep;
+            }
+            int copy = Math.min(read, last.length);
+            System.arraycopy(buffer, read - copy, last, length, copy);
+            length += copy;
+        }
+        return new String(last, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        available = false;
+        io.shutdownNow();
+        watchdog.shutdownNow();
+        Process process;
+        while ((process = idle.poll()) != null) {
+            process.destroyForcibly();
+        }
+    }
+}
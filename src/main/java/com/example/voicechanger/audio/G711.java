@@ -0,0 +1,148 @@
+package com.example.voicechanger.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * ITU-T G.711 µ-law and A-law companding, table-driven: decoding is a 256-entry lookup and encoding
+ * a 65536-entry lookup indexed by the 16-bit sample, so neither direction branches or allocates.
+ * The tables are built from the reference segment algorithm (as in the ITU/Sun {@code g711.c}).
+ */
+public final class G711 {
+
+    private static final short[] ULAW_TO_LINEAR = new short[256];
+    private static final short[] ALAW_TO_LINEAR = new short[256];
+    private static final byte[] LINEAR_TO_ULAW = new byte[65536];
+    private static final byte[] LINEAR_TO_ALAW = new byte[65536];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int u = ~i & 0xFF;
+            int magnitude = (((u & 0x0F) << 3) + 0x84) << ((u & 0x70) >> 4);
+            ULAW_TO_LINEAR[i] = (short) ((u & 0x80) != 0 ? 0x84 - magnitude : magnitude - 0x84);
+
+            int a = i ^ 0x55;
+            int t = (a & 0x0F) << 4;
+            int segment = (a & 0x70) >> 4;
+            t = switch (segment) {
+                case 0 -> t + 8;
+                case 1 -> t + 0x108;
+                default -> (t + 0x108) << (segment - 1);
+            };
+            ALAW_TO_LINEAR[i] = (short) ((a & 0x80) != 0 ? t : -t);
+        }
+        for (int i = 0; i < 65536; i++) {
+            short sample = (short) i;
+            LINEAR_TO_ULAW[i] = encodeUlawSegment(sample);
+            LINEAR_TO_ALAW[i] = encodeAlawSegment(sample);
+        }
+    }
+
+    private G711() {
+    }
+
+    public static short ulawToLinear(byte ulaw) {
+        return ULAW_TO_LINEAR[ulaw & 0xFF];
+    }
+
+    public static short alawToLinear(byte alaw) {
+        return ALAW_TO_LINEAR[alaw & 0xFF];
+    }
+
+    public static byte linearToUlaw(short sample) {
+        return LINEAR_TO_ULAW[sample & 0xFFFF];
+    }
+
+    public static byte linearToAlaw(short sample) {
+        return LINEAR_TO_ALAW[sample & 0xFFFF];
+    }
+
+    /**
+     * Expands {@code length} µ-law bytes into {@code output}.
+     */
+    public static void decodeUlaw(byte[] input, int inputOffset, short[] output, int outputOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            output[outputOffset + i] = ULAW_TO_LINEAR[input[inputOffset + i] & 0xFF];
+        }
+    }
+
+    /**
+     * Expands {@code length} A-law bytes into {@code output}.
+     */
+    public static void decodeAlaw(byte[] input, int inputOffset, short[] output, int outputOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            output[outputOffset + i] = ALAW_TO_LINEAR[input[inputOffset + i] & 0xFF];
+        }
+    }
+
+    /**
+     * Compresses the remaining samples of {@code input} (consuming them) into {@code output}.
+     */
+    public static void encodeUlaw(ShortBuffer input, byte[] output, int outputOffset) {
+        encode(input, output, outputOffset, LINEAR_TO_ULAW);
+    }
+
+    /**
+     * Compresses the remaining samples of {@code input} (consuming them) into {@code output}.
+     */
+    public static void encodeAlaw(ShortBuffer input, byte[] output, int outputOffset) {
+        encode(input, output, outputOffset, LINEAR_TO_ALAW);
+    }
+
+    private static void encode(ShortBuffer input, byte[] output, int outputOffset, byte[] table) {
+        int length = input.remaining();
+        int position = input.position();
+        for (int i = 0; i < length; i++) {
+            output[outputOffset + i] = table[input.get(position + i) & 0xFFFF];
+        }
+        input.position(position + length);
+    }
+
+    // Reference encoders, only used to fill the tables
+
+    private static byte encodeUlawSegment(short sample) {
+        int value = sample >> 2;
+        int mask;
+        if (value < 0) {
+            value = -value;
+            mask = 0x7F;
+        } else {
+            mask = 0xFF;
+        }
+        value = Math.min(value, 8159) + 0x21;
+        int segment = segment(value, 0x3F);
+        if (segment >= 8) {
+            return (byte) (0x7F ^ mask);
+        }
+        return (byte) (((segment << 4) | ((value >> (segment + 1)) & 0x0F)) ^ mask);
+    }
+
+    private static byte encodeAlawSegment(short sample) {
+        int value = sample >> 3;
+        int mask;
+        if (value >= 0) {
+            mask = 0xD5;
+        } else {
+            mask = 0x55;
+            value = -value - 1;
+        }
+        int segment = segment(value, 0x1F);
+        if (segment >= 8) {
+            return (byte) (0x7F ^ mask);
+        }
+        int a = segment << 4;
+        a |= segment < 2 ? (value >> 1) & 0x0F : (value >> segment) & 0x0F;
+        return (byte) (a ^ mask);
+    }
+
+    // Index of the first segment whose end (firstEnd, doubling) is >= value, or 8
+    private static int segment(int value, int firstEnd) {
+        int end = firstEnd;
+        for (int segment = 0; segment < 8; segment++) {
+            if (value <= end) {
+                return segment;
+            }
+            end = (end << 1) | 1;
+        }
+        return 8;
+    }
+}
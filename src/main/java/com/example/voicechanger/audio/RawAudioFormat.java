@@ -0,0 +1,100 @@
+package com.example.voicechanger.audio;
+
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Optional;
+
+/**
+ * Headerless audio described entirely by its content type: {@code audio/L16} (16-bit big-endian
+ * PCM, RFC 2586), {@code audio/PCMU} (G.711 µ-law) or {@code audio/PCMA} (G.711 A-law). The
+ * {@code rate} and {@code channels} parameters default to 8000 and 1.
+ */
+public record RawAudioFormat(Encoding encoding, int sampleRate, int channels) {
+
+    public enum Encoding {
+        L16,
+        PCMU,
+        PCMA
+    }
+
+    /**
+     * Reads a content type such as {@code audio/L16;rate=8000;channels=1}.
+     *
+     * @return empty if the content type is not a raw audio type
+     * @throws IllegalArgumentException if the content type or its parameters are malformed
+     */
+    public static Optional<RawAudioFormat> fromContentType(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return Optional.empty();
+        }
+        MimeType mimeType = MimeTypeUtils.parseMimeType(contentType);
+        if (!"audio".equalsIgnoreCase(mimeType.getType())) {
+            return Optional.empty();
+        }
+        Encoding encoding;
+        if ("L16".equalsIgnoreCase(mimeType.getSubtype())) {
+            encoding = Encoding.L16;
+        } else if ("PCMU".equalsIgnoreCase(mimeType.getSubtype())) {
+            encoding = Encoding.PCMU;
+        } else if ("PCMA".equalsIgnoreCase(mimeType.getSubtype())) {
+            encoding = Encoding.PCMA;
+        } else {
+            return Optional.empty();
+        }
+        return Optional.of(new RawAudioFormat(encoding,
+                intParameter(mimeType, "rate", 8000), intParameter(mimeType, "channels", 1)));
+    }
+
+    private static int intParameter(MimeType mimeType, String name, int defaultValue) {
+        String value = mimeType.getParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " parameter: " + value);
+        }
+    }
+
+    /**
+     * Decodes a body of this format to 16-bit mono samples at {@code targetRate}. 8 kHz mono L16 is
+     * returned as a view over {@code body}; anything else is mixed down and resampled in-process.
+     *
+     * @throws IllegalArgumentException if the rate or channel count is not positive
+     */
+    public ShortBuffer decode(byte[] body, int targetRate) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("Invalid raw " + encoding + " format: " + sampleRate + " Hz, " +
+                    channels + " channels");
+        }
+        if (encoding == Encoding.L16) {
+            ShortBuffer samples = ByteBuffer.wrap(body, 0, body.length & ~1).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+            if (sampleRate == targetRate && channels == 1) {
+                return samples;
+            }
+            float[] mono = new float[samples.remaining() / channels];
+            ChannelMixer.toMono(samples, channels, mono, 0);
+            return ShortBuffer.wrap(Resampler.of(sampleRate, targetRate).process(mono));
+        }
+
+        int formatTag = encoding == Encoding.PCMU ? WavFormat.MULAW : WavFormat.ALAW;
+        if (sampleRate == targetRate && channels == 1) {
+            short[] samples = new short[body.length];
+            if (encoding == Encoding.PCMU) {
+                G711.decodeUlaw(body, 0, samples, 0, body.length);
+            } else {
+                G711.decodeAlaw(body, 0, samples, 0, body.length);
+            }
+            return ShortBuffer.wrap(samples);
+        }
+        WavFormat format = new WavFormat(formatTag, channels, sampleRate, sampleRate * channels, channels, 8, 8, 0);
+        float[] mono = new float[body.length / channels];
+        ChannelMixer.toMono(ByteBuffer.wrap(body), format, mono, 0);
+        return ShortBuffer.wrap(Resampler.of(sampleRate, targetRate).process(mono));
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.voicechanger.audio;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Windowed-sinc polyphase sample-rate converter.
+ * <p>
+ * The ratio is reduced to {@code L/M} (output/input); output sample {@code n} sits at input
+ * position {@code n * M / L}, and its fractional part selects one of the precomputed filter phases.
+ * The low-pass cutoff follows the lower of the two Nyquist frequencies, so downsampling is
+ * anti-aliased. Each phase is Kaiser-windowed and normalised to unity DC gain.
+ * <p>
+ * Tables are built once per rate pair and shared; {@link #process(float[], int, int, short[], int)}
+ * allocates nothing and is thread-safe. Ratios with more than {@value #MAX_PHASES} phases (e.g. 8001 to 8000 Hz) use the
+ * nearest of {@value #MAX_PHASES} evenly spaced phases.
+ */
+public final class Resampler {
+
+    private static final int ZERO_CROSSINGS = 16;
+    private static final double ROLLOFF = 0.92;
+    private static final double KAISER_BETA = 8.6;
+    private static final int MAX_PHASES = 1024;
+
+    private static final Map<Long, Resampler> CACHE = new ConcurrentHashMap<>();
+
+    static {
+        // Tables for the usual upload rates to the 8 kHz processing rate
+        for (int rate : new int[]{11025, 16000, 22050, 32000, 44100, 48000}) {
+            of(rate, 8000);
+        }
+    }
+
+    private final int inputRate;
+    private final int outputRate;
+    private final long up;   // L
+    private final long down; // M
+    private final int phases;
+    private final int taps;
+    private final int half;
+    private final float[] table; // phases x taps
+
+    private Resampler(int inputRate, int outputRate) {
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        long gcd = gcd(inputRate, outputRate);
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        this.phases = (int) Math.min(up, MAX_PHASES);
+
+        // Cutoff as a fraction of the input Nyquist frequency
+        double cutoff = Math.min(1.0, (double) outputRate / inputRate) * ROLLOFF;
+        this.half = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+        this.taps = 2 * half;
+        this.table = new float[phases * taps];
+
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int p = 0; p < phases; p++) {
+            double fraction = (double) p / phases;
+            double sum = 0;
+            double[] kernel = new double[taps];
+            for (int k = 0; k < taps; k++) {
+                // Distance in input samples from tap k to the output position
+                double t = k - half + 1 - fraction;
+                double x = t / half;
+                double window = Math.abs(x) >= 1 ? 0 : besselI0(KAISER_BETA * Math.sqrt(1 - x * x)) / i0Beta;
+                kernel[k] = cutoff * sinc(cutoff * t) * window;
+                sum += kernel[k];
+            }
+            for (int k = 0; k < taps; k++) {
+                table[p * taps + k] = (float) (kernel[k] / sum);
+            }
+        }
+    }
+
+    /**
+     * The shared resampler for a rate pair.
+     *
+     * @throws IllegalArgumentException if either rate is not positive
+     */
+    public static Resampler of(int inputRate, int outputRate) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Sample rates must be positive: " + inputRate + " -> " + outputRate);
+        }
+        return CACHE.computeIfAbsent(((long) inputRate << 32) | outputRate, key -> new Resampler(inputRate, outputRate));
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    /**
+     * Number of output samples {@link #process} writes for {@code inputLength} input samples.
+     */
+    public int outputLength(int inputLength) {
+        return (int) outputLength((long) inputLength);
+    }
+
+    /**
+     * Same as {@link #outputLength(int)} for inputs whose output may not fit an {@code int}.
+     */
+    public long outputLength(long inputLength) {
+        return (inputLength * up + down - 1) / down;
+    }
+
+    /**
+     * Resamples {@code length} samples of {@code input} (in 16-bit scale) and writes
+     * {@link #outputLength(int)} samples to {@code output}, saturated to 16 bits. The signal is
+     * taken to be silent outside the given range.
+     */
+    public void process(float[] input, int offset, int length, short[] output, int outputOffset) {
+        int count = outputLength(length);
+        if (up == down) {
+            for (int n = 0; n < count; n++) {
+                output[outputOffset + n] = saturate(input[offset + n]);
+            }
+            return;
+        }
+
+        for (int n = 0; n < count; n++) {
+            long position = n * down;
+            // Nearest phase; past the last one it is phase 0 of the next input sample
+            long scaled = ((position % up) * phases + up / 2) / up;
+            int index = (int) (position / up + scaled / phases);
+            int phase = (int) (scaled % phases);
+            int base = phase * taps;
+            int start = index - half + 1;
+
+            float sum = 0;
+            if (start >= 0 && start + taps <= length) {
+                int from = offset + start;
+                for (int k = 0; k < taps; k++) {
+                    sum += input[from + k] * table[base + k];
+                }
+            } else {
+                int first = Math.max(0, -start);
+                int last = Math.min(taps, length - start);
+                for (int k = first; k < last; k++) {
+                    sum += input[offset + start + k] * table[base + k];
+                }
+            }
+            output[outputOffset + n] = saturate(sum);
+        }
+    }
+
+    /**
+     * Resamples a whole signal into a new array.
+     */
+    public short[] process(float[] input) {
+        short[] output = new short[outputLength(input.length)];
+        process(input, 0, input.length, output, 0);
+        return output;
+    }
+
+    /**
+     * Starts resampling a signal that arrives in pieces.
+     */
+    public Stream stream() {
+        return new Stream();
+    }
+
+    /**
+     * Resamples one signal incrementally: the output is sample for sample what
+     * {@link #process(float[])} makes of the whole signal, and each output sample is written as soon
+     * as the input it depends on has arrived (half a filter length later). Not thread-safe.
+     */
+    public final class Stream {
+        // Input from absolute index `start` on, as far as later output still needs it
+        private float[] pending = new float[4096];
+        private long start;
+        private int count;
+        private long next;
+
+        private Stream() {
+        }
+
+        /**
+         * Room {@link #process} and {@link #finish} need in their output for {@code inputLength}
+         * input samples.
+         */
+        public int maxOutput(int inputLength) {
+            return outputLength(inputLength + taps);
+        }
+
+        /**
+         * Adds {@code length} samples (in 16-bit scale) to the signal and writes the output they
+         * complete, saturated to 16 bits.
+         *
+         * @return number of samples written
+         */
+        public int process(float[] input, int offset, int length, short[] output, int outputOffset) {
+            if (up == down) {
+                for (int n = 0; n < length; n++) {
+                    output[outputOffset + n] = saturate(input[offset + n]);
+                }
+                next += length;
+                return length;
+            }
+            append(input, offset, length);
+            return emit(false, output, outputOffset);
+        }
+
+        /**
+         * Ends the signal, writing the output that depends on its last samples.
+         *
+         * @return number of samples written
+         */
+        public int finish(short[] output, int outputOffset) {
+            return up == down ? 0 : emit(true, output, outputOffset);
+        }
+
+        private void append(float[] input, int offset, int length) {
+            if (count + length > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, count + length));
+            }
+            System.arraycopy(input, offset, pending, count, length);
+            count += length;
+        }
+
+        private int emit(boolean atEnd, short[] output, int outputOffset) {
+            long total = start + count;
+            long last = atEnd ? outputLength(Math.toIntExact(total)) : Long.MAX_VALUE;
+            int written = 0;
+            for (; next < last; next++) {
+                long position = next * down;
+                long scaled = ((position % up) * phases + up / 2) / up;
+                long index = position / up + scaled / phases;
+                int phase = (int) (scaled % phases);
+                int base = phase * taps;
+                long first = index - half + 1;
+                if (!atEnd && first + taps > total) {
+                    break;
+                }
+
+                // Same taps in the same order as process(), so the sums round identically
+                float sum = 0;
+                int at = (int) (first - start);
+                if (first >= 0 && first + taps <= total) {
+                    for (int k = 0; k < taps; k++) {
+                        sum += pending[at + k] * table[base + k];
+                    }
+                } else {
+                    int from = (int) Math.max(0, -first);
+                    int to = (int) Math.min(taps, total - first);
+                    for (int k = from; k < to; k++) {
+                        sum += pending[at + k] * table[base + k];
+                    }
+                }
+                output[outputOffset + written++] = saturate(sum);
+            }
+
+            // Drop the input no later output reaches back to
+            long needed = Math.max(start, next * down / up - half + 1);
+            int drop = (int) Math.min(needed - start, count);
+            System.arraycopy(pending, drop, pending, 0, count - drop);
+            count -= drop;
+            start += drop;
+            return written;
+        }
+    }
+
+    private static short saturate(float sample) {
+        int rounded = Math.round(sample);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, rounded));
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) return 1;
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1, term = 1, halfX = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12) break;
+        }
+        return sum;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
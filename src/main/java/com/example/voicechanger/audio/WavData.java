@@ -0,0 +1,28 @@
+package com.example.voicechanger.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * A parsed in-memory WAV file: its format and a view of the {@code data} chunk inside the original
+ * byte array. Nothing is copied.
+ */
+public record WavData(WavFormat format, ByteBuffer payload) {
+
+    /**
+     * The payload as little-endian 16-bit samples (interleaved if there are several channels).
+     *
+     * @throws IllegalStateException if the file is not 16-bit PCM
+     */
+    public ShortBuffer samples() {
+        if (!format.isPcm16()) {
+            throw new IllegalStateException("Not 16-bit PCM: " + format);
+        }
+        return payload.duplicate().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+    }
+
+    public int frameCount() {
+        return payload.remaining() / format.blockAlign();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.voicechanger.audio;
+
+/**
+ * Contents of a WAVE {@code fmt } chunk. For {@code WAVE_FORMAT_EXTENSIBLE} files
+ * {@link #formatTag()} is the tag taken from the sub-format GUID, so callers only ever see
+ * {@link #PCM}, {@link #IEEE_FLOAT}, etc.
+ */
+public record WavFormat(int formatTag, int channels, int sampleRate, int byteRate, int blockAlign,
+                        int bitsPerSample, int validBitsPerSample, int channelMask) {
+
+    public static final int PCM = 0x0001;
+    public static final int IEEE_FLOAT = 0x0003;
+    public static final int ALAW = 0x0006;
+    public static final int MULAW = 0x0007;
+    public static final int EXTENSIBLE = 0xFFFE;
+
+    public boolean isPcm16() {
+        return formatTag == PCM && bitsPerSample == 16;
+    }
+
+    /**
+     * Whether the payload is already 16-bit signed mono PCM at {@code rate}, i.e. usable as-is.
+     */
+    public boolean isPcm16Mono(int rate) {
+        return isPcm16() && channels == 1 && sampleRate == rate;
+    }
+
+    /**
+     * Encoding name in the style of {@code javax.sound.sampled.AudioFormat.Encoding}, for logging.
+     */
+    public String encoding() {
+        return switch (formatTag) {
+            case PCM -> bitsPerSample == 8 ? "PCM_UNSIGNED" : "PCM_SIGNED";
+            case IEEE_FLOAT -> "PCM_FLOAT";
+            case ALAW -> "ALAW";
+            case MULAW -> "ULAW";
+            default -> String.format("0x%04X", formatTag);
+        };
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.voicechanger.audio;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Single-pass RIFF/WAVE parser.
+ * <p>
+ * Reads the {@code fmt } chunk (including {@code WAVE_FORMAT_EXTENSIBLE}), skips any other chunks
+ * ({@code LIST}, {@code fact}, ...) and stops at {@code data}. In-memory files are exposed as a view
+ * of the original array ({@link #parse(byte[])}); streams are read incrementally
+ * ({@link #open(InputStream)}), so neither path buffers the audio a second time.
+ * <p>
+ * A {@code data} size of 0 or 0xFFFFFFFF, or one larger than what follows (as written by encoders
+ * piping to stdout), is taken to mean "until the end".
+ */
+public final class WavParser {
+
+    private static final int RIFF = 0x46464952; // "RIFF" read little-endian
+    private static final int WAVE = 0x45564157;
+    private static final int FMT = 0x20746D66;
+    private static final int DATA = 0x61746164;
+
+    private WavParser() {
+    }
+
+    /**
+     * Whether {@code data} starts with a RIFF/WAVE header.
+     */
+    public static boolean isWav(byte[] data) {
+        if (data.length < 12) return false;
+        ByteBuffer header = ByteBuffer.wrap(data, 0, 12).order(ByteOrder.LITTLE_ENDIAN);
+        return header.getInt(0) == RIFF && header.getInt(8) == WAVE;
+    }
+
+    /**
+     * Parses an in-memory WAV file without copying its audio.
+     *
+     * @throws IOException if the file is not a well-formed WAV file
+     */
+    public static WavData parse(byte[] data) throws IOException {
+        if (!isWav(data)) {
+            throw new IOException("Not a RIFF/WAVE file");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(12);
+
+        WavFormat format = null;
+        while (buffer.remaining() >= 8) {
+            int id = buffer.getInt();
+            long size = Integer.toUnsignedLong(buffer.getInt());
+            if (id == FMT) {
+                if (size < 16 || size > buffer.remaining()) {
+                    throw new IOException("Truncated fmt chunk");
+                }
+                byte[] fmt = new byte[(int) size];
+                buffer.get(fmt);
+                format = parseFormat(fmt);
+                skipPad(buffer, size);
+            } else if (id == DATA) {
+                if (format == null) {
+                    throw new IOException("data chunk before fmt chunk");
+                }
+                int length = (size == 0 || size > buffer.remaining()) ? buffer.remaining() : (int) size;
+                // Whole frames only
+                length -= length % format.blockAlign();
+                ByteBuffer payload = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+                return new WavData(format, payload);
+            } else {
+                if (size > buffer.remaining()) break;
+                buffer.position(buffer.position() + (int) size);
+                skipPad(buffer, size);
+            }
+        }
+        throw new IOException(format == null ? "No fmt chunk" : "No data chunk");
+    }
+
+    /**
+     * Reads the header of a WAV stream, leaving the stream positioned at the first sample.
+     *
+     * @throws IOException if the stream is not a well-formed WAV file
+     */
+    public static WavStream open(InputStream in) throws IOException {
+        byte[] header = new byte[12];
+        readFully(in, header, header.length);
+        if (!isWav(header)) {
+            throw new IOException("Not a RIFF/WAVE file");
+        }
+
+        byte[] chunkHeader = new byte[8];
+        WavFormat format = null;
+        while (true) {
+            readFully(in, chunkHeader, 8);
+            ByteBuffer chunk = ByteBuffer.wrap(chunkHeader).order(ByteOrder.LITTLE_ENDIAN);
+            int id = chunk.getInt(0);
+            long size = Integer.toUnsignedLong(chunk.getInt(4));
+            if (id == FMT) {
+                if (size < 16 || size > 1024) {
+                    throw new IOException("Bad fmt chunk size " + size);
+                }
+                byte[] fmt = new byte[(int) size];
+                readFully(in, fmt, fmt.length);
+                format = parseFormat(fmt);
+                skip(in, size & 1);
+            } else if (id == DATA) {
+                if (format == null) {
+                    throw new IOException("data chunk before fmt chunk");
+                }
+                long length = (size == 0 || size == 0xFFFFFFFFL) ? -1 : size;
+                return new WavStream(in, format, length);
+            } else {
+                skip(in, size + (size & 1));
+            }
+        }
+    }
+
+    private static WavFormat parseFormat(byte[] fmt) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(fmt).order(ByteOrder.LITTLE_ENDIAN);
+        int formatTag = Short.toUnsignedInt(b.getShort(0));
+        int channels = Short.toUnsignedInt(b.getShort(2));
+        int sampleRate = b.getInt(4);
+        int byteRate = b.getInt(8);
+        int blockAlign = Short.toUnsignedInt(b.getShort(12));
+        int bitsPerSample = Short.toUnsignedInt(b.getShort(14));
+        int validBits = bitsPerSample;
+        int channelMask = 0;
+
+        if (formatTag == WavFormat.EXTENSIBLE) {
+            if (fmt.length < 40 || Short.toUnsignedInt(b.getShort(16)) < 22) {
+                throw new IOException("Truncated WAVE_FORMAT_EXTENSIBLE fmt chunk");
+            }
+            validBits = Short.toUnsignedInt(b.getShort(18));
+            channelMask = b.getInt(20);
+            // The sub-format GUID starts with the plain format tag
+            formatTag = Short.toUnsignedInt(b.getShort(24));
+        }
+
+        if (channels == 0 || sampleRate <= 0 || blockAlign == 0) {
+            throw new IOException("Invalid fmt chunk: channels=" + channels + ", rate=" + sampleRate +
+                    ", blockAlign=" + blockAlign);
+        }
+        return new WavFormat(formatTag, channels, sampleRate, byteRate, blockAlign, bitsPerSample,
+                validBits == 0 ? bitsPerSample : validBits, channelMask);
+    }
+
+    private static void skipPad(ByteBuffer buffer, long size) {
+        if ((size & 1) != 0 && buffer.hasRemaining()) {
+            buffer.get();
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int read = in.readNBytes(buffer, 0, length);
+        if (read < length) {
+            throw new EOFException("Unexpected end of WAV header");
+        }
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        in.skipNBytes(count);
+    }
+
+    /**
+     * The sample data of a WAV stream, read incrementally.
+     */
+    public static final class WavStream implements Closeable {
+        private final InputStream in;
+        private final WavFormat format;
+        private final long dataLength;
+        private long remaining;
+        private final byte[] scratch = new byte[8192];
+
+        private WavStream(InputStream in, WavFormat format, long dataLength) {
+            this.in = in;
+            this.format = format;
+            this.dataLength = dataLength;
+            this.remaining = dataLength < 0 ? Long.MAX_VALUE : dataLength;
+        }
+
+        public WavFormat format() {
+            return format;
+        }
+
+        /**
+         * Size of the {@code data} chunk in bytes, or -1 if the header doesn't say.
+         */
+        public long dataLength() {
+            return dataLength;
+        }
+
+        /**
+         * Reads up to {@code length} 16-bit samples, blocking until at least one is available.
+         *
+         * @return the number of samples read, or -1 at the end of the data
+         * @throws IOException if the stream is not 16-bit PCM or cannot be read
+         */
+        public int read(short[] samples, int offset, int length) throws IOException {
+            if (!format.isPcm16()) {
+                throw new IOException("Only 16-bit PCM can be read as samples, got " + format);
+            }
+            int wanted = (int) Math.min(Math.min(length, scratch.length / 2), remaining / 2);
+            if (wanted == 0) return -1;
+
+            int bytes = in.readNBytes(scratch, 0, wanted * 2);
+            int count = bytes / 2;
+            if (count == 0) return -1;
+            remaining -= count * 2L;
+            ByteBuffer.wrap(scratch, 0, count * 2).order(ByteOrder.LITTLE_ENDIAN)
+                    .asShortBuffer().get(samples, offset, count);
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
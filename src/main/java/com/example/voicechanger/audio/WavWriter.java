@@ -0,0 +1,93 @@
+package com.example.voicechanger.audio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Streams 16-bit PCM WAV files, or any other {@link AudioOutputFormat}, to an {@link OutputStream}:
+ * the header goes out on construction (so the sample count must be known up front) and samples are
+ * encoded through a small scratch buffer as they are written. {@link AudioOutputFormat#toByteArray}
+ * builds a whole file in a single allocation instead.
+ */
+public final class WavWriter {
+
+    public static final int HEADER_SIZE = 44;
+
+    private final OutputStream out;
+    private final AudioOutputFormat format;
+    private final ByteBuffer scratch = ByteBuffer.allocate(16384).order(ByteOrder.LITTLE_ENDIAN);
+    private long remaining;
+
+    public WavWriter(OutputStream out, int sampleRate, int channels, int sampleCount) throws IOException {
+        this(out, sampleRate, channels, sampleCount, AudioOutputFormat.WAV);
+    }
+
+    public WavWriter(OutputStream out, int sampleRate, int channels, int sampleCount, AudioOutputFormat format)
+            throws IOException {
+        this.out = out;
+        this.format = format;
+        this.remaining = (long) sampleCount * channels;
+        ByteBuffer header = ByteBuffer.allocate(format.headerSize()).order(ByteOrder.LITTLE_ENDIAN);
+        format.writeHeader(header, sampleRate, channels, sampleCount);
+        out.write(header.array());
+    }
+
+    /**
+     * Writes the 44-byte canonical PCM header at the buffer's position, which must be little-endian.
+     * A negative {@code dataSize} (length not known yet) writes {@code 0xFFFFFFFF} sizes, which
+     * streaming readers, {@link WavParser} included, take as "until the end of the stream".
+     */
+    public static void writeHeader(ByteBuffer target, int sampleRate, int channels, int dataSize) {
+        int bitsPerSample = 16;
+        int blockAlign = channels * bitsPerSample / 8;
+
+        // RIFF header
+        target.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        target.putInt(dataSize < 0 ? -1 : 36 + dataSize);
+        target.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+
+        // Format chunk
+        target.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        target.putInt(16); // chunk size
+        target.putShort((short) WavFormat.PCM);
+        target.putShort((short) channels);
+        target.putInt(sampleRate);
+        target.putInt(sampleRate * blockAlign); // byte rate
+        target.putShort((short) blockAlign);
+        target.putShort((short) bitsPerSample);
+
+        // Data chunk
+        target.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        target.putInt(dataSize < 0 ? -1 : dataSize);
+    }
+
+    public void write(short[] samples, int offset, int length) throws IOException {
+        write(ShortBuffer.wrap(samples, offset, length));
+    }
+
+    /**
+     * Writes the remaining samples of {@code samples}, consuming them.
+     *
+     * @throws IOException if more samples are written than the header announced
+     */
+    public void write(ShortBuffer samples) throws IOException {
+        if (samples.remaining() > remaining) {
+            throw new IOException("WAV header announced " + remaining + " more samples, got " + samples.remaining());
+        }
+        remaining -= samples.remaining();
+        while (samples.hasRemaining()) {
+            int count = Math.min(samples.remaining(), scratch.capacity() / 2);
+            scratch.clear();
+            format.encode(samples.slice(samples.position(), count), scratch);
+            samples.position(samples.position() + count);
+            out.write(scratch.array(), 0, scratch.position());
+        }
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.voicechanger.config;
+
+import com.example.voicechanger.controller.VoiceStreamEndpoint;
+import com.example.voicechanger.service.VoiceProcessingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletContext;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.server.ServerContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registers the WebSocket endpoints with the servlet container's own {@link ServerContainer}
+ * (Tomcat's, which ships with the web starter), once the embedded server exists. Each connection
+ * gets a new endpoint instance; they share the count of open voice streams.
+ */
+@Component
+public class WebSocketConfig implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    private final ServletContext servletContext;
+    private final VoiceProcessingService voiceProcessingService;
+    private final ObjectMapper objectMapper;
+    private final AtomicInteger voiceStreams = new AtomicInteger();
+
+    // Each open stream holds a processor of its own, outside the request pool
+    @Value("${voice.ws.max.connections:64}")
+    private int maxConnections;
+
+    @Value("${voice.live.default.quality:low_latency}")
+    private String defaultQuality;
+
+    // Processed frames waiting for a slow client before the oldest is dropped
+    @Value("${voice.ws.max.queued.frames:10}")
+    private int maxQueuedFrames;
+
+    // 0 = only on request
+    @Value("${voice.ws.stats.interval.ms:1000}")
+    private long statsIntervalMs;
+
+    public WebSocketConfig(ServletContext servletContext, VoiceProcessingService voiceProcessingService,
+                           ObjectMapper objectMapper) {
+        this.servletContext = servletContext;
+        this.voiceProcessingService = voiceProcessingService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        ServerContainer container = (ServerContainer) servletContext.getAttribute(ServerContainer.class.getName());
+        if (container == null) {
+            logger.warn("No WebSocket container; {} is not available", VoiceStreamEndpoint.PATH);
+            return;
+        }
+
+        ServerEndpointConfig config = ServerEndpointConfig.Builder.create(VoiceStreamEndpoint.class, VoiceStreamEndpoint.PATH)
+                .configurator(new ServerEndpointConfig.Configurator() {
+                    @Override
+                    public <T> T getEndpointInstance(Class<T> endpointClass) {
+                        return endpointClass.cast(new VoiceStreamEndpoint(voiceProcessingService, objectMapper,
+                                voiceStreams, maxConnections, defaultQuality, maxQueuedFrames, statsIntervalMs));
+                    }
+                })
+                .build();
+        try {
+            container.addEndpoint(config);
+            logger.info("Voice stream WebSocket at {}", VoiceStreamEndpoint.PATH);
+        } catch (DeploymentException e) {
+            throw new IllegalStateException("Cannot register " + VoiceStreamEndpoint.PATH, e);
+        }
+    }
+}
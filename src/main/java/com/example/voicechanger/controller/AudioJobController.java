@@ -0,0 +1,160 @@
+package com.example.voicechanger.controller;
+
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.dsp.DspQuality;
+import com.example.voicechanger.dto.VoiceProcessRequest;
+import com.example.voicechanger.service.AudioJobService;
+import com.example.voicechanger.service.AudioJobService.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Job-based processing for large uploads: {@code POST /api/jobs} spools the upload and returns a
+ * job id at once, the status can be polled (or long-polled with {@code wait}) without holding a
+ * request thread, and the result is downloaded when it is ready.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class AudioJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioJobController.class);
+    private static final int MAX_WAIT_SECONDS = 60;
+
+    private final AudioJobService jobService;
+
+    public AudioJobController(AudioJobService jobService) {
+        this.jobService = jobService;
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submit(
+            @RequestParam("audio") MultipartFile audioFile,
+            @RequestParam(value = "shift", defaultValue = "10.0") double shift,
+            @RequestParam(value = "formant", defaultValue = "2.0") double formant,
+            @RequestParam(value = "base", defaultValue = "100.0") double base,
+            @RequestParam(value = "quality", defaultValue = "standard") String quality,
+            @RequestParam(value = "format", defaultValue = "wav") String format) {
+
+        try {
+            logger.info("Received job: name={}, size={} bytes, shift={}, formant={}, base={}, quality={}, format={}",
+                    audioFile.getOriginalFilename(), audioFile.getSize(), shift, formant, base, quality, format);
+
+            VoiceProcessRequest request = new VoiceProcessRequest((float) shift, (float) formant, (float) base);
+            request.setQuality(DspQuality.fromName(quality));
+            Job job = jobService.submit(audioFile, request, AudioOutputFormat.fromName(format));
+
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/jobs/" + job.getId()))
+                    .body(describe(job));
+
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid job request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (RejectedExecutionException e) {
+            logger.warn("Job rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error queueing job", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * The job's state and progress. With {@code wait} > 0 the response is held (without a request
+     * thread) until the job finishes or that many seconds pass, whichever is first.
+     */
+    @GetMapping("/{id}")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> status(
+            @PathVariable String id,
+            @RequestParam(value = "wait", defaultValue = "0") int waitSeconds) {
+
+        long timeoutMs = Math.min(Math.max(waitSeconds, 0), MAX_WAIT_SECONDS) * 1000L;
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(timeoutMs > 0 ? timeoutMs : null);
+        Optional<Job> found = jobService.get(id);
+        if (found.isEmpty()) {
+            result.setResult(ResponseEntity.notFound().build());
+            return result;
+        }
+
+        Job job = found.get();
+        if (timeoutMs == 0 || job.getState().isFinished()) {
+            result.setResult(ResponseEntity.ok(describe(job)));
+            return result;
+        }
+        result.onTimeout(() -> result.setResult(ResponseEntity.ok(describe(job))));
+        job.getCompletion().thenAccept(finished -> result.setResult(ResponseEntity.ok(describe(finished))));
+        return result;
+    }
+
+    /**
+     * Downloads the processed file of a finished job; 409 with the status while it is still
+     * queued or running (or if it failed).
+     */
+    @GetMapping("/{id}/result")
+    public ResponseEntity<?> result(@PathVariable String id) {
+        Optional<Job> found = jobService.get(id);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Job job = found.get();
+        if (job.getState() != AudioJobService.State.DONE) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(describe(job));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(job.getFormat().contentType()));
+        headers.setContentDispositionFormData("attachment", "processed_audio." + job.getFormat().extension());
+        Resource file = new FileSystemResource(jobService.resultFile(job));
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(file);
+    }
+
+    /**
+     * Cancels a queued or running job, or deletes a finished job's result.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id) {
+        return jobService.cancel(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    private static Map<String, Object> describe(Job job) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", job.getId());
+        status.put("state", job.getState().name().toLowerCase());
+        status.put("fileName", job.getFileName());
+        status.put("submittedAt", job.getSubmittedAt().toString());
+        status.put("totalSamples", job.getTotalSamples());
+        status.put("processedSamples", job.getProcessedSamples());
+        if (job.getFinishedAt() != null) {
+            status.put("finishedAt", job.getFinishedAt().toString());
+        }
+        if (job.getError() != null) {
+            status.put("error", job.getError());
+        }
+        if (job.getState() == AudioJobService.State.DONE) {
+            status.put("resultBytes", job.getResultBytes());
+            status.put("resultUrl", "/api/jobs/" + job.getId() + "/result");
+        }
+        return status;
+    }
+}
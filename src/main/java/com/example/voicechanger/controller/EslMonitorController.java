@@ -1,5 +1,6 @@
 package com.example.voicechanger.controller;
 
+import com.example.voicechanger.service.esl.CallStateRegistry;
 import com.example.voicechanger.service.esl.EslService;
 import com.example.voicechanger.service.esl.FreeSwitchEventListener;
 import lombok.extern.slf4j.Slf4j;
@@ -18,10 +19,13 @@ public class EslMonitorController {
 
     private final EslService eslService;
     private final FreeSwitchEventListener eventListener;
+    private final CallStateRegistry callStateRegistry;
 
-    public EslMonitorController(EslService eslService, FreeSwitchEventListener eventListener) {
+    public EslMonitorController(EslService eslService, FreeSwitchEventListener eventListener,
+                                CallStateRegistry callStateRegistry) {
         this.eslService = eslService;
         this.eventListener = eventListener;
+        this.callStateRegistry = callStateRegistry;
     }
 
     @GetMapping("/status")
@@ -33,6 +37,7 @@ public class EslMonitorController {
                 "status", eslService.getConnectionStatus(),
                 "reconnectAttempts", eslService.getReconnectAttempts(),
                 "eventsProcessed", eventListener.getEventCount(),
+                "trackedChannels", callStateRegistry.size(),
                 "timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
         ));
     }
@@ -0,0 +1,172 @@
+package com.example.voicechanger.controller;
+
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.audio.RawAudioFormat;
+import com.example.voicechanger.dsp.DspQuality;
+import com.example.voicechanger.dto.VoiceProcessRequest;
+import com.example.voicechanger.service.LiveSessionService;
+import com.example.voicechanger.service.LiveSessionService.Session;
+import com.example.voicechanger.service.VoiceProcessingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.nio.ShortBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Session mode of {@code /api/process-live}: open a session with a preset or custom settings,
+ * post the stream's chunks to it in order, and delete it to get the last samples. Each chunk
+ * continues the same stream on the session's own processor and returns only its new output.
+ */
+@RestController
+@RequestMapping("/api/process-live/sessions")
+public class LiveSessionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveSessionController.class);
+
+    private final LiveSessionService sessionService;
+    private final VoiceProcessingService voiceProcessingService;
+
+    public LiveSessionController(LiveSessionService sessionService, VoiceProcessingService voiceProcessingService) {
+        this.sessionService = sessionService;
+        this.voiceProcessingService = voiceProcessingService;
+    }
+
+    /**
+     * Opens a session. {@code preset} (a name or {@code /voiceTest} code) takes precedence over
+     * {@code shift}, {@code formant} and {@code base}.
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> open(
+            @RequestParam(value = "preset", required = false) String preset,
+            @RequestParam(value = "shift", defaultValue = "10.0") double shift,
+            @RequestParam(value = "formant", defaultValue = "2.0") double formant,
+            @RequestParam(value = "base", defaultValue = "100.0") double base,
+            @RequestParam(value = "quality", defaultValue = "${voice.live.default.quality:low_latency}") String quality,
+            @RequestParam(value = "format", defaultValue = "wav") String format) {
+
+        try {
+            VoiceProcessRequest request = preset != null
+                    ? VoiceProcessRequest.preset(preset)
+                    : new VoiceProcessRequest((float) shift, (float) formant, (float) base);
+            request.setQuality(DspQuality.fromName(quality));
+            Session session = sessionService.open(request, AudioOutputFormat.fromName(format));
+
+            return ResponseEntity.created(URI.create("/api/process-live/sessions/" + session.getId()))
+                    .body(describe(session));
+
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid live session request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (RejectedExecutionException e) {
+            logger.warn("Live session rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error opening live session", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable String id) {
+        return sessionService.get(id)
+                .map(session -> ResponseEntity.ok(describe(session)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Processes the next chunk (WAV, MP3, or raw {@code audio/L16} / {@code audio/PCMU} /
+     * {@code audio/PCMA} as for {@code /api/process}) and returns the output it produced. Any of
+     * {@code shift}, {@code formant} and {@code base} changes that setting from this chunk on.
+     */
+    @PostMapping("/{id}")
+    public ResponseEntity<byte[]> chunk(
+            @PathVariable String id,
+            @RequestBody byte[] audioData,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+            @RequestParam(value = "shift", required = false) Float shift,
+            @RequestParam(value = "formant", required = false) Float formant,
+            @RequestParam(value = "base", required = false) Float base) {
+
+        try {
+            Optional<Session> session = sessionService.get(id);
+            if (session.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+
+            // Raw L16/PCMU/PCMA chunks skip container detection entirely
+            Optional<RawAudioFormat> rawFormat = RawAudioFormat.fromContentType(contentType);
+            ShortBuffer pcm = rawFormat.isPresent()
+                    ? voiceProcessingService.decodeRaw(audioData, rawFormat.get())
+                    : voiceProcessingService.decodeAudio(audioData);
+
+            VoiceProcessRequest settings = null;
+            if (shift != null || formant != null || base != null) {
+                VoiceProcessRequest current = session.get().getRequest();
+                settings = new VoiceProcessRequest(
+                        shift != null ? shift : current.getShift(),
+                        formant != null ? formant : current.getFormant(),
+                        base != null ? base : current.getBase());
+            }
+
+            AudioOutputFormat outputFormat = session.get().getFormat();
+            return sessionService.process(id, pcm, settings)
+                    .map(processed -> ResponseEntity.ok()
+                            .contentType(MediaType.parseMediaType(outputFormat.contentType()))
+                            .body(processed))
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid live session chunk: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error processing live session chunk", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Closes the session and returns the samples still inside its processor.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<byte[]> close(@PathVariable String id) {
+        Optional<Session> session = sessionService.get(id);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        AudioOutputFormat outputFormat = session.get().getFormat();
+        return sessionService.close(id)
+                .map(tail -> ResponseEntity.ok()
+                        .contentType(MediaType.parseMediaType(outputFormat.contentType()))
+                        .body(tail))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private Map<String, Object> describe(Session session) {
+        VoiceProcessRequest request = session.getRequest();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", session.getId());
+        status.put("shift", request.getShift());
+        status.put("formant", request.getFormant());
+        status.put("base", request.getBase());
+        status.put("quality", request.getQuality().name().toLowerCase());
+        status.put("format", session.getFormat().name().toLowerCase());
+        status.put("openedAt", session.getOpenedAt().toString());
+        status.put("receivedSamples", session.getReceivedSamples());
+        status.put("returnedSamples", session.getReturnedSamples());
+        status.put("latencyMs", voiceProcessingService.getLatency(request.getQuality()).totalMs());
+        status.put("chunkUrl", "/api/process-live/sessions/" + session.getId());
+        return status;
+    }
+}
@@ -3,26 +3,33 @@ package com.example.voicechanger.controller;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.multipart.MultipartFile;
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.audio.RawAudioFormat;
 import com.example.voicechanger.dto.VoiceChangerDto;
 import com.example.voicechanger.dto.VoiceChangerDto.*;
+import com.example.voicechanger.service.ProcessedAudioCache;
+import com.example.voicechanger.service.ProcessedAudioCache.CachedAudio;
 import com.example.voicechanger.service.VoiceChangerService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
-import java.nio.file.Files;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
-@CrossOrigin(origins = "*", methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.OPTIONS})
+@CrossOrigin(origins = "*", methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.OPTIONS},
+        exposedHeaders = HttpHeaders.ETAG)
 @RestController
 @RequestMapping("/voicechanger")
 public class VoiceChangerController {
 
     private final VoiceChangerService service;
+    private final ProcessedAudioCache audioCache;
 
-    public VoiceChangerController(VoiceChangerService service) {
+    public VoiceChangerController(VoiceChangerService service, ProcessedAudioCache audioCache) {
         this.service = service;
+        this.audioCache = audioCache;
     }
 
     // Handle OPTIONS requests for CORS preflight
@@ -119,45 +126,55 @@ public class VoiceChangerController {
     }
     // ------------------- Voice Test Endpoints -------------------
     @PostMapping(value = "/test-upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<byte[]> testVoiceUpload(
+    public ResponseEntity<StreamingResponseBody> testVoiceUpload(
             @RequestParam("audio") MultipartFile audioFile,
-            @RequestParam("voiceType") String voiceType) {
+            @RequestParam("voiceType") String voiceType,
+            @RequestParam(value = "format", defaultValue = "wav") String format,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         try {
-            File processedFile = service.processAudioFile(audioFile, voiceType);
-            byte[] audioBytes = Files.readAllBytes(processedFile.toPath());
+            AudioOutputFormat outputFormat = AudioOutputFormat.fromName(format);
+            byte[] upload = audioFile.getBytes();
+            String key = audioCache.key(upload, service.getTestEngine(), voiceType.toLowerCase(), outputFormat);
+            if (audioCache.contains(key) && ProcessedAudioCache.matches(ifNoneMatch, ProcessedAudioCache.etag(key))) {
+                return ResponseEntity.status(org.springframework.http.HttpStatus.NOT_MODIFIED)
+                        .eTag(ProcessedAudioCache.etag(key)).build();
+            }
 
-            // Clean up
-            processedFile.delete();
+            CachedAudio processed = audioCache.get(key,
+                    () -> service.renderTestAudio(upload, Optional.empty(), voiceType, outputFormat));
 
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "morphed_voice.wav");
-            headers.setContentLength(audioBytes.length);
+            headers.setContentType(MediaType.parseMediaType(outputFormat.contentType()));
+            headers.setContentDispositionFormData("attachment", "morphed_voice." + outputFormat.extension());
+            headers.setContentLength(processed.size());
+            headers.setETag(processed.etag());
 
-            return new ResponseEntity<>(audioBytes, headers, org.springframework.http.HttpStatus.OK);
+            return new ResponseEntity<>(processed::writeTo, headers, org.springframework.http.HttpStatus.OK);
 
         } catch (Exception e) {
+            byte[] error = ("Error: " + e.getMessage()).getBytes();
             return ResponseEntity.status(org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Error: " + e.getMessage()).getBytes());
+                    .body(out -> out.write(error));
         }
     }
 
-    @PostMapping(value = "/test-live", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @PostMapping(value = "/test-live",
+            consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "audio/L16", "audio/PCMU", "audio/PCMA"})
     public ResponseEntity<byte[]> testLiveVoice(
             @RequestBody byte[] audioData,
-            @RequestParam("voiceType") String voiceType) {
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestParam("voiceType") String voiceType,
+            @RequestParam(value = "format", defaultValue = "wav") String format) {
 
         try {
-            File processedFile = service.processLiveAudio(audioData, voiceType);
-            byte[] audioBytes = Files.readAllBytes(processedFile.toPath());
-
-            // Clean up
-            processedFile.delete();
+            AudioOutputFormat outputFormat = AudioOutputFormat.fromName(format);
+            byte[] audioBytes = service.renderTestAudio(audioData, RawAudioFormat.fromContentType(contentType),
+                    voiceType, outputFormat);
 
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "morphed_live_voice.wav");
+            headers.setContentType(MediaType.parseMediaType(outputFormat.contentType()));
+            headers.setContentDispositionFormData("attachment", "morphed_live_voice." + outputFormat.extension());
 
             return new ResponseEntity<>(audioBytes, headers, org.springframework.http.HttpStatus.OK);
 
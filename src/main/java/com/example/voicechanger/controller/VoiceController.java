@@ -1,27 +1,51 @@
 package com.example.voicechanger.controller;
 
 
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.audio.RawAudioFormat;
+import com.example.voicechanger.dsp.DspQuality;
 import com.example.voicechanger.dto.VoiceProcessRequest;
+import com.example.voicechanger.service.ProcessedAudioCache;
+import com.example.voicechanger.service.ProcessedAudioCache.CachedAudio;
 import com.example.voicechanger.service.VoiceProcessingService;
+import com.example.voicechanger.service.VoiceProcessingService.ProcessedStream;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Controller
 @RequestMapping("/api")
 public class VoiceController {
 
     private static final Logger logger = LoggerFactory.getLogger(VoiceController.class);
+    private static final int MAX_RENDERINGS = 8;
 
     @Autowired
     private VoiceProcessingService voiceProcessingService;
 
+    @Autowired
+    private ProcessedAudioCache audioCache;
+
     @GetMapping("/")
     public String index() {
         return "index";
@@ -29,15 +53,17 @@ public class VoiceController {
 
     @PostMapping("/process")
     @ResponseBody
-    public ResponseEntity<byte[]> processAudio(
+    public ResponseEntity<StreamingResponseBody> processAudio(
             @RequestParam("audio") MultipartFile audioFile,
             @RequestParam(value = "shift", defaultValue = "10.0") double shift,
             @RequestParam(value = "formant", defaultValue = "2.0") double formant,
-            @RequestParam(value = "base", defaultValue = "100.0") double base) {
+            @RequestParam(value = "base", defaultValue = "100.0") double base,
+            @RequestParam(value = "quality", defaultValue = "standard") String quality,
+            @RequestParam(value = "format", defaultValue = "wav") String format) {
 
         try {
             logger.info("Received /process request");
-            logger.info("Shift: {}, Formant: {}, Base: {}", shift, formant, base);
+            logger.info("Shift: {}, Formant: {}, Base: {}, Quality: {}, Format: {}", shift, formant, base, quality, format);
             logger.info("Received audio file: name={}, size={} bytes, type={}",
                     audioFile.getOriginalFilename(), audioFile.getSize(), audioFile.getContentType());
 
@@ -46,21 +72,187 @@ public class VoiceController {
             request.setShift((float) shift);
             request.setFormant((float) formant);
             request.setBase((float) base);
+            request.setQuality(DspQuality.fromName(quality));
+
+            // Decode up front so bad uploads still get an error status, then stream the result
+            return streamProcessed(voiceProcessingService.decodeAudio(audioFile.getBytes()), request,
+                    AudioOutputFormat.fromName(format));
+
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid quality tier or output format: {}, {}", quality, format);
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error processing audio", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Same as {@link #processAudio} for a headerless body: {@code audio/L16} (big-endian),
+     * {@code audio/PCMU} or {@code audio/PCMA}. 8 kHz mono L16 goes to the processor without any decoding.
+     */
+    @PostMapping(value = "/process", consumes = {"audio/L16", "audio/PCMU", "audio/PCMA"})
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> processRawAudio(
+            @RequestBody byte[] audioData,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestParam(value = "shift", defaultValue = "10.0") double shift,
+            @RequestParam(value = "formant", defaultValue = "2.0") double formant,
+            @RequestParam(value = "base", defaultValue = "100.0") double base,
+            @RequestParam(value = "quality", defaultValue = "standard") String quality,
+            @RequestParam(value = "format", defaultValue = "wav") String format) {
+
+        try {
+            logger.info("Received raw /process request: {}, {} bytes", contentType, audioData.length);
+            logger.info("Shift: {}, Formant: {}, Base: {}, Quality: {}, Format: {}", shift, formant, base, quality, format);
+
+            VoiceProcessRequest request = new VoiceProcessRequest();
+            request.setShift((float) shift);
+            request.setFormant((float) formant);
+            request.setBase((float) base);
+            request.setQuality(DspQuality.fromName(quality));
+
+            RawAudioFormat inputFormat = RawAudioFormat.fromContentType(contentType).orElseThrow();
+            return streamProcessed(voiceProcessingService.decodeRaw(audioData, inputFormat), request,
+                    AudioOutputFormat.fromName(format));
+
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid raw audio request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error processing raw audio", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Same as {@link #processAudio} for a WAV or headerless ({@code audio/L16}, {@code audio/PCMU},
+     * {@code audio/PCMA}) request body that is processed while it is still arriving: the body is
+     * never buffered whole and the response starts after its first chunk. Bodies without a
+     * declared length (chunked uploads, WAVs with {@code 0xFFFFFFFF} sizes) get a chunked response
+     * whose WAV header, if the format has one, gives no length.
+     */
+    @PostMapping(value = "/process-stream", consumes = {"audio/wav", "audio/x-wav", "audio/wave",
+            MediaType.APPLICATION_OCTET_STREAM_VALUE, "audio/L16", "audio/PCMU", "audio/PCMA"})
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> processStream(
+            HttpServletRequest httpRequest,
+            @RequestParam(value = "shift", defaultValue = "10.0") double shift,
+            @RequestParam(value = "formant", defaultValue = "2.0") double formant,
+            @RequestParam(value = "base", defaultValue = "100.0") double base,
+            @RequestParam(value = "quality", defaultValue = "standard") String quality,
+            @RequestParam(value = "format", defaultValue = "wav") String format) {
+
+        String contentType = httpRequest.getContentType();
+        try {
+            logger.info("Received /process-stream request: {}, {} bytes", contentType, httpRequest.getContentLengthLong());
+            logger.info("Shift: {}, Formant: {}, Base: {}, Quality: {}, Format: {}", shift, formant, base, quality, format);
+
+            VoiceProcessRequest request = new VoiceProcessRequest();
+            request.setShift((float) shift);
+            request.setFormant((float) formant);
+            request.setBase((float) base);
+            request.setQuality(DspQuality.fromName(quality));
+            AudioOutputFormat outputFormat = AudioOutputFormat.fromName(format);
+
+            // Reads the upload's header, so a bad upload still gets an error status
+            ProcessedStream processed = voiceProcessingService.processStream(httpRequest.getInputStream(),
+                    Optional.ofNullable(contentType).flatMap(RawAudioFormat::fromContentType),
+                    httpRequest.getContentLengthLong(), request, outputFormat);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(outputFormat.contentType()));
+            headers.setContentDispositionFormData("attachment", "processed_audio." + outputFormat.extension());
+            if (processed.size() >= 0) {
+                headers.setContentLength(processed.size());
+            }
+            StreamingResponseBody body = out -> {
+                try {
+                    DataBufferUtils.write(processed.body(), out)
+                            .map(DataBufferUtils::release)
+                            .blockLast();
+                } catch (RuntimeException e) {
+                    logger.error("Error streaming processed audio", e);
+                    throw e;
+                }
+            };
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(body);
+
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid streaming request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            logger.error("Unreadable {} upload: {}", contentType, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error processing audio stream", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Renders one upload with several presets and/or custom {@code shift:formant:base} settings
+     * and returns a zip with one file per rendering. The upload is decoded once and the renderings
+     * run in parallel; each zip entry is written as soon as its rendering is done.
+     */
+    @PostMapping("/process-presets")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> processPresets(
+            @RequestParam("audio") MultipartFile audioFile,
+            @RequestParam(value = "presets", required = false) List<String> presets,
+            @RequestParam(value = "custom", required = false) List<String> custom,
+            @RequestParam(value = "quality", defaultValue = "standard") String quality,
+            @RequestParam(value = "format", defaultValue = "wav") String format) {
+
+        try {
+            logger.info("Received /process-presets request: presets={}, custom={}, quality={}, format={}",
+                    presets, custom, quality, format);
+
+            DspQuality dspQuality = DspQuality.fromName(quality);
+            AudioOutputFormat outputFormat = AudioOutputFormat.fromName(format);
+            Map<String, VoiceProcessRequest> renderings = new LinkedHashMap<>();
+            if (presets != null) {
+                for (String preset : presets) {
+                    renderings.put(preset.trim().toLowerCase(), VoiceProcessRequest.preset(preset));
+                }
+            }
+            if (custom != null) {
+                for (String settings : custom) {
+                    renderings.put("custom_" + (renderings.size() + 1), parseSettings(settings));
+                }
+            }
+            if (renderings.isEmpty() || renderings.size() > MAX_RENDERINGS) {
+                throw new IllegalArgumentException("Between 1 and " + MAX_RENDERINGS + " renderings required");
+            }
+            renderings.values().forEach(request -> request.setQuality(dspQuality));
 
-            // Process audio
-            byte[] processedAudio = voiceProcessingService.processAudio(audioFile.getBytes(), request);
+            // Decode up front so bad uploads still get an error status
+            ShortBuffer pcm = voiceProcessingService.decodeAudio(audioFile.getBytes());
 
-            // Return processed audio
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "processed_audio.wav");
+            headers.setContentType(MediaType.parseMediaType("application/zip"));
+            headers.setContentDispositionFormData("attachment", "processed_presets.zip");
 
+            StreamingResponseBody body = out -> {
+                try (ZipOutputStream zip = new ZipOutputStream(out)) {
+                    voiceProcessingService.processEach(pcm, renderings, outputFormat,
+                            (name, file) -> writeStoredEntry(zip, name + "." + outputFormat.extension(), file));
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Error streaming preset renderings", e);
+                    throw e;
+                }
+            };
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(processedAudio);
+                    .body(body);
 
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid preset request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
-            logger.error("Error processing audio", e);
+            logger.error("Error processing presets", e);
             return ResponseEntity.internalServerError().build();
         }
     }
@@ -69,36 +261,66 @@ public class VoiceController {
     @ResponseBody
     public ResponseEntity<byte[]> processLiveAudio(
             @RequestBody byte[] audioData,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
             @RequestParam(value = "shift", defaultValue = "10.0") double shift,
             @RequestParam(value = "formant", defaultValue = "2.0") double formant,
-            @RequestParam(value = "base", defaultValue = "100.0") double base) {
+            @RequestParam(value = "base", defaultValue = "100.0") double base,
+            @RequestParam(value = "quality", defaultValue = "${voice.live.default.quality:low_latency}") String quality,
+            @RequestParam(value = "format", defaultValue = "wav") String format) {
 
         try {
             logger.info("Received live audio processing request");
-            logger.info("Shift: {}, Formant: {}, Base: {}", shift, formant, base);
+            logger.info("Shift: {}, Formant: {}, Base: {}, Quality: {}, Format: {}", shift, formant, base, quality, format);
 
             VoiceProcessRequest request = new VoiceProcessRequest();
             request.setShift((float) shift);
             request.setFormant((float) formant);
             request.setBase((float) base);
+            request.setQuality(DspQuality.fromName(quality));
+
+            AudioOutputFormat outputFormat = AudioOutputFormat.fromName(format);
 
-            byte[] processedAudio = voiceProcessingService.processAudio(audioData, request);
+            // Raw L16/PCMU/PCMA chunks skip container detection entirely
+            Optional<RawAudioFormat> rawFormat = RawAudioFormat.fromContentType(contentType);
+            ShortBuffer pcm = rawFormat.isPresent()
+                    ? voiceProcessingService.decodeRaw(audioData, rawFormat.get())
+                    : voiceProcessingService.decodeAudio(audioData);
+            byte[] processedAudio = voiceProcessingService.processDecoded(pcm, request, outputFormat);
 
+            // Algorithmic delay a caller streaming through this tier will see
             return ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .contentType(MediaType.parseMediaType(outputFormat.contentType()))
+                    .header("X-Voice-Latency-Ms",
+                            String.valueOf(voiceProcessingService.getLatency(request.getQuality()).totalMs()))
                     .body(processedAudio);
 
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid live audio request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error processing live audio", e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    @GetMapping("/quality-tiers")
+    @ResponseBody
+    public ResponseEntity<List<Map<String, Object>>> qualityTiers() {
+        try {
+            return ResponseEntity.ok(voiceProcessingService.describeQualityTiers());
+        } catch (Exception e) {
+            logger.error("Error describing quality tiers", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     @PostMapping("/voiceTest")
     @ResponseBody
-    public ResponseEntity<byte[]> voiceTest(
+    public ResponseEntity<StreamingResponseBody> voiceTest(
             @RequestParam("audio") MultipartFile audioFile,
-            @RequestParam("code") int code) {
+            @RequestParam("code") int code,
+            @RequestParam(value = "format", defaultValue = "wav") String format,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         try {
             logger.info("Received /voiceTest request with code: {}", code);
@@ -129,21 +351,84 @@ public class VoiceController {
 
             logger.info("Applying transformation: {}", transformationType);
 
-            // Process audio
-            byte[] processedAudio = voiceProcessingService.processAudio(audioFile.getBytes(), request);
-
-            // Return processed audio
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "processed_audio.wav");
+            // The same clips are run through the presets over and over: serve repeats from the cache
+            AudioOutputFormat outputFormat = AudioOutputFormat.fromName(format);
+            byte[] upload = audioFile.getBytes();
+            String key = audioCache.key(upload, request.getShift(), request.getFormant(), request.getBase(),
+                    request.getQuality(), outputFormat);
+            if (audioCache.contains(key) && ProcessedAudioCache.matches(ifNoneMatch, ProcessedAudioCache.etag(key))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(ProcessedAudioCache.etag(key)).build();
+            }
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(processedAudio);
+            CachedAudio processed = audioCache.get(key, () -> voiceProcessingService.processDecoded(
+                    voiceProcessingService.decodeAudio(upload), request, outputFormat));
+            return cachedResponse(processed, outputFormat);
 
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid output format: {}", format);
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error processing audio in voiceTest", e);
             return ResponseEntity.internalServerError().build();
         }
     }
-}
\ No newline at end of file
+
+    private ResponseEntity<StreamingResponseBody> cachedResponse(CachedAudio processed, AudioOutputFormat format) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(format.contentType()));
+        headers.setContentDispositionFormData("attachment", "processed_audio." + format.extension());
+        headers.setContentLength(processed.size());
+        headers.setETag(processed.etag());
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(processed::writeTo);
+    }
+
+    // "shift:formant:base", e.g. "10:2:100"
+    private static VoiceProcessRequest parseSettings(String settings) {
+        String[] values = settings.trim().split(":");
+        if (values.length != 3) {
+            throw new IllegalArgumentException("Custom settings must be shift:formant:base, got " + settings);
+        }
+        return new VoiceProcessRequest(Float.parseFloat(values[0]), Float.parseFloat(values[1]),
+                Float.parseFloat(values[2]));
+    }
+
+    // Audio barely deflates, so entries are stored as-is rather than spending CPU compressing them
+    private static void writeStoredEntry(ZipOutputStream zip, String name, byte[] file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(file);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(file.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(file);
+        zip.closeEntry();
+        zip.flush();
+    }
+
+    /**
+     * Returns a body that processes decoded audio and writes it in {@code format} block by block
+     * as the response is sent.
+     */
+    private ResponseEntity<StreamingResponseBody> streamProcessed(ShortBuffer pcm, VoiceProcessRequest request,
+                                                                  AudioOutputFormat format) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(format.contentType()));
+        headers.setContentDispositionFormData("attachment", "processed_audio." + format.extension());
+        headers.setContentLength(voiceProcessingService.processedSize(pcm, request, format));
+
+        StreamingResponseBody body = out -> {
+            try {
+                voiceProcessingService.writeProcessed(pcm, request, format, out);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error streaming processed audio", e);
+                throw e;
+            }
+        };
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
+    }
+}
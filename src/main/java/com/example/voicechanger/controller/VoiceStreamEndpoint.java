@@ -0,0 +1,362 @@
+package com.example.voicechanger.controller;
+
+import com.example.voicechanger.dsp.DspQuality;
+import com.example.voicechanger.dsp.VoiceDsp;
+import com.example.voicechanger.dto.VoiceProcessRequest;
+import com.example.voicechanger.service.VoiceProcessingService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.CloseReason.CloseCodes;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.MessageHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Real-time voice morphing over a WebSocket, one instance per connection.
+ * <p>
+ * The client sends binary frames of 16-bit little-endian mono PCM (typically 20 ms: 160 samples at
+ * 8 kHz, 320 at 16 kHz) and gets each frame back morphed, the same length, on the same socket. The
+ * connection holds a processor of its own for its sample rate and tier, created outside the request
+ * pool so idle sockets never starve {@code /api/process}, and the stream is continuous across
+ * frames; output lags input by the tier's algorithmic latency. At most
+ * {@code voice.ws.max.connections} sockets are open at once; beyond that a new one is closed
+ * straight away with 1013 (try again later).
+ * <p>
+ * Text messages are JSON: {@code {"preset":"robot"}} or any of {@code shift}, {@code formant} and
+ * {@code base} change the voice mid-stream, {@code {"type":"stats"}} asks for the statistics that
+ * are also pushed every {@code voice.ws.stats.interval.ms}.
+ * <p>
+ * Frames are sent one at a time. If the client reads more slowly than it sends, processed frames
+ * wait in a short outbox; when that is full the oldest waiting frame is dropped (and counted), so
+ * a slow client loses audio rather than falling further and further behind.
+ */
+public class VoiceStreamEndpoint extends Endpoint {
+
+    public static final String PATH = "/api/ws/voice";
+
+    private static final Logger logger = LoggerFactory.getLogger(VoiceStreamEndpoint.class);
+    private static final List<Integer> SAMPLE_RATES = List.of(8000, 16000);
+
+    private final VoiceProcessingService voiceProcessingService;
+    private final ObjectMapper objectMapper;
+    // Shared by all connections
+    private final AtomicInteger connections;
+    private final int maxConnections;
+    private final String defaultQuality;
+    private final int maxQueuedFrames;
+    private final long statsIntervalMs;
+
+    // Set up in onOpen; frames of one connection are delivered one at a time
+    private Session session;
+    private boolean admitted;
+    private VoiceDsp processor;
+    private int sampleRate;
+    private final VoiceProcessRequest settings = new VoiceProcessRequest();
+    private short[] samples = new short[0];
+
+    private long framesIn;
+    private long processingNanos;
+    private long maxProcessingNanos;
+    private long lastStatsNanos = System.nanoTime();
+
+    // Outgoing messages (ByteBuffer frames or String stats), guarded by the outbox monitor
+    private final ArrayDeque<Object> outbox = new ArrayDeque<>();
+    private boolean sending;
+    private long framesOut;
+    private long framesDropped;
+
+    public VoiceStreamEndpoint(VoiceProcessingService voiceProcessingService, ObjectMapper objectMapper,
+                               AtomicInteger connections, int maxConnections, String defaultQuality,
+                               int maxQueuedFrames, long statsIntervalMs) {
+        this.voiceProcessingService = voiceProcessingService;
+        this.objectMapper = objectMapper;
+        this.connections = connections;
+        this.maxConnections = maxConnections;
+        this.defaultQuality = defaultQuality;
+        this.maxQueuedFrames = maxQueuedFrames;
+        this.statsIntervalMs = statsIntervalMs;
+    }
+
+    /**
+     * Query parameters: {@code rate} (8000 or 16000, default 8000), {@code quality} (default
+     * {@code voice.live.default.quality}), and {@code preset} or {@code shift}/{@code formant}/{@code base}.
+     */
+    @Override
+    public synchronized void onOpen(Session session, EndpointConfig config) {
+        this.session = session;
+        Map<String, List<String>> parameters = session.getRequestParameterMap();
+        DspQuality quality;
+        try {
+            sampleRate = Integer.parseInt(parameter(parameters, "rate", "8000"));
+            if (!SAMPLE_RATES.contains(sampleRate)) {
+                throw new IllegalArgumentException("Unsupported sample rate " + sampleRate);
+            }
+            quality = DspQuality.fromName(parameter(parameters, "quality", defaultQuality));
+            String preset = parameter(parameters, "preset", null);
+            apply(preset != null
+                    ? VoiceProcessRequest.preset(preset)
+                    : new VoiceProcessRequest(Float.parseFloat(parameter(parameters, "shift", "10.0")),
+                    Float.parseFloat(parameter(parameters, "formant", "2.0")),
+                    Float.parseFloat(parameter(parameters, "base", "100.0"))));
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid voice stream request: {}", e.getMessage());
+            close(CloseCodes.CANNOT_ACCEPT, e.getMessage());
+            return;
+        }
+
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            logger.warn("Voice stream {} rejected: {} streams open", session.getId(), maxConnections);
+            close(CloseCodes.TRY_AGAIN_LATER, "Too many voice streams");
+            return;
+        }
+        admitted = true;
+        try {
+            processor = voiceProcessingService.createProcessor(sampleRate, quality);
+        } catch (IllegalStateException e) {
+            logger.error("Voice stream {} failed: {}", session.getId(), e.getMessage());
+            release();
+            close(CloseCodes.UNEXPECTED_CONDITION, "Cannot create voice processor");
+            return;
+        }
+        if (!processor.beginStream(settings.getShift(), settings.getFormant(), settings.getBase())) {
+            release();
+            close(CloseCodes.UNEXPECTED_CONDITION, "Processor rejected stream settings");
+            return;
+        }
+
+        session.addMessageHandler(ByteBuffer.class, this::onFrame);
+        session.addMessageHandler(String.class, this::onControl);
+        logger.info("Voice stream {} opened: {} Hz, {}, {}", session.getId(), sampleRate, quality, settings);
+
+        Map<String, Object> ready = new LinkedHashMap<>();
+        ready.put("type", "ready");
+        ready.put("sampleRate", sampleRate);
+        ready.put("quality", quality.name().toLowerCase());
+        ready.put("maxFrameSamples", processor.getConfiguredBufferLength());
+        ready.put("dspLatencyMs", dspLatencyMs());
+        enqueue(json(ready));
+    }
+
+    private synchronized void onFrame(ByteBuffer frame) {
+        if (processor == null) {
+            return;
+        }
+        int length = frame.remaining() / 2;
+        if (length == 0 || length > processor.getConfiguredBufferLength() || frame.remaining() % 2 != 0) {
+            close(CloseCodes.CANNOT_ACCEPT, "Frames must be whole 16-bit samples, at most "
+                    + processor.getConfiguredBufferLength());
+            return;
+        }
+        if (samples.length < length) {
+            samples = new short[length];
+        }
+        // Through a duplicate, leaving the byte order of the container's buffer alone
+        frame.duplicate().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples, 0, length);
+
+        long start = System.nanoTime();
+        if (!processor.processBlockInPlace(samples, 0, length)) {
+            close(CloseCodes.UNEXPECTED_CONDITION, "Block processing failed");
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        framesIn++;
+        processingNanos += elapsed;
+        maxProcessingNanos = Math.max(maxProcessingNanos, elapsed);
+
+        ByteBuffer output = ByteBuffer.allocate(length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        output.asShortBuffer().put(samples, 0, length);
+        enqueue(output);
+
+        if (statsIntervalMs > 0 && start - lastStatsNanos >= statsIntervalMs * 1_000_000) {
+            lastStatsNanos = start;
+            enqueue(json(stats()));
+        }
+    }
+
+    private synchronized void onControl(String message) {
+        if (processor == null) {
+            return;
+        }
+        try {
+            JsonNode control = objectMapper.readTree(message);
+            if ("stats".equals(control.path("type").asText())) {
+                enqueue(json(stats()));
+                return;
+            }
+            VoiceProcessRequest next = control.hasNonNull("preset")
+                    ? VoiceProcessRequest.preset(control.get("preset").asText())
+                    : new VoiceProcessRequest(
+                    (float) control.path("shift").asDouble(settings.getShift()),
+                    (float) control.path("formant").asDouble(settings.getFormant()),
+                    (float) control.path("base").asDouble(settings.getBase()));
+            if (!processor.updateSettings(next.getShift(), next.getFormant(), next.getBase())) {
+                throw new IllegalArgumentException("Processor rejected settings " + next);
+            }
+            apply(next);
+            enqueue(json(stats()));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Invalid control message on voice stream {}: {}", session.getId(), e.getMessage());
+            enqueue(json(Map.of("type", "error", "message", String.valueOf(e.getMessage()))));
+        }
+    }
+
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        release();
+    }
+
+    @Override
+    public void onError(Session session, Throwable error) {
+        logger.warn("Voice stream {} failed", session.getId(), error);
+    }
+
+    private synchronized void release() {
+        if (!admitted) {
+            return;
+        }
+        admitted = false;
+        connections.decrementAndGet();
+        if (processor == null) {
+            return;
+        }
+        logger.info("Voice stream {} closed: {}", session.getId(), stats());
+        processor.dispose();
+        processor = null;
+    }
+
+    private void apply(VoiceProcessRequest next) {
+        settings.setShift(next.getShift());
+        settings.setFormant(next.getFormant());
+        settings.setBase(next.getBase());
+    }
+
+    private Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "stats");
+        stats.put("shift", settings.getShift());
+        stats.put("formant", settings.getFormant());
+        stats.put("base", settings.getBase());
+        stats.put("dspLatencyMs", dspLatencyMs());
+        stats.put("framesIn", framesIn);
+        stats.put("avgProcessingMs", framesIn == 0 ? 0.0 : processingNanos / 1e6 / framesIn);
+        stats.put("maxProcessingMs", maxProcessingNanos / 1e6);
+        synchronized (outbox) {
+            stats.put("framesOut", framesOut);
+            stats.put("framesDropped", framesDropped);
+            stats.put("queuedFrames", outbox.size());
+        }
+        return stats;
+    }
+
+    private double dspLatencyMs() {
+        return (processor.getInputLatency() + processor.getOutputLatency()) * 1000.0 / sampleRate;
+    }
+
+    /**
+     * Sends {@code message} now if nothing is being sent, otherwise queues it behind the messages
+     * already waiting, dropping the oldest waiting frame if {@code maxQueuedFrames} are queued.
+     */
+    private void enqueue(Object message) {
+        synchronized (outbox) {
+            if (sending) {
+                if (message instanceof ByteBuffer && queuedFrames() >= maxQueuedFrames) {
+                    dropOldestFrame();
+                }
+                outbox.addLast(message);
+                return;
+            }
+            sending = true;
+        }
+        send(message);
+    }
+
+    private void send(Object message) {
+        if (!session.isOpen()) {
+            return;
+        }
+        if (message instanceof ByteBuffer frame) {
+            session.getAsyncRemote().sendBinary(frame, result -> sent(result, true));
+        } else {
+            session.getAsyncRemote().sendText((String) message, result -> sent(result, false));
+        }
+    }
+
+    private void sent(SendResult result, boolean frame) {
+        if (!result.isOK()) {
+            logger.debug("Voice stream {} send failed", session.getId(), result.getException());
+        }
+        Object next;
+        synchronized (outbox) {
+            if (frame && result.isOK()) {
+                framesOut++;
+            }
+            next = outbox.pollFirst();
+            if (next == null) {
+                sending = false;
+                return;
+            }
+        }
+        send(next);
+    }
+
+    // Caller holds the outbox monitor
+    private int queuedFrames() {
+        int frames = 0;
+        for (Object message : outbox) {
+            if (message instanceof ByteBuffer) {
+                frames++;
+            }
+        }
+        return frames;
+    }
+
+    // Caller holds the outbox monitor
+    private void dropOldestFrame() {
+        Iterator<Object> messages = outbox.iterator();
+        while (messages.hasNext()) {
+            if (messages.next() instanceof ByteBuffer) {
+                messages.remove();
+                framesDropped++;
+                return;
+            }
+        }
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize " + value, e);
+        }
+    }
+
+    private void close(CloseCodes code, String reason) {
+        try {
+            // Close reasons are limited to 123 bytes
+            session.close(new CloseReason(code, reason.length() > 120 ? reason.substring(0, 120) : reason));
+        } catch (IOException e) {
+            logger.debug("Error closing voice stream {}", session.getId(), e);
+        }
+    }
+
+    private static String parameter(Map<String, List<String>> parameters, String name, String defaultValue) {
+        List<String> values = parameters.get(name);
+        return values == null || values.isEmpty() ? defaultValue : values.get(0);
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.voicechanger.dsp;
+
+/**
+ * Implementations of {@link VoiceDsp}, selected with {@code voice.dsp.backend}.
+ */
+public enum DspBackend {
+    /** libvoicechanger.so through hand-written JNI ({@code NativeVoiceProcessor}) */
+    JNI,
+    /** libvoicechanger.so through the Foreign Function &amp; Memory API ({@code FfmVoiceProcessor}); needs --enable-preview */
+    FFM,
+    /** Pure-Java phase vocoder ({@link JavaVoiceProcessor}); needs --add-modules jdk.incubator.vector */
+    JAVA,
+    /** JNI when libvoicechanger.so is present, otherwise JAVA */
+    AUTO
+}
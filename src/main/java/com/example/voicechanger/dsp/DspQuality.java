@@ -0,0 +1,72 @@
+package com.example.voicechanger.dsp;
+
+/**
+ * Named quality tiers for the stretcher, selected per request with {@code quality}.
+ * <p>
+ * Each tier fixes the STFT block and interval (hop) length. Longer blocks resolve low voices
+ * better but add latency; a longer interval means fewer FFTs per second and so less CPU.
+ * {@link #relativeCost()} is an estimate of CPU per sample relative to {@link #STANDARD}; the
+ * exact algorithmic latency is reported by a configured processor through
+ * {@link VoiceDsp#getTailLength()}.
+ */
+public enum DspQuality {
+    /** Tuned for 20 ms telephony frames (160 samples at 8 kHz): 32 ms blocks, 8 ms interval, no split */
+    LOW_LATENCY(0.032, 0.008, false),
+    /** Signalsmith's {@code presetCheaper}: 100 ms blocks, 40 ms interval */
+    ECONOMY(0.100, 0.040, true),
+    /** The original fixed configuration: 60 ms blocks, 15 ms interval */
+    STANDARD(0.060, 0.015, true),
+    /** Signalsmith's {@code presetDefault}: 120 ms blocks, 30 ms interval */
+    HIGH(0.120, 0.030, false);
+
+    private final double blockSeconds;
+    private final double intervalSeconds;
+    private final boolean splitComputation;
+
+    DspQuality(double blockSeconds, double intervalSeconds, boolean splitComputation) {
+        this.blockSeconds = blockSeconds;
+        this.intervalSeconds = intervalSeconds;
+        this.splitComputation = splitComputation;
+    }
+
+    public int blockSamples(int sampleRate) {
+        return (int) Math.round(sampleRate * blockSeconds);
+    }
+
+    public int intervalSamples(int sampleRate) {
+        return (int) Math.round(sampleRate * intervalSeconds);
+    }
+
+    /**
+     * Spreads each block's FFT work across calls, giving even per-call CPU for one extra
+     * interval of latency.
+     */
+    public boolean splitComputation() {
+        return splitComputation;
+    }
+
+    /**
+     * Estimated CPU per sample relative to {@link #STANDARD}: one FFT of the block size per interval.
+     */
+    public double relativeCost() {
+        return fftCostPerSecond(this) / fftCostPerSecond(STANDARD);
+    }
+
+    private static double fftCostPerSecond(DspQuality quality) {
+        double blockSamples = quality.blockSeconds * 8000;
+        return blockSamples * Math.log(blockSamples) / quality.intervalSeconds;
+    }
+
+    /**
+     * Parses a tier name case-insensitively ({@code low-latency} and {@code low_latency} are
+     * equivalent); {@code null} or blank means {@link #STANDARD}.
+     *
+     * @throws IllegalArgumentException for unknown names
+     */
+    public static DspQuality fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return STANDARD;
+        }
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,411 @@
+package com.example.voicechanger.dsp;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Pure-Java pitch/formant shifter with the same {@code shift/formant/base} contract as the native
+ * {@code StretchVocal}, for hosts without {@code libvoicechanger.so}.
+ * <p>
+ * It is a phase vocoder: Hann-windowed STFT frames, per-bin true-frequency estimation, pitch shift
+ * by resampling the spectrum, and formant handling via a spectral envelope (smoothed over about
+ * {@code base} Hz) that is divided out before the shift and re-applied, moved by the formant ratio,
+ * afterwards. Windowing, the FFT, magnitudes and overlap-add run on the incubating Vector API
+ * ({@code --add-modules jdk.incubator.vector}); all state is in primitive arrays allocated by
+ * {@link #configure}, so processing does not allocate.
+ * <p>
+ * Output is reproducible: the same input gives the same samples whether the code is interpreted
+ * or JIT-compiled. Trigonometry therefore goes through {@link StrictMath}, as the Vector API's
+ * lanewise {@code ATAN2}/{@code SIN}/{@code COS} and the {@link Math} intrinsics may round
+ * differently in each mode.
+ * <p>
+ * The quality tier's block and interval are rounded to powers of two (an FFT of at least the block
+ * length, with 4x or more overlap). Output lags input by exactly one FFT length.
+ */
+public class JavaVoiceProcessor implements VoiceDsp {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final float TWO_PI = (float) (2 * Math.PI);
+    private static final float MAX_OUTPUT = 32760;
+
+    private int configuredSampleRate = 0;
+    private int configuredBufferLength = 0;
+    private DspQuality configuredQuality = DspQuality.STANDARD;
+
+    private VectorFft fft;
+    private int fftSize;
+    private int hop;
+    private int bins;
+    private float[] window;
+    private float overlapAddGain;
+
+    // Newest hop is written to [fftSize - hop, fftSize)
+    private float[] inputHistory;
+    private int hopFill;
+    private float[] outputAccumulator;
+    // Ring buffer of finished output samples (power-of-two capacity)
+    private float[] pending;
+    private int pendingRead;
+    private int pendingWrite;
+
+    private float[] re;
+    private float[] im;
+    private float[] magnitude;
+    private float[] phase;
+    private float[] previousPhase;
+    private float[] trueFrequency;
+    private float[] envelope;
+    private float[] envelopeSums;
+    private float[] shiftedMagnitude;
+    private float[] shiftedFrequency;
+    private float[] synthesisPhase;
+    private short[] silence;
+    private boolean firstFrame;
+
+    private float pitchRatio = 1;
+    private float formantRatio = 1;
+    private int envelopeHalfWidth = 1;
+    private float formantBaseHz = 100;
+
+    private float limiterGain = 1;
+    private float limiterSlew = 1;
+
+    private boolean valid = true;
+
+    @Override
+    public boolean configure(int sampleRate, int maxBufferLength, DspQuality quality) {
+        if (!valid || sampleRate <= 0 || maxBufferLength <= 0) return false;
+
+        fftSize = Integer.highestOneBit(Math.max(quality.blockSamples(sampleRate), 16) - 1) << 1;
+        int overlap = Integer.highestOneBit((int) Math.round((double) fftSize / quality.intervalSamples(sampleRate)));
+        hop = fftSize / Math.max(overlap, 4);
+        bins = fftSize / 2 + 1;
+        fft = new VectorFft(fftSize);
+
+        window = new float[fftSize];
+        for (int i = 0; i < fftSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * StrictMath.cos(2 * Math.PI * i / fftSize));
+        }
+        // Analysis and synthesis are both windowed; undo the summed window^2 of overlapping frames
+        double windowPower = 0;
+        for (int i = 0; i < fftSize; i++) {
+            windowPower += window[i] * window[i];
+        }
+        overlapAddGain = (float) (hop / windowPower);
+
+        inputHistory = new float[fftSize];
+        outputAccumulator = new float[fftSize];
+        pending = new float[Integer.highestOneBit(2 * fftSize) << 1];
+        re = new float[fftSize];
+        im = new float[fftSize];
+        magnitude = new float[bins];
+        phase = new float[bins];
+        previousPhase = new float[bins];
+        trueFrequency = new float[bins];
+        envelope = new float[bins];
+        envelopeSums = new float[bins + 1];
+        shiftedMagnitude = new float[bins];
+        shiftedFrequency = new float[bins];
+        synthesisPhase = new float[bins];
+        silence = new short[fftSize];
+
+        limiterSlew = 1 / (0.05f * sampleRate + 1);
+        configuredSampleRate = sampleRate;
+        configuredBufferLength = maxBufferLength;
+        configuredQuality = quality;
+
+        reset();
+        return updateSettings(12, 3, 100);
+    }
+
+    @Override
+    public int getConfiguredSampleRate() {
+        return configuredSampleRate;
+    }
+
+    @Override
+    public int getConfiguredBufferLength() {
+        return configuredBufferLength;
+    }
+
+    @Override
+    public DspQuality getConfiguredQuality() {
+        return configuredQuality;
+    }
+
+    @Override
+    public boolean updateSettings(float shift, float formant, float base) {
+        if (!valid || configuredSampleRate == 0) return false;
+        pitchRatio = (float) StrictMath.pow(2, shift / 12.0);
+        formantRatio = (float) StrictMath.pow(2, formant / 12.0);
+        formantBaseHz = base;
+        // The envelope spans about one base frequency either side, so harmonics don't show up in it
+        float binHz = (float) configuredSampleRate / fftSize;
+        envelopeHalfWidth = Math.max(1, Math.round(formantBaseHz / binHz));
+        return true;
+    }
+
+    @Override
+    public boolean beginStream(float shift, float formant, float base) {
+        if (!valid || configuredSampleRate == 0) return false;
+        reset();
+        return updateSettings(shift, formant, base);
+    }
+
+    @Override
+    public boolean processBlock(short[] input, int inputOffset, short[] output, int outputOffset, int length) {
+        if (!valid || configuredSampleRate == 0) return false;
+        Objects.checkFromIndexSize(inputOffset, length, input.length);
+        Objects.checkFromIndexSize(outputOffset, length, output.length);
+        if (length > configuredBufferLength) {
+            throw new IllegalArgumentException("Block of " + length + " samples exceeds configured buffer length " +
+                    configuredBufferLength);
+        }
+        process(input, inputOffset, output, outputOffset, length);
+        return true;
+    }
+
+    @Override
+    public boolean processBlockInPlace(short[] samples, int offset, int length) {
+        return processBlock(samples, offset, samples, offset, length);
+    }
+
+    @Override
+    public int getTailLength() {
+        return fftSize;
+    }
+
+    @Override
+    public int getInputLatency() {
+        // Centre of the analysis window
+        return fftSize / 2;
+    }
+
+    @Override
+    public int getOutputLatency() {
+        return fftSize - fftSize / 2;
+    }
+
+    @Override
+    public int flush(short[] output, int outputOffset) {
+        if (!valid || configuredSampleRate == 0) return 0;
+        Objects.checkFromIndexSize(outputOffset, fftSize, output.length);
+        process(silence, 0, output, outputOffset, fftSize);
+        return fftSize;
+    }
+
+    @Override
+    public void reset() {
+        if (!valid || configuredSampleRate == 0) return;
+        Arrays.fill(inputHistory, 0);
+        Arrays.fill(outputAccumulator, 0);
+        Arrays.fill(previousPhase, 0);
+        Arrays.fill(synthesisPhase, 0);
+        hopFill = 0;
+        firstFrame = true;
+        // One hop of silence keeps the output exactly fftSize behind the input
+        Arrays.fill(pending, 0);
+        pendingRead = 0;
+        pendingWrite = hop;
+        limiterGain = 1;
+    }
+
+    @Override
+    public boolean isProcessorValid() {
+        return valid;
+    }
+
+    @Override
+    public void dispose() {
+        valid = false;
+    }
+
+    // Input is consumed before the same range of output is written, so in-place works
+    private void process(short[] input, int inputOffset, short[] output, int outputOffset, int length) {
+        int done = 0;
+        while (done < length) {
+            int count = Math.min(hop - hopFill, length - done);
+            int historyOffset = fftSize - hop + hopFill;
+            for (int i = 0; i < count; i++) {
+                inputHistory[historyOffset + i] = input[inputOffset + done + i];
+            }
+            hopFill += count;
+            if (hopFill == hop) {
+                processFrame();
+                hopFill = 0;
+            }
+            readOutput(output, outputOffset + done, count);
+            done += count;
+        }
+    }
+
+    private void processFrame() {
+        analyse();
+        shiftSpectrum();
+        synthesise();
+
+        // The first hop of the accumulator is now complete
+        int mask = pending.length - 1;
+        for (int i = 0; i < hop; i++) {
+            pending[(pendingWrite + i) & mask] = outputAccumulator[i];
+        }
+        pendingWrite += hop;
+        System.arraycopy(outputAccumulator, hop, outputAccumulator, 0, fftSize - hop);
+        Arrays.fill(outputAccumulator, fftSize - hop, fftSize, 0);
+        System.arraycopy(inputHistory, hop, inputHistory, 0, fftSize - hop);
+    }
+
+    private void analyse() {
+        // Rotate by half a frame so the window centre is at t = 0 (zero-phase): the bins of one
+        // sinusoid's main lobe then share a phase, which survives moving them to other bins
+        int half = fftSize / 2;
+        multiplyAdd(inputHistory, half, window, half, 1, re, 0, half, false);
+        multiplyAdd(inputHistory, 0, window, 0, 1, re, half, half, false);
+        Arrays.fill(im, 0);
+        fft.forward(re, im);
+
+        int k = 0;
+        for (; k < SPECIES.loopBound(bins); k += SPECIES.length()) {
+            FloatVector r = FloatVector.fromArray(SPECIES, re, k);
+            FloatVector m = FloatVector.fromArray(SPECIES, im, k);
+            r.fma(r, m.mul(m)).sqrt().intoArray(magnitude, k);
+        }
+        for (; k < bins; k++) {
+            magnitude[k] = (float) Math.sqrt(re[k] * re[k] + im[k] * im[k]);
+        }
+        for (k = 0; k < bins; k++) {
+            phase[k] = (float) StrictMath.atan2(im[k], re[k]);
+        }
+
+        // True frequency (in bins) from the phase advance since the previous frame
+        float expectedPerBin = TWO_PI * hop / fftSize;
+        float binsPerRadian = fftSize / (TWO_PI * hop);
+        for (k = 0; k < bins; k++) {
+            float deviation = phase[k] - previousPhase[k] - k * expectedPerBin;
+            deviation -= TWO_PI * (float) Math.rint(deviation / TWO_PI);
+            trueFrequency[k] = k + deviation * binsPerRadian;
+            previousPhase[k] = phase[k];
+        }
+
+        // Spectral envelope: peak-hold over about one base frequency each side (so it rides on the
+        // harmonics rather than dipping between them), then a moving average of the same width
+        for (k = 0; k < bins; k++) {
+            int from = Math.max(0, k - envelopeHalfWidth);
+            int to = Math.min(bins, k + envelopeHalfWidth + 1);
+            float peak = 0;
+            for (int j = from; j < to; j++) {
+                peak = Math.max(peak, magnitude[j]);
+            }
+            envelope[k] = peak;
+        }
+        envelopeSums[0] = 0;
+        for (k = 0; k < bins; k++) {
+            envelopeSums[k + 1] = envelopeSums[k] + envelope[k];
+        }
+        for (k = 0; k < bins; k++) {
+            int from = Math.max(0, k - envelopeHalfWidth);
+            int to = Math.min(bins, k + envelopeHalfWidth + 1);
+            envelope[k] = (envelopeSums[to] - envelopeSums[from]) / (to - from) + 1e-6f;
+        }
+    }
+
+    private void shiftSpectrum() {
+        for (int j = 0; j < bins; j++) {
+            // Pull from the source bin, so upward shifts leave no gaps
+            float source = j / pitchRatio;
+            int k = (int) source;
+            if (k >= bins - 1) {
+                shiftedMagnitude[j] = 0;
+                shiftedFrequency[j] = j;
+                continue;
+            }
+            float fraction = source - k;
+            float flat = (magnitude[k] / envelope[k]) * (1 - fraction)
+                    + (magnitude[k + 1] / envelope[k + 1]) * fraction;
+            shiftedMagnitude[j] = flat * envelopeAt(j / formantRatio);
+            shiftedFrequency[j] = trueFrequency[fraction < 0.5f ? k : k + 1] * pitchRatio;
+        }
+
+        if (firstFrame) {
+            // Start from the analysis phases so each lobe begins coherent
+            for (int j = 0; j < bins; j++) {
+                int k = Math.min(Math.round(j / pitchRatio), bins - 1);
+                synthesisPhase[j] = phase[k];
+            }
+            firstFrame = false;
+            return;
+        }
+        float radiansPerBin = TWO_PI * hop / fftSize;
+        for (int j = 0; j < bins; j++) {
+            float p = synthesisPhase[j] + shiftedFrequency[j] * radiansPerBin;
+            synthesisPhase[j] = p - TWO_PI * (float) Math.rint(p / TWO_PI);
+        }
+    }
+
+    private float envelopeAt(float bin) {
+        int k = (int) bin;
+        if (k >= bins - 1) return 0;
+        float fraction = bin - k;
+        return envelope[k] * (1 - fraction) + envelope[k + 1] * fraction;
+    }
+
+    private void synthesise() {
+        int k;
+        for (k = 0; k < bins; k++) {
+            re[k] = shiftedMagnitude[k] * (float) StrictMath.cos(synthesisPhase[k]);
+            im[k] = shiftedMagnitude[k] * (float) StrictMath.sin(synthesisPhase[k]);
+        }
+        // Real output: DC and Nyquist are real, negative frequencies mirror the positive ones
+        im[0] = 0;
+        im[bins - 1] = 0;
+        for (k = 1; k < bins - 1; k++) {
+            re[fftSize - k] = re[k];
+            im[fftSize - k] = -im[k];
+        }
+        fft.inverse(re, im);
+
+        // Undo the zero-phase rotation while overlap-adding
+        int half = fftSize / 2;
+        multiplyAdd(re, half, window, 0, overlapAddGain, outputAccumulator, 0, half, true);
+        multiplyAdd(re, 0, window, half, overlapAddGain, outputAccumulator, half, half, true);
+    }
+
+    /**
+     * {@code dst[d + i] (+)= a[aOffset + i] * b[bOffset + i] * gain} for {@code i < length}.
+     */
+    private static void multiplyAdd(float[] a, int aOffset, float[] b, int bOffset, float gain,
+                                    float[] dst, int dstOffset, int length, boolean accumulate) {
+        int i = 0;
+        for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+            FloatVector v = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .mul(FloatVector.fromArray(SPECIES, b, bOffset + i))
+                    .mul(gain);
+            if (accumulate) {
+                v = v.add(FloatVector.fromArray(SPECIES, dst, dstOffset + i));
+            }
+            v.intoArray(dst, dstOffset + i);
+        }
+        for (; i < length; i++) {
+            float v = a[aOffset + i] * b[bOffset + i] * gain;
+            dst[dstOffset + i] = accumulate ? dst[dstOffset + i] + v : v;
+        }
+    }
+
+    // float to 16-bit with the same limiter as StretchVocal
+    private void readOutput(short[] output, int offset, int length) {
+        int mask = pending.length - 1;
+        for (int i = 0; i < length; i++) {
+            float x = pending[pendingRead++ & mask];
+            limiterGain += (1 - limiterGain) * limiterSlew;
+            float y = x * limiterGain;
+            if (Math.abs(y) > MAX_OUTPUT) {
+                limiterGain = MAX_OUTPUT / Math.abs(x);
+                y = x * limiterGain;
+            }
+            output[offset + i] = (short) y;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.voicechanger.dsp;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Processes long recordings on several cores at once.
+ * <p>
+ * The PCM is split into roughly equal segments, each extended by {@code overlap} samples on both
+ * sides so its processor has warmed up before the part of its output that is kept. Segments run on
+ * pooled processors, reserved before forking, in a {@link ForkJoinPool}; each segment is a fresh
+ * stream, so the result does not depend on how many processors were free. Their latency-compensated
+ * outputs are then joined with raised-cosine crossfades over the middle half of each overlap, so
+ * seams are not audible.
+ * <p>
+ * The result is aligned with the input and has the same length.
+ */
+@Component
+public class ParallelSegmentProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelSegmentProcessor.class);
+
+    private final VoiceProcessorPool processorPool;
+    private final ParallelMode mode;
+    private final double segmentSeconds;
+    private final int overlapMs;
+    private final ForkJoinPool forkJoinPool;
+
+    public enum ParallelMode {
+        /** Always process serially */
+        OFF,
+        /** Split when the input is long enough for at least two segments */
+        AUTO
+    }
+
+    public ParallelSegmentProcessor(VoiceProcessorPool processorPool,
+                                    @Value("${voice.changer.parallel.mode:auto}") String mode,
+                                    @Value("${voice.changer.parallel.segment.seconds:10}") double segmentSeconds,
+                                    @Value("${voice.changer.parallel.overlap.ms:400}") int overlapMs,
+                                    @Value("${voice.changer.parallel.threads:0}") int threads) {
+        this.processorPool = processorPool;
+        this.mode = ParallelMode.valueOf(mode.trim().toUpperCase());
+        this.segmentSeconds = segmentSeconds;
+        this.overlapMs = overlapMs;
+        if (segmentSeconds * 1000 < 2.0 * overlapMs) {
+            throw new IllegalArgumentException("voice.changer.parallel.segment.seconds must be at least twice the overlap");
+        }
+
+        // 0 means one worker per available core
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.forkJoinPool = new ForkJoinPool(parallelism);
+        logger.info("Parallel segment processing: mode={}, segment={}s, overlap={}ms, threads={}",
+                this.mode, segmentSeconds, overlapMs, parallelism);
+    }
+
+    /**
+     * Whether {@link #process} would split {@code length} samples into more than one segment.
+     */
+    public boolean shouldSplit(int length, int sampleRate) {
+        return mode != ParallelMode.OFF && segmentCount(length, sampleRate) > 1;
+    }
+
+    public int getParallelism() {
+        return forkJoinPool.getParallelism();
+    }
+
+    /**
+     * The segment workers, for other independent jobs that should share the same cores (e.g. one
+     * preset each). Jobs that split their own input into segments may run on it too.
+     */
+    public Executor getExecutor() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Processes {@code pcm} in parallel segments and stitches them back together.
+     *
+     * @return processed audio, aligned with and as long as {@code pcm}
+     * @throws IllegalStateException if a segment fails
+     */
+    public short[] process(short[] pcm, int sampleRate, int blockSize, DspQuality quality,
+                           float shift, float formant, float base) {
+        return process(ShortBuffer.wrap(pcm), sampleRate, blockSize, quality, shift, formant, base);
+    }
+
+    /**
+     * Same as {@link #process(short[], int, int, DspQuality, float, float, float)} for the
+     * remaining samples of {@code pcm}. Segments are read straight from the buffer, so it can be a
+     * view over the uploaded file.
+     */
+    public short[] process(ShortBuffer pcm, int sampleRate, int blockSize, DspQuality quality,
+                           float shift, float formant, float base) {
+        int length = pcm.remaining();
+        int count = segmentCount(length, sampleRate);
+        int overlap = overlapMs * sampleRate / 1000;
+        int half = overlap / 2;
+
+        // Segment k keeps [bounds[k], bounds[k + 1]) and processes [from[k], to[k])
+        int[] bounds = new int[count + 1];
+        int[] from = new int[count];
+        int[] to = new int[count];
+        for (int k = 0; k <= count; k++) {
+            bounds[k] = (int) ((long) k * length / count);
+        }
+        for (int k = 0; k < count; k++) {
+            from[k] = Math.max(0, bounds[k] - overlap);
+            to[k] = Math.min(length, bounds[k + 1] + overlap);
+        }
+
+        // Reserve the processors before forking: one, waiting as the serial path would, then as
+        // many more as are free right now. Each worker runs every n-th segment on its own
+        // processor, so a busy pool means fewer workers rather than a failed request.
+        List<VoiceDsp> processors = new ArrayList<>(count);
+        short[][] segments = new short[count][];
+        try {
+            processors.add(checkoutBlocking(sampleRate, blockSize, quality));
+            while (processors.size() < count) {
+                VoiceDsp processor = processorPool.tryCheckout(sampleRate, blockSize, quality);
+                if (processor == null) {
+                    break;
+                }
+                processors.add(processor);
+            }
+
+            int workers = processors.size();
+            List<Callable<Void>> tasks = new ArrayList<>(workers);
+            for (int w = 0; w < workers; w++) {
+                VoiceDsp processor = processors.get(w);
+                int first = w;
+                tasks.add(() -> {
+                    for (int k = first; k < count; k += workers) {
+                        segments[k] = processSegment(processor, pcm, from[k], to[k], sampleRate, shift, formant, base);
+                    }
+                    return null;
+                });
+            }
+
+            logger.info("Processing {} samples as {} segments on {} processors", length, count, workers);
+            for (Future<Void> future : forkJoinPool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during parallel processing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Segment processing failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            processors.forEach(processorPool::checkin);
+        }
+
+        short[] output = new short[length];
+        // Parts only one segment covers
+        for (int k = 0; k < count; k++) {
+            int start = k == 0 ? 0 : bounds[k] + half;
+            int end = k == count - 1 ? length : bounds[k + 1] - half;
+            System.arraycopy(segments[k], start - from[k], output, start, end - start);
+        }
+        // Crossfade across each seam
+        for (int k = 1; k < count; k++) {
+            short[] left = segments[k - 1];
+            short[] right = segments[k];
+            int seamStart = bounds[k] - half;
+            int seamLength = 2 * half;
+            for (int i = 0; i < seamLength; i++) {
+                int index = seamStart + i;
+                double w = 0.5 - 0.5 * Math.cos(Math.PI * (i + 0.5) / seamLength);
+                double mixed = left[index - from[k - 1]] * (1 - w) + right[index - from[k]] * w;
+                output[index] = (short) Math.round(mixed);
+            }
+        }
+        return output;
+    }
+
+    private int segmentCount(int length, int sampleRate) {
+        double segmentSamples = segmentSeconds * sampleRate;
+        return (int) Math.max(1, Math.round(length / segmentSamples));
+    }
+
+    private static short[] processSegment(VoiceDsp processor, ShortBuffer pcm, int from, int to, int sampleRate,
+                                          float shift, float formant, float base) {
+        ShortBuffer input = pcm.slice(pcm.position() + from, to - from);
+        short[] processed = processor.processAudio(input, shift, formant, base, sampleRate);
+        // Drop the stretcher delay so the segment lines up with its input
+        int tail = processor.getTailLength();
+        return Arrays.copyOfRange(processed, tail, tail + (to - from));
+    }
+
+    /**
+     * Waits for a processor. Callers may themselves be jobs on the segment workers, so the wait is
+     * a managed block: the pool can start a spare worker meanwhile instead of losing a core.
+     */
+    private VoiceDsp checkoutBlocking(int sampleRate, int blockSize, DspQuality quality) throws InterruptedException {
+        VoiceDsp[] processor = new VoiceDsp[1];
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() {
+                processor[0] = processorPool.checkout(sampleRate, blockSize, quality);
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return processor[0] != null;
+            }
+        });
+        return processor[0];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        forkJoinPool.shutdownNow();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.voicechanger.dsp;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * In-place radix-2 complex FFT on split real/imaginary float arrays, with the butterfly loops
+ * written against the Vector API. Stages narrower than a vector fall back to scalar code.
+ */
+final class VectorFft {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private final int size;
+    private final int[] bitReverse;
+    // Twiddles for the stage with half-size m live at [m, 2m)
+    private final float[] twiddleRe;
+    private final float[] twiddleIm;
+
+    VectorFft(int size) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+        }
+        this.size = size;
+
+        int bits = Integer.numberOfTrailingZeros(size);
+        bitReverse = new int[size];
+        for (int i = 0; i < size; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+
+        twiddleRe = new float[Math.max(size, 2)];
+        twiddleIm = new float[Math.max(size, 2)];
+        for (int m = 1; m < size; m <<= 1) {
+            for (int j = 0; j < m; j++) {
+                double angle = -Math.PI * j / m;
+                twiddleRe[m + j] = (float) StrictMath.cos(angle);
+                twiddleIm[m + j] = (float) StrictMath.sin(angle);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Forward transform (e^{-i...}), unscaled.
+     */
+    void forward(float[] re, float[] im) {
+        permute(re, im);
+        for (int m = 1; m < size; m <<= 1) {
+            stage(re, im, m);
+        }
+    }
+
+    /**
+     * Inverse transform, scaled by 1/size.
+     */
+    void inverse(float[] re, float[] im) {
+        // ifft(x) = conj(fft(conj(x))) / n
+        negate(im);
+        forward(re, im);
+        negate(im);
+        scale(re, 1.0f / size);
+        scale(im, 1.0f / size);
+    }
+
+    private void permute(float[] re, float[] im) {
+        for (int i = 0; i < size; i++) {
+            int j = bitReverse[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+    }
+
+    private void stage(float[] re, float[] im, int m) {
+        int lanes = SPECIES.length();
+        for (int group = 0; group < size; group += 2 * m) {
+            int j = 0;
+            if (m >= lanes) {
+                for (; j < SPECIES.loopBound(m); j += lanes) {
+                    int a = group + j;
+                    int b = a + m;
+                    FloatVector wr = FloatVector.fromArray(SPECIES, twiddleRe, m + j);
+                    FloatVector wi = FloatVector.fromArray(SPECIES, twiddleIm, m + j);
+                    FloatVector br = FloatVector.fromArray(SPECIES, re, b);
+                    FloatVector bi = FloatVector.fromArray(SPECIES, im, b);
+                    FloatVector tr = br.mul(wr).sub(bi.mul(wi));
+                    FloatVector ti = br.mul(wi).add(bi.mul(wr));
+                    FloatVector ar = FloatVector.fromArray(SPECIES, re, a);
+                    FloatVector ai = FloatVector.fromArray(SPECIES, im, a);
+                    ar.sub(tr).intoArray(re, b);
+                    ai.sub(ti).intoArray(im, b);
+                    ar.add(tr).intoArray(re, a);
+                    ai.add(ti).intoArray(im, a);
+                }
+            }
+            for (; j < m; j++) {
+                int a = group + j;
+                int b = a + m;
+                float wr = twiddleRe[m + j];
+                float wi = twiddleIm[m + j];
+                float tr = re[b] * wr - im[b] * wi;
+                float ti = re[b] * wi + im[b] * wr;
+                re[b] = re[a] - tr;
+                im[b] = im[a] - ti;
+                re[a] += tr;
+                im[a] += ti;
+            }
+        }
+    }
+
+    private void negate(float[] values) {
+        int i = 0;
+        for (; i < SPECIES.loopBound(size); i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, values, i).neg().intoArray(values, i);
+        }
+        for (; i < size; i++) {
+            values[i] = -values[i];
+        }
+    }
+
+    private void scale(float[] values, float factor) {
+        int i = 0;
+        for (; i < SPECIES.loopBound(size); i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, values, i).mul(factor).intoArray(values, i);
+        }
+        for (; i < size; i++) {
+            values[i] *= factor;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.voicechanger.dsp;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * A single pitch/formant shifting stream, implemented by one of the {@link DspBackend}s.
+ * <p>
+ * Instances hold per-stream state and are not thread-safe; borrow them from
+ * {@link VoiceProcessorPool} rather than sharing one between requests.
+ * <p>
+ * Usage: {@link #configure} once, then for each stream {@link #beginStream}, push blocks of at
+ * most {@link #getConfiguredBufferLength()} samples, and {@link #flush} the tail.
+ */
+public interface VoiceDsp extends AutoCloseable {
+
+    /**
+     * Configures the stretcher for a sample rate, block size and quality tier, reallocating its
+     * FFT buffers. Any stream in progress is lost.
+     */
+    boolean configure(int sampleRate, int maxBufferLength, DspQuality quality);
+
+    default boolean configure(int sampleRate, int maxBufferLength) {
+        return configure(sampleRate, maxBufferLength, DspQuality.STANDARD);
+    }
+
+    int getConfiguredSampleRate();
+
+    DspQuality getConfiguredQuality();
+
+    int getConfiguredBufferLength();
+
+    boolean updateSettings(float shift, float formant, float base);
+
+    /**
+     * Starts a new stream on the already-configured processor, discarding any previous history.
+     */
+    boolean beginStream(float shift, float formant, float base);
+
+    /**
+     * Processes one block; the output lags the input by the stretcher latency.
+     * Input and output may be the same array.
+     */
+    boolean processBlock(short[] input, int inputOffset, short[] output, int outputOffset, int length);
+
+    boolean processBlockInPlace(short[] samples, int offset, int length);
+
+    /**
+     * Number of samples still inside the processor once all input has been pushed, i.e. what
+     * {@link #flush} will return.
+     */
+    int getTailLength();
+
+    /**
+     * Samples of input the stretcher needs before the matching output appears (analysis delay).
+     */
+    int getInputLatency();
+
+    /**
+     * Synthesis delay in samples. Output lags input by {@code getInputLatency() + getOutputLatency()},
+     * which equals {@link #getTailLength()}.
+     */
+    int getOutputLatency();
+
+    /**
+     * Ends the stream, writing the remaining {@link #getTailLength()} samples to {@code output}.
+     *
+     * @return number of samples written
+     */
+    int flush(short[] output, int outputOffset);
+
+    /**
+     * Clears stream history; configuration is kept.
+     */
+    void reset();
+
+    boolean isProcessorValid();
+
+    /**
+     * Releases the native (or off-heap) resources. The instance is unusable afterwards.
+     */
+    void dispose();
+
+    @Override
+    default void close() {
+        dispose();
+    }
+
+    /**
+     * Processes a whole buffer as one stream: the input is pushed through in blocks of the
+     * configured buffer length and the tail is flushed at the end, so the result is
+     * {@code length + getTailLength()} samples long.
+     *
+     * @throws IllegalStateException if the processor rejects a block
+     */
+    default short[] processAudio(short[] inputBuffer, int length, float shift, float formant, float base, int sampleRate) {
+        return processAudio(ShortBuffer.wrap(inputBuffer, 0, length), shift, formant, base, sampleRate);
+    }
+
+    /**
+     * Same as {@link #processAudio(short[], int, float, float, float, int)} for the remaining
+     * samples of {@code input}, which may be a view over a decoded upload; its position is left
+     * unchanged.
+     */
+    default short[] processAudio(ShortBuffer input, float shift, float formant, float base, int sampleRate) {
+        // Only configure when the sample rate changes - configure() reallocates the FFT buffers
+        if (getConfiguredSampleRate() != sampleRate) {
+            configure(sampleRate, Math.max(getConfiguredBufferLength(), 8192), getConfiguredQuality());
+        }
+
+        if (!beginStream(shift, formant, base)) {
+            throw new IllegalStateException("Processor rejected stream settings");
+        }
+
+        // One copy into the result array, then every block is processed in place
+        int length = input.remaining();
+        int blockLength = getConfiguredBufferLength();
+        short[] result = new short[length + getTailLength()];
+        input.get(input.position(), result, 0, length);
+        for (int offset = 0; offset < length; offset += blockLength) {
+            if (!processBlockInPlace(result, offset, Math.min(blockLength, length - offset))) {
+                throw new IllegalStateException("Block processing failed at sample " + offset);
+            }
+        }
+        flush(result, length);
+
+        return result;
+    }
+
+    /**
+     * Processes many short clips, each as its own stream with its own settings.
+     * <p>
+     * Clip {@code i} is {@code lengths[i]} samples of {@code packedInput} starting at
+     * {@code offsets[i]}; {@code settings} holds shift, formant and base for each clip
+     * ({@code 3 * clipCount} values). Outputs are packed back to back, each
+     * {@code lengths[i] + getTailLength()} samples long.
+     */
+    default BatchResult processBatch(short[] packedInput, int[] offsets, int[] lengths, float[] settings) {
+        BatchResult layout = BatchResult.layout(offsets, lengths, settings, getTailLength());
+        short[] output = layout.output();
+        for (int i = 0; i < lengths.length; i++) {
+            if (!beginStream(settings[i * 3], settings[i * 3 + 1], settings[i * 3 + 2])) {
+                throw new IllegalStateException("Processor rejected settings for clip " + i);
+            }
+            int outputOffset = layout.outputOffsets()[i];
+            for (int done = 0; done < lengths[i]; done += getConfiguredBufferLength()) {
+                int blockLength = Math.min(getConfiguredBufferLength(), lengths[i] - done);
+                if (!processBlock(packedInput, offsets[i] + done, output, outputOffset + done, blockLength)) {
+                    throw new IllegalStateException("Block processing failed in clip " + i);
+                }
+            }
+            flush(output, outputOffset + lengths[i]);
+        }
+        reset();
+        return layout;
+    }
+
+    /**
+     * Renders one clip (the remaining samples of {@code input}) with several settings, each as its
+     * own stream: {@code settings} holds shift, formant and base for each voice. Voice {@code v}
+     * is {@code clip(v)} of the result, {@code input.remaining() + getTailLength()} samples long.
+     * The position of {@code input} is left unchanged.
+     * <p>
+     * This default renders the voices one after another through {@link #processBatch}; a backend
+     * may share work that does not depend on the settings between them.
+     */
+    default BatchResult processMulti(ShortBuffer input, float[] settings) {
+        int[] offsets = new int[settings.length / 3];
+        int[] lengths = new int[offsets.length];
+        short[] samples;
+        if (input.hasArray()) {
+            samples = input.array();
+            Arrays.fill(offsets, input.arrayOffset() + input.position());
+        } else {
+            samples = new short[input.remaining()];
+            input.get(input.position(), samples);
+        }
+        Arrays.fill(lengths, input.remaining());
+        return processBatch(samples, offsets, lengths, settings);
+    }
+
+    /**
+     * Packed output of {@link #processBatch} and {@link #processMulti}: clip {@code i} is {@code outputLengths[i]} samples of
+     * {@code output} starting at {@code outputOffsets[i]}.
+     */
+    record BatchResult(short[] output, int[] outputOffsets, int[] outputLengths) {
+
+        /**
+         * Validates a batch description and lays out its (still empty) packed output.
+         */
+        public static BatchResult layout(int[] offsets, int[] lengths, float[] settings, int tailLength) {
+            BatchLayout layout = BatchLayout.of(offsets, lengths, settings, tailLength);
+            return layout.with(new short[layout.totalLength()]);
+        }
+
+        public short[] clip(int index) {
+            return Arrays.copyOfRange(output, outputOffsets[index], outputOffsets[index] + outputLengths[index]);
+        }
+    }
+
+    /**
+     * Where each clip of a batch goes in the packed output, before the output exists; lets a
+     * backend that returns its own output array lay the batch out without allocating a second one.
+     */
+    record BatchLayout(int[] outputOffsets, int[] outputLengths, int totalLength) {
+
+        /**
+         * Validates a batch description and lays out its packed output.
+         */
+        public static BatchLayout of(int[] offsets, int[] lengths, float[] settings, int tailLength) {
+            if (offsets.length != lengths.length || settings.length != lengths.length * 3) {
+                throw new IllegalArgumentException("offsets, lengths and settings (3 per clip) must describe the same clips");
+            }
+            int[] outputOffsets = new int[lengths.length];
+            int[] outputLengths = new int[lengths.length];
+            int total = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                outputOffsets[i] = total;
+                outputLengths[i] = lengths[i] + tailLength;
+                total = Math.addExact(total, outputLengths[i]);
+            }
+            return new BatchLayout(outputOffsets, outputLengths, total);
+        }
+
+        public BatchResult with(short[] output) {
+            if (output.length != totalLength) {
+                throw new IllegalStateException("Packed output has " + output.length + " samples, expected " + totalLength);
+            }
+            return new BatchResult(output, outputOffsets, outputLengths);
+        }
+    }
+}
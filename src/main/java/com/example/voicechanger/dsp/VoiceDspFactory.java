@@ -0,0 +1,43 @@
+package com.example.voicechanger.dsp;
+
+import com.example.voicechanger.nativelib.FfmVoiceProcessor;
+import com.example.voicechanger.nativelib.NativeLibrary;
+import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates {@link VoiceDsp} instances for the backend chosen at startup with
+ * {@code voice.dsp.backend} ({@code jni}, {@code ffm}, {@code java} or {@code auto}).
+ */
+@Component
+public class VoiceDspFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoiceDspFactory.class);
+
+    private final DspBackend backend;
+
+    public VoiceDspFactory(@Value("${voice.dsp.backend:jni}") String backend) {
+        DspBackend configured = DspBackend.valueOf(backend.trim().toUpperCase());
+        if (configured == DspBackend.AUTO) {
+            configured = NativeLibrary.isPresent() ? DspBackend.JNI : DspBackend.JAVA;
+        }
+        this.backend = configured;
+        logger.info("Voice DSP backend: {}", this.backend);
+    }
+
+    public DspBackend getBackend() {
+        return backend;
+    }
+
+    public VoiceDsp create() {
+        return switch (backend) {
+            case JNI -> new NativeVoiceProcessor();
+            case FFM -> new FfmVoiceProcessor();
+            case JAVA -> new JavaVoiceProcessor();
+            case AUTO -> throw new IllegalStateException("AUTO is resolved in the constructor");
+        };
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.voicechanger.dsp;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of voice processors.
+ * <p>
+ * A {@link VoiceDsp} wraps a single native {@code StretchVocal} instance, which keeps
+ * per-stream state and must never be used by two threads at once. Each caller checks a processor
+ * out, uses it on its own thread, and checks it back in; the processor is reset on return so the
+ * next stream starts from a clean state.
+ * <p>
+ * Processors are pooled per (sample rate, block size, quality tier) so a checked-out instance is
+ * already configured and never needs its FFT buffers reallocated.
+ */
+@Component
+public class VoiceProcessorPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoiceProcessorPool.class);
+
+    @Value("${voice.processor.pool.min.size:1}")
+    private int minSize;
+
+    // 0 means one processor per available core
+    @Value("${voice.processor.pool.max.size:0}")
+    private int maxSize;
+
+    @Value("${voice.processor.pool.wait.timeout.ms:5000}")
+    private long waitTimeoutMs;
+
+    private final Map<PoolKey, KeyedPool> pools = new ConcurrentHashMap<>();
+    // Pool each checked-out processor came from; its current configuration may since have changed
+    private final Map<VoiceDsp, KeyedPool> owners = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final VoiceDspFactory dspFactory;
+
+    public VoiceProcessorPool(VoiceDspFactory dspFactory) {
+        this.dspFactory = dspFactory;
+    }
+
+    /**
+     * Borrows a processor configured for the given sample rate, block size and quality tier,
+     * waiting up to the configured timeout if all processors for that key are in use.
+     *
+     * @throws IllegalStateException if no processor becomes available in time
+     */
+    public VoiceDsp checkout(int sampleRate, int blockSize, DspQuality quality) {
+        KeyedPool pool = pools.computeIfAbsent(new PoolKey(sampleRate, blockSize, quality), this::createPool);
+        VoiceDsp processor = pool.checkout();
+        owners.put(processor, pool);
+        return processor;
+    }
+
+    public VoiceDsp checkout(int sampleRate, int blockSize) {
+        return checkout(sampleRate, blockSize, DspQuality.STANDARD);
+    }
+
+    /**
+     * Borrows a processor like {@link #checkout(int, int, DspQuality)} if one is available right
+     * now, without waiting.
+     *
+     * @return the processor, or {@code null} if all processors for that key are in use
+     */
+    public VoiceDsp tryCheckout(int sampleRate, int blockSize, DspQuality quality) {
+        KeyedPool pool = pools.computeIfAbsent(new PoolKey(sampleRate, blockSize, quality), this::createPool);
+        VoiceDsp processor = pool.tryCheckout();
+        if (processor != null) {
+            owners.put(processor, pool);
+        }
+        return processor;
+    }
+
+    /**
+     * Returns a processor obtained from {@link #checkout(int, int, DspQuality)} to the pool it came
+     * from, even if it was reconfigured while checked out. The processor is reset (and configured
+     * back to its pool's settings) before it becomes available to other callers.
+     */
+    public void checkin(VoiceDsp processor) {
+        if (processor == null) return;
+
+        KeyedPool pool = owners.remove(processor);
+        if (pool == null) {
+            logger.warn("Processor returned that was not checked out of this pool - disposing");
+            processor.dispose();
+            return;
+        }
+        pool.checkin(processor);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new ConcurrentHashMap<>();
+        pools.forEach((key, pool) -> stats.put(key.toString(), Map.of(
+                "created", pool.created,
+                "idle", pool.idle.size(),
+                "inUse", pool.maxSize - pool.permits.availablePermits(),
+                "maxSize", pool.maxSize
+        )));
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        logger.info("Disposing voice processor pools");
+        pools.values().forEach(KeyedPool::close);
+        pools.clear();
+    }
+
+    private KeyedPool createPool(PoolKey key) {
+        int max = maxSize > 0 ? maxSize : Runtime.getRuntime().availableProcessors();
+        int min = Math.max(0, Math.min(minSize, max));
+        logger.info("Creating voice processor pool {} (min={}, max={}, waitTimeout={}ms)", key, min, max, waitTimeoutMs);
+
+        KeyedPool pool = new KeyedPool(key, max);
+        for (int i = 0; i < min; i++) {
+            pool.idle.offer(pool.create());
+        }
+        return pool;
+    }
+
+    private record PoolKey(int sampleRate, int blockSize, DspQuality quality) {
+        @Override
+        public String toString() {
+            return sampleRate + "Hz/" + blockSize + "/" + quality.name().toLowerCase();
+        }
+    }
+
+    private class KeyedPool {
+        private final PoolKey key;
+        private final int maxSize;
+        // One permit per processor that may exist; a caller holds a permit while it holds a processor
+        private final Semaphore permits;
+        private final LinkedBlockingDeque<VoiceDsp> idle = new LinkedBlockingDeque<>();
+        private volatile int created = 0;
+        // Set by shutdown; processors returned after that are disposed. Guarded by this
+        private boolean closed;
+
+        KeyedPool(PoolKey key, int maxSize) {
+            this.key = key;
+            this.maxSize = maxSize;
+            this.permits = new Semaphore(maxSize, true);
+        }
+
+        VoiceDsp checkout() {
+            try {
+                if (!permits.tryAcquire(waitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new IllegalStateException("No voice processor available for " + key +
+                            " within " + waitTimeoutMs + "ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a voice processor", e);
+            }
+            return take();
+        }
+
+        VoiceDsp tryCheckout() {
+            return permits.tryAcquire() ? take() : null;
+        }
+
+        // Called holding a permit
+        private VoiceDsp take() {
+            try {
+                VoiceDsp processor = idle.pollFirst();
+                return processor != null ? processor : create();
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        void checkin(VoiceDsp processor) {
+            try {
+                if (processor.isProcessorValid()) {
+                    // Reconfigured while checked out (e.g. a stream that changed quality tier)
+                    if (!hasKeyConfiguration(processor)
+                            && !processor.configure(key.sampleRate(), key.blockSize(), key.quality())) {
+                        throw new IllegalStateException("Failed to configure returned processor back to " + key);
+                    }
+                    processor.reset();
+                    synchronized (this) {
+                        if (!closed) {
+                            idle.offerFirst(processor);
+                            return;
+                        }
+                        created--;
+                    }
+                    processor.dispose();
+                } else {
+                    synchronized (this) {
+                        created--;
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to reset returned processor for {} - discarding it", key, e);
+                processor.dispose();
+                synchronized (this) {
+                    created--;
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        private boolean hasKeyConfiguration(VoiceDsp processor) {
+            return processor.getConfiguredSampleRate() == key.sampleRate()
+                    && processor.getConfiguredBufferLength() == key.blockSize()
+                    && processor.getConfiguredQuality() == key.quality();
+        }
+
+        synchronized VoiceDsp create() {
+            VoiceDsp processor = dspFactory.create();
+            if (!processor.configure(key.sampleRate(), key.blockSize(), key.quality())) {
+                processor.dispose();
+                throw new IllegalStateException("Failed to configure native processor for " + key);
+            }
+            created++;
+            logger.info("Created {} processor #{} for pool {}", dspFactory.getBackend(), created, key);
+            return processor;
+        }
+
+        // Disposes the idle processors; those still checked out are disposed as they come back
+        synchronized void close() {
+            closed = true;
+            VoiceDsp processor;
+            while ((processor = idle.pollFirst()) != null) {
+                processor.dispose();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.voicechanger.dto;
 
+import com.example.voicechanger.dsp.DspQuality;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -9,6 +10,7 @@ public class VoiceProcessRequest {
     private float shift = 10.0f;      // Default: male-to-female
     private float formant = 2.0f;     // Default: male-to-female
     private float base = 100.0f;      // Default: male-to-female
+    private DspQuality quality = DspQuality.STANDARD;
 
     public VoiceProcessRequest() {}
 
@@ -24,6 +26,7 @@ public class VoiceProcessRequest {
                 "shift=" + shift +
                 ", formant=" + formant +
                 ", base=" + base +
+                ", quality=" + quality +
                 '}';
     }
 
@@ -47,4 +50,21 @@ public class VoiceProcessRequest {
     public static VoiceProcessRequest highPitchVoice() {
         return new VoiceProcessRequest(15.0f, 3.0f, 80.0f);
     }
+
+    /**
+     * Looks up a preset by name (as the UI's preset buttons name them, case-insensitive, {@code _}
+     * or {@code -}) or by its {@code /voiceTest} code.
+     *
+     * @throws IllegalArgumentException if there is no such preset
+     */
+    public static VoiceProcessRequest preset(String name) {
+        return switch (name.trim().toLowerCase().replace('_', '-')) {
+            case "male-to-female", "901" -> maleToFemale();
+            case "female-to-male", "902" -> femaleToMale();
+            case "robot", "903" -> robotVoice();
+            case "deep" -> deepVoice();
+            case "high-pitch" -> highPitchVoice();
+            default -> throw new IllegalArgumentException("Unknown preset: " + name);
+        };
+    }
 }
\ No newline at end of file
@@ -0,0 +1,270 @@
+package com.example.voicechanger.nativelib;
+
+import com.example.voicechanger.dsp.DspQuality;
+import com.example.voicechanger.dsp.VoiceDsp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * Voice processor bound to {@code libvoicechanger.so} through the Foreign Function &amp; Memory API
+ * (the {@code vc_*} C ABI in VoiceProcessor.cpp) instead of JNI.
+ * <p>
+ * Each instance owns a shared {@link Arena} holding its off-heap sample buffer; {@link #dispose()}
+ * destroys the native processor and closes the arena, releasing everything deterministically.
+ * Callers that already hold samples off-heap can use {@link #processBlock(MemorySegment, int)} to
+ * process them in place with no copies at all.
+ * <p>
+ * FFM is a preview API in Java 21, so this class needs {@code --enable-preview} at runtime. It is
+ * only loaded when {@code voice.dsp.backend=ffm}.
+ */
+public class FfmVoiceProcessor implements VoiceDsp {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmVoiceProcessor.class);
+
+    private static final MethodHandle CREATE;
+    private static final MethodHandle DESTROY;
+    private static final MethodHandle CONFIGURE_TIER;
+    private static final MethodHandle SET_SETTINGS;
+    private static final MethodHandle PROCESS;
+    private static final MethodHandle FLUSH;
+    private static final MethodHandle TAIL_LENGTH;
+    private static final MethodHandle INPUT_LATENCY;
+    private static final MethodHandle OUTPUT_LATENCY;
+    private static final MethodHandle RESET;
+
+    static {
+        Path libraryPath = Path.of(NativeLibrary.path());
+        if (!Files.exists(libraryPath)) {
+            throw new RuntimeException("Native library not found at: " + libraryPath);
+        }
+        logger.info("Binding native library via FFM: {}", libraryPath);
+
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup library = SymbolLookup.libraryLookup(libraryPath, Arena.global());
+
+        CREATE = downcall(linker, library, "vc_create", FunctionDescriptor.of(ADDRESS));
+        DESTROY = downcall(linker, library, "vc_destroy", FunctionDescriptor.ofVoid(ADDRESS));
+        CONFIGURE_TIER = downcall(linker, library, "vc_configure_tier",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_FLOAT, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT));
+        SET_SETTINGS = downcall(linker, library, "vc_set_settings",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_FLOAT, JAVA_FLOAT, JAVA_FLOAT));
+        PROCESS = downcall(linker, library, "vc_process", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_INT));
+        FLUSH = downcall(linker, library, "vc_flush", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        TAIL_LENGTH = downcall(linker, library, "vc_tail_length", FunctionDescriptor.of(JAVA_INT, ADDRESS));
+        INPUT_LATENCY = downcall(linker, library, "vc_input_latency", FunctionDescriptor.of(JAVA_INT, ADDRESS));
+        OUTPUT_LATENCY = downcall(linker, library, "vc_output_latency", FunctionDescriptor.of(JAVA_INT, ADDRESS));
+        RESET = downcall(linker, library, "vc_reset", FunctionDescriptor.ofVoid(ADDRESS));
+    }
+
+    private static MethodHandle downcall(Linker linker, SymbolLookup library, String name, FunctionDescriptor descriptor) {
+        MemorySegment symbol = library.find(name)
+                .orElseThrow(() -> new RuntimeException("Symbol " + name + " not found in " + NativeLibrary.path()));
+        return linker.downcallHandle(symbol, descriptor);
+    }
+
+    private final Arena arena = Arena.ofShared();
+    private MemorySegment processor;
+    // Staging buffer for short[] callers, sized for a block or the flushed tail
+    private MemorySegment block = MemorySegment.NULL;
+    private int configuredSampleRate = 0;
+    private int configuredBufferLength = 0;
+    private DspQuality configuredQuality = DspQuality.STANDARD;
+    private int tailLength = 0;
+    private int inputLatency = 0;
+    private int outputLatency = 0;
+
+    public FfmVoiceProcessor() {
+        try {
+            processor = (MemorySegment) CREATE.invokeExact();
+        } catch (Throwable t) {
+            arena.close();
+            throw new RuntimeException("Failed to create native processor", t);
+        }
+        if (processor.address() == 0) {
+            arena.close();
+            throw new RuntimeException("Failed to create native processor");
+        }
+    }
+
+    @Override
+    public boolean configure(int sampleRate, int maxBufferLength, DspQuality quality) {
+        if (!isProcessorValid()) return false;
+        try {
+            int configured = (int) CONFIGURE_TIER.invokeExact(processor, (float) sampleRate, maxBufferLength,
+                    quality.blockSamples(sampleRate), quality.intervalSamples(sampleRate),
+                    quality.splitComputation() ? 1 : 0);
+            if (configured == 0) {
+                return false;
+            }
+            tailLength = (int) TAIL_LENGTH.invokeExact(processor);
+            inputLatency = (int) INPUT_LATENCY.invokeExact(processor);
+            outputLatency = (int) OUTPUT_LATENCY.invokeExact(processor);
+        } catch (Throwable t) {
+            throw new RuntimeException("vc_configure failed", t);
+        }
+
+        int blockCapacity = Math.max(maxBufferLength, tailLength);
+        if (block.byteSize() < blockCapacity * JAVA_SHORT.byteSize()) {
+            block = arena.allocate(blockCapacity * JAVA_SHORT.byteSize(), JAVA_SHORT.byteAlignment());
+        }
+        configuredSampleRate = sampleRate;
+        configuredBufferLength = maxBufferLength;
+        configuredQuality = quality;
+        return true;
+    }
+
+    @Override
+    public int getConfiguredSampleRate() {
+        return configuredSampleRate;
+    }
+
+    @Override
+    public int getConfiguredBufferLength() {
+        return configuredBufferLength;
+    }
+
+    @Override
+    public DspQuality getConfiguredQuality() {
+        return configuredQuality;
+    }
+
+    @Override
+    public boolean updateSettings(float shift, float formant, float base) {
+        if (!isProcessorValid()) return false;
+        try {
+            return (int) SET_SETTINGS.invokeExact(processor, shift, formant, base) != 0;
+        } catch (Throwable t) {
+            throw new RuntimeException("vc_set_settings failed", t);
+        }
+    }
+
+    @Override
+    public boolean beginStream(float shift, float formant, float base) {
+        if (!isProcessorValid() || configuredSampleRate == 0) return false;
+        reset();
+        return updateSettings(shift, formant, base);
+    }
+
+    @Override
+    public boolean processBlock(short[] input, int inputOffset, short[] output, int outputOffset, int length) {
+        if (!isProcessorValid()) return false;
+        Objects.checkFromIndexSize(inputOffset, length, input.length);
+        Objects.checkFromIndexSize(outputOffset, length, output.length);
+        if (length == 0) return true;
+        checkBlockLength(length);
+
+        MemorySegment.copy(input, inputOffset, block, JAVA_SHORT, 0, length);
+        boolean processed = process(block, length);
+        MemorySegment.copy(block, JAVA_SHORT, 0, output, outputOffset, length);
+        return processed;
+    }
+
+    @Override
+    public boolean processBlockInPlace(short[] samples, int offset, int length) {
+        return processBlock(samples, offset, samples, offset, length);
+    }
+
+    /**
+     * Processes {@code length} samples in place in an off-heap segment owned by the caller.
+     * The segment must be a native segment holding native-endian 16-bit samples.
+     */
+    public boolean processBlock(MemorySegment samples, int length) {
+        if (!isProcessorValid()) return false;
+        if (!samples.isNative()) {
+            throw new IllegalArgumentException("Segment must be a native (off-heap) segment");
+        }
+        if (samples.byteSize() < length * JAVA_SHORT.byteSize()) {
+            throw new IndexOutOfBoundsException("Block of " + length + " samples exceeds the segment size");
+        }
+        if (length == 0) return true;
+        checkBlockLength(length);
+        return process(samples, length);
+    }
+
+    private boolean process(MemorySegment samples, int length) {
+        try {
+            return (int) PROCESS.invokeExact(processor, samples, samples, length) != 0;
+        } catch (Throwable t) {
+            throw new RuntimeException("vc_process failed", t);
+        }
+    }
+
+    private void checkBlockLength(int length) {
+        if (length > configuredBufferLength) {
+            throw new IllegalArgumentException("Block of " + length + " samples exceeds configured buffer length " +
+                    configuredBufferLength);
+        }
+    }
+
+    @Override
+    public int getTailLength() {
+        return tailLength;
+    }
+
+    @Override
+    public int getInputLatency() {
+        return inputLatency;
+    }
+
+    @Override
+    public int getOutputLatency() {
+        return outputLatency;
+    }
+
+    @Override
+    public int flush(short[] output, int outputOffset) {
+        if (!isProcessorValid() || configuredSampleRate == 0) return 0;
+        Objects.checkFromIndexSize(outputOffset, tailLength, output.length);
+        try {
+            int written = (int) FLUSH.invokeExact(processor, block);
+            MemorySegment.copy(block, JAVA_SHORT, 0, output, outputOffset, written);
+            return written;
+        } catch (Throwable t) {
+            throw new RuntimeException("vc_flush failed", t);
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (!isProcessorValid()) return;
+        try {
+            RESET.invokeExact(processor);
+        } catch (Throwable t) {
+            throw new RuntimeException("vc_reset failed", t);
+        }
+    }
+
+    @Override
+    public boolean isProcessorValid() {
+        return processor != null;
+    }
+
+    @Override
+    public void dispose() {
+        if (processor == null) return;
+        try {
+            DESTROY.invokeExact(processor);
+        } catch (Throwable t) {
+            logger.warn("vc_destroy failed", t);
+        } finally {
+            processor = null;
+            block = MemorySegment.NULL;
+            arena.close();
+        }
+    }
+}
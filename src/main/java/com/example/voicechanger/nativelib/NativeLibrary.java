@@ -0,0 +1,26 @@
+package com.example.voicechanger.nativelib;
+
+import java.io.File;
+
+/**
+ * Location of {@code libvoicechanger.so}, shared by the JNI and FFM backends.
+ * <p>
+ * Defaults to {@code src/main/resources/native/libvoicechanger.so} under the working directory;
+ * override with {@code -Dvoicechanger.native.library=/path/to/libvoicechanger.so}.
+ */
+public final class NativeLibrary {
+
+    static final String PATH_PROPERTY = "voicechanger.native.library";
+
+    private NativeLibrary() {
+    }
+
+    static String path() {
+        return System.getProperty(PATH_PROPERTY,
+                System.getProperty("user.dir") + "/src/main/resources/native/libvoicechanger.so");
+    }
+
+    public static boolean isPresent() {
+        return new File(path()).isFile();
+    }
+}
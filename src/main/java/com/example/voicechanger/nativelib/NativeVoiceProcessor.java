@@ -1,13 +1,20 @@
 
 package com.example.voicechanger.nativelib;
 
+import com.example.voicechanger.dsp.DspQuality;
+import com.example.voicechanger.dsp.VoiceDsp;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Objects;
 
-public class NativeVoiceProcessor {
+public class NativeVoiceProcessor implements VoiceDsp {
 
     private static final Logger logger = LoggerFactory.getLogger(NativeVoiceProcessor.class);
     // Utility methods
@@ -22,8 +29,8 @@ public class NativeVoiceProcessor {
         if (libraryLoaded) return;
 
         try {
-            // ALWAYS load from the specific path: /src/main/resources/native/libvoicechanger.so
-            String absolutePath = System.getProperty("user.dir") + "/src/main/resources/native/libvoicechanger.so";
+            // Load from src/main/resources/native/libvoicechanger.so unless overridden
+            String absolutePath = NativeLibrary.path();
             logger.info("Loading native library from: {}", absolutePath);
 
             // Verify the file exists
@@ -39,7 +46,7 @@ public class NativeVoiceProcessor {
         } catch (UnsatisfiedLinkError e) {
             logger.error("Failed to load native library from explicit path", e);
             throw new RuntimeException("Could not load native voice processing library from: " +
-                    System.getProperty("user.dir") + "/src/main/resources/native/libvoicechanger.so", e);
+                    NativeLibrary.path(), e);
         } catch (Exception e) {
             logger.error("Unexpected error loading native library", e);
             throw new RuntimeException("Unexpected error loading native library", e);
@@ -50,11 +57,27 @@ public class NativeVoiceProcessor {
     public native long createProcessor();
     public native void destroyProcessor(long processorHandle);
     public native boolean configureProcessor(long processorHandle, int sampleRate, int maxBufferLength);
+    public native boolean configureTierNative(long processorHandle, int sampleRate, int maxBufferLength,
+                                              int blockSamples, int intervalSamples, boolean splitComputation);
     public native boolean setSettings(long processorHandle, float shiftSemitones, float formantSemitones, float formantBaseHz);
     public native short[] processAudioNative(long processorHandle, short[] inputBuffer, int length);
+    public native void resetProcessor(long processorHandle);
+    public native boolean processBlockNative(long processorHandle, short[] inputBuffer, int inputOffset,
+                                             short[] outputBuffer, int outputOffset, int length);
+    public native boolean processDirectNative(long processorHandle, ByteBuffer directBuffer, int byteOffset, int length);
+    public native boolean processCriticalNative(long processorHandle, short[] buffer, int offset, int length);
+    public native short[] processBatchNative(long processorHandle, short[] packedInput, int[] offsets, int[] lengths, float[] settings);
+    public native short[] processMultiNative(long processorHandle, short[] inputBuffer, int inputOffset, int length, float[] settings);
+    public native int flushNative(long processorHandle, short[] outputBuffer, int outputOffset);
+    public native int tailLengthNative(long processorHandle);
+    public native int inputLatencyNative(long processorHandle);
+    public native int outputLatencyNative(long processorHandle);
 
     // Java wrapper methods
     private long processorHandle = 0;
+    private int configuredSampleRate = 0;
+    private int configuredBufferLength = 0;
+    private DspQuality configuredQuality = DspQuality.STANDARD;
 
     public NativeVoiceProcessor() {
         if (!libraryLoaded) {
@@ -67,49 +90,225 @@ public class NativeVoiceProcessor {
         logger.info("Native processor created successfully with handle: {}", processorHandle);
     }
 
-    public boolean configure(int sampleRate, int maxBufferLength) {
+    @Override
+    public boolean configure(int sampleRate, int maxBufferLength, DspQuality quality) {
         if (processorHandle == 0) return false;
-        return configureProcessor(processorHandle, sampleRate, maxBufferLength);
+        boolean configured = configureTierNative(processorHandle, sampleRate, maxBufferLength,
+                quality.blockSamples(sampleRate), quality.intervalSamples(sampleRate), quality.splitComputation());
+        if (configured) {
+            configuredSampleRate = sampleRate;
+            configuredBufferLength = maxBufferLength;
+            configuredQuality = quality;
+        }
+        return configured;
     }
 
     public boolean configure(int sampleRate) {
         return configure(sampleRate, 8192);
     }
 
+    @Override
     public boolean updateSettings(float shift, float formant, float base) {
         if (processorHandle == 0) return false;
         return setSettings(processorHandle, shift, formant, base);
     }
 
-    public short[] processAudio(short[] inputBuffer, int length, float shift, float formant, float base, int sampleRate) {
+    /**
+     * Processes a whole buffer as one stream (see {@link VoiceDsp#processAudio}).
+     *
+     * @throws IllegalStateException if the processor is not initialized or processing fails
+     */
+    @Override
+    public short[] processAudio(ShortBuffer input, float shift, float formant, float base, int sampleRate) {
         if (processorHandle == 0) {
-            logger.error("Processor not initialized");
-            return inputBuffer; // return original if processing fails
+            throw new IllegalStateException("Processor not initialized");
         }
+        return VoiceDsp.super.processAudio(input, shift, formant, base, sampleRate);
+    }
 
-        try {
-            // Configure if needed
-            configure(sampleRate, Math.max(length, 8192));
+    private static short[] copy(ShortBuffer input) {
+        short[] samples = new short[input.remaining()];
+        input.get(input.position(), samples);
+        return samples;
+    }
 
-            // Update settings
-            updateSettings(shift, formant, base);
+    /**
+     * Processes the whole batch in a single JNI call (see {@link VoiceDsp#processBatch}): one
+     * transition, one copy of the packed input in and one of the packed output back, instead of
+     * the per-clip configure/settings/array marshalling of {@link #processAudio}.
+     */
+    @Override
+    public BatchResult processBatch(short[] packedInput, int[] offsets, int[] lengths, float[] settings) {
+        if (processorHandle == 0) {
+            throw new IllegalStateException("Processor not initialized");
+        }
+        BatchLayout layout = BatchLayout.of(offsets, lengths, settings, getTailLength());
+        short[] output = processBatchNative(processorHandle, packedInput, offsets, lengths, settings);
+        if (output == null) {
+            throw new IllegalStateException("Native batch processing failed");
+        }
+        return layout.with(output);
+    }
 
-            // Process audio
-            short[] result = processAudioNative(processorHandle, inputBuffer, length);
+    /**
+     * Renders every voice in one JNI call (see {@link VoiceDsp#processMulti}). The STFT analysis of
+     * the input - the same for every voice - runs once per block and is shared, so each extra voice
+     * only costs its own spectral processing and synthesis. The output matches rendering the
+     * voices separately.
+     */
+    @Override
+    public BatchResult processMulti(ShortBuffer input, float[] settings) {
+        if (processorHandle == 0) {
+            throw new IllegalStateException("Processor not initialized");
+        }
+        int length = input.remaining();
+        int[] lengths = new int[settings.length / 3];
+        Arrays.fill(lengths, length);
+        BatchLayout layout = BatchLayout.of(new int[lengths.length], lengths, settings, getTailLength());
+        if (lengths.length == 0) {
+            return layout.with(new short[0]);
+        }
 
-            if (result == null) {
-                logger.warn("Native processing returned null, returning original audio");
-                return inputBuffer;
-            }
+        short[] output;
+        if (input.hasArray()) {
+            output = processMultiNative(processorHandle, input.array(), input.arrayOffset() + input.position(),
+                    length, settings);
+        } else {
+            output = processMultiNative(processorHandle, copy(input), 0, length, settings);
+        }
+        if (output == null) {
+            throw new IllegalStateException("Native multi-voice processing failed");
+        }
+        return layout.with(output);
+    }
 
-            return result;
+    // Streaming API: beginStream() once, processBlock() for each block, then flush() the tail
 
-        } catch (Exception e) {
-            logger.error("Error during native audio processing", e);
-            return inputBuffer; // return original on error
+    /**
+     * Starts a new stream on the already-configured processor, discarding any previous history.
+     */
+    @Override
+    public boolean beginStream(float shift, float formant, float base) {
+        if (processorHandle == 0 || configuredSampleRate == 0) return false;
+        reset();
+        return updateSettings(shift, formant, base);
+    }
+
+    /**
+     * Processes one block of at most {@link #getConfiguredBufferLength()} samples. Output is
+     * written to {@code output} and lags the input by the stretcher latency; input and output may
+     * be the same array.
+     */
+    @Override
+    public boolean processBlock(short[] input, int inputOffset, short[] output, int outputOffset, int length) {
+        if (processorHandle == 0) return false;
+        if (length == 0) return true;
+        checkBlockLength(length);
+        return processBlockNative(processorHandle, input, inputOffset, output, outputOffset, length);
+    }
+
+    /**
+     * Processes {@code length} samples in place in a direct buffer, starting at its position.
+     * The samples are read and written by the native code directly, with no copies and no
+     * Java allocation. The buffer must use the platform's native byte order.
+     */
+    public boolean processBlock(ByteBuffer directBuffer, int length) {
+        if (processorHandle == 0) return false;
+        if (!directBuffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer must be a direct ByteBuffer");
+        }
+        if (directBuffer.order() != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException("Buffer must use native byte order (" + ByteOrder.nativeOrder() + ")");
+        }
+        if (length < 0 || directBuffer.position() + 2L * length > directBuffer.limit()) {
+            throw new IndexOutOfBoundsException("Block of " + length + " samples exceeds the buffer's remaining bytes");
+        }
+        if (length == 0) return true;
+        checkBlockLength(length);
+        return processDirectNative(processorHandle, directBuffer, directBuffer.position(), length);
+    }
+
+    /**
+     * Processes {@code length} samples of a Java array in place. The array is pinned for the
+     * duration of the DSP call instead of being copied, so blocks should stay short
+     * (a few thousand samples) to avoid holding up the garbage collector.
+     */
+    @Override
+    public boolean processBlockInPlace(short[] samples, int offset, int length) {
+        if (processorHandle == 0) return false;
+        Objects.checkFromIndexSize(offset, length, samples.length);
+        if (length == 0) return true;
+        checkBlockLength(length);
+        return processCriticalNative(processorHandle, samples, offset, length);
+    }
+
+    private void checkBlockLength(int length) {
+        if (length > configuredBufferLength) {
+            throw new IllegalArgumentException("Block of " + length + " samples exceeds configured buffer length " +
+                    configuredBufferLength);
+        }
+    }
+
+    /**
+     * Ends the stream, writing the remaining {@link #getTailLength()} samples to {@code output}.
+     * Call {@link #beginStream} before processing another stream.
+     *
+     * @return number of samples written
+     */
+    @Override
+    public int flush(short[] output, int outputOffset) {
+        if (processorHandle == 0) return 0;
+        return flushNative(processorHandle, output, outputOffset);
+    }
+
+    /**
+     * Number of samples still inside the stretcher once all input has been pushed, i.e. what
+     * {@link #flush} will return. Depends only on the configuration.
+     */
+    @Override
+    public int getTailLength() {
+        if (processorHandle == 0) return 0;
+        return tailLengthNative(processorHandle);
+    }
+
+    @Override
+    public int getInputLatency() {
+        if (processorHandle == 0) return 0;
+        return inputLatencyNative(processorHandle);
+    }
+
+    @Override
+    public int getOutputLatency() {
+        if (processorHandle == 0) return 0;
+        return outputLatencyNative(processorHandle);
+    }
+
+    /**
+     * Clears the stretcher history and limiter state so the next stream starts fresh.
+     * Configuration (sample rate and buffer length) is kept.
+     */
+    @Override
+    public void reset() {
+        if (processorHandle != 0) {
+            resetProcessor(processorHandle);
         }
     }
 
+    @Override
+    public int getConfiguredSampleRate() {
+        return configuredSampleRate;
+    }
+
+    @Override
+    public int getConfiguredBufferLength() {
+        return configuredBufferLength;
+    }
+
+    @Override
+    public DspQuality getConfiguredQuality() {
+        return configuredQuality;
+    }
+
     @Override
     protected void finalize() throws Throwable {
         if (processorHandle != 0) {
@@ -119,6 +318,7 @@ public class NativeVoiceProcessor {
         super.finalize();
     }
 
+    @Override
     public void dispose() {
         if (processorHandle != 0) {
             destroyProcessor(processorHandle);
@@ -126,6 +326,12 @@ public class NativeVoiceProcessor {
         }
     }
 
+    // Raw handle for benchmarks comparing the legacy processAudioNative path
+    long handle() {
+        return processorHandle;
+    }
+
+    @Override
     public boolean isProcessorValid() {
         return processorHandle != 0;
     }
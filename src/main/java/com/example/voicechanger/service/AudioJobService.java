@@ -0,0 +1,448 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.dsp.DspQuality;
+import com.example.voicechanger.dsp.VoiceDsp;
+import com.example.voicechanger.dto.VoiceProcessRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Background processing of large uploads, so a long decode and DSP run does not hold a request
+ * thread.
+ * <p>
+ * A submitted upload is spooled to {@code voice.jobs.dir} next to a small properties file that
+ * describes the job, and queued for a fixed pool of workers. Each worker runs one job at a time on
+ * a processor of its own (never split across cores - the workers already use them), outside the
+ * pool that request threads check processors out of, and reports progress in input samples. By
+ * default there is one worker fewer than there are cores, so interactive requests always find a
+ * core free. Results are written next to the
+ * upload and kept for {@code voice.jobs.result.ttl.minutes} after the job finishes.
+ * <p>
+ * The spool is the queue: jobs that were queued or running when the server stopped are queued
+ * again on start-up, and finished results stay downloadable until they expire.
+ */
+@Service
+public class AudioJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioJobService.class);
+    private static final String JOB_SUFFIX = ".job";
+    private static final String UPLOAD_SUFFIX = ".upload";
+    private static final String RESULT_SUFFIX = ".result";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * A job's settings and progress. Fields are updated by the worker and read by status requests.
+     */
+    @Getter
+    public static final class Job {
+        private final String id;
+        private final VoiceProcessRequest request;
+        private final AudioOutputFormat format;
+        private final String fileName;
+        private final Instant submittedAt;
+        private volatile State state = State.QUEUED;
+        // Known once the upload has been decoded
+        private volatile int totalSamples;
+        private volatile int processedSamples;
+        private volatile long resultBytes;
+        private volatile String error;
+        private volatile Instant finishedAt;
+        // Completes (with this job) when the job is done, failed or cancelled
+        private final CompletableFuture<Job> completion = new CompletableFuture<>();
+        @Getter(AccessLevel.NONE)
+        private volatile Future<?> task;
+
+        Job(String id, VoiceProcessRequest request, AudioOutputFormat format, String fileName, Instant submittedAt) {
+            this.id = id;
+            this.request = request;
+            this.format = format;
+            this.fileName = fileName;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    @Value("${voice.jobs.dir:${java.io.tmpdir}/voicechanger-jobs}")
+    private String jobsDir;
+
+    // 0 = one worker fewer than the available cores (at least one)
+    @Value("${voice.jobs.workers:0}")
+    private int workers;
+
+    // Queued and running jobs; further submissions are rejected
+    @Value("${voice.jobs.max.queued:64}")
+    private int maxQueued;
+
+    @Value("${voice.jobs.result.ttl.minutes:60}")
+    private long resultTtlMinutes;
+
+    private final VoiceProcessingService voiceProcessingService;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger unfinished = new AtomicInteger();
+    // Each worker's processors, one per quality tier, created on first use
+    private final ThreadLocal<Map<DspQuality, VoiceDsp>> workerProcessors =
+            ThreadLocal.withInitial(() -> new EnumMap<>(DspQuality.class));
+    private final Queue<VoiceDsp> processors = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "voice-job-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ThreadPoolExecutor executor;
+    private Path spool;
+    private volatile boolean stopping;
+
+    public AudioJobService(VoiceProcessingService voiceProcessingService) {
+        this.voiceProcessingService = voiceProcessingService;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        spool = Files.createDirectories(Path.of(jobsDir));
+        int threads = workers > 0 ? workers : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "voice-job-" + threadNumber.incrementAndGet()));
+
+        recover();
+        sweeper.scheduleWithFixedDelay(this::expire, 1, 1, TimeUnit.MINUTES);
+        logger.info("Audio jobs: spool={}, workers={}, max queued={}, results kept {} min",
+                spool, threads, maxQueued, resultTtlMinutes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Running jobs stay queued in the spool and start again with the next server
+        stopping = true;
+        sweeper.shutdownNow();
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Job workers still running after 10 s; not disposing their processors");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        processors.forEach(VoiceDsp::dispose);
+    }
+
+    /**
+     * Spools {@code upload} and queues it for processing with {@code request}, returning at once.
+     *
+     * @throws RejectedExecutionException if {@code voice.jobs.max.queued} jobs are already waiting
+     *                                    or running
+     */
+    public Job submit(MultipartFile upload, VoiceProcessRequest request, AudioOutputFormat format) throws IOException {
+        if (unfinished.incrementAndGet() > maxQueued) {
+            unfinished.decrementAndGet();
+            throw new RejectedExecutionException("Job queue is full (" + maxQueued + " jobs)");
+        }
+        Job job = new Job(UUID.randomUUID().toString(), request, format, upload.getOriginalFilename(), Instant.now());
+        try {
+            // A multipart file already on disk is moved rather than copied
+            upload.transferTo(file(job.id, UPLOAD_SUFFIX));
+            save(job);
+        } catch (IOException | RuntimeException e) {
+            unfinished.decrementAndGet();
+            deleteFiles(job.id);
+            throw e;
+        }
+        jobs.put(job.id, job);
+        job.task = executor.submit(() -> run(job));
+        logger.info("Queued job {}: {} ({} bytes), {}", job.id, job.fileName, upload.getSize(), request);
+        return job;
+    }
+
+    public Optional<Job> get(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * The processed file of a {@link State#DONE} job.
+     */
+    public Path resultFile(Job job) {
+        return file(job.id, RESULT_SUFFIX);
+    }
+
+    /**
+     * Cancels a queued or running job (a running job stops after its current block), or discards
+     * a finished job and its result before it expires.
+     *
+     * @return false if there is no such job
+     */
+    public boolean cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return false;
+        }
+        State previous;
+        synchronized (job) {
+            previous = job.state;
+            if (!previous.isFinished()) {
+                job.state = State.CANCELLED;
+                job.finishedAt = Instant.now();
+            }
+        }
+
+        if (previous.isFinished()) {
+            jobs.remove(id);
+            deleteFiles(id);
+            return true;
+        }
+        // A running job notices at its next block and deletes its own partial result
+        if (previous == State.QUEUED) {
+            job.task.cancel(false);
+            unfinished.decrementAndGet();
+        }
+        deleteFile(file(id, JOB_SUFFIX));
+        deleteFile(file(id, UPLOAD_SUFFIX));
+        job.completion.complete(job);
+        logger.info("Cancelled job {} ({})", id, previous);
+        return true;
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.state != State.QUEUED) {
+                return;
+            }
+            job.state = State.RUNNING;
+        }
+        Path temp = file(job.id, RESULT_SUFFIX + TEMP_SUFFIX);
+        try {
+            ShortBuffer pcm = voiceProcessingService.decodeAudio(Files.readAllBytes(file(job.id, UPLOAD_SUFFIX)));
+            job.totalSamples = pcm.remaining();
+            VoiceDsp processor = processor(job.request.getQuality());
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 65536)) {
+                voiceProcessingService.writeProcessed(pcm, job.request, job.format, processor, out, processed -> {
+                    if (job.state == State.CANCELLED || stopping) {
+                        throw new CancellationException();
+                    }
+                    job.processedSamples = processed;
+                });
+            }
+            Path result = Files.move(temp, file(job.id, RESULT_SUFFIX), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            job.resultBytes = Files.size(result);
+            job.processedSamples = job.totalSamples;
+            if (finish(job, State.DONE, null)) {
+                deleteFile(file(job.id, UPLOAD_SUFFIX));
+                logger.info("Job {} done: {} samples, {} bytes", job.id, job.totalSamples, job.resultBytes);
+            } else {
+                // Cancelled after the last block
+                deleteFile(result);
+            }
+        } catch (Exception e) {
+            deleteFile(temp);
+            if (job.state == State.CANCELLED || stopping) {
+                return;
+            }
+            logger.error("Job {} failed", job.id, e);
+            finish(job, State.FAILED, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        } finally {
+            unfinished.decrementAndGet();
+        }
+    }
+
+    private VoiceDsp processor(DspQuality quality) {
+        return workerProcessors.get().computeIfAbsent(quality, q -> {
+            VoiceDsp processor = voiceProcessingService.createProcessor(q);
+            processors.add(processor);
+            return processor;
+        });
+    }
+
+    // Returns false if the job was cancelled in the meantime
+    private boolean finish(Job job, State state, String error) {
+        synchronized (job) {
+            if (job.state.isFinished()) {
+                return false;
+            }
+            job.state = state;
+            job.error = error;
+            job.finishedAt = Instant.now();
+        }
+        try {
+            save(job);
+        } catch (IOException e) {
+            logger.warn("Cannot record the state of job {}", job.id, e);
+        }
+        job.completion.complete(job);
+        return true;
+    }
+
+    private void expire() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(resultTtlMinutes));
+        for (Job job : jobs.values()) {
+            if (job.state.isFinished() && job.finishedAt.isBefore(cutoff) && jobs.remove(job.id, job)) {
+                deleteFiles(job.id);
+                logger.info("Job {} expired", job.id);
+            }
+        }
+    }
+
+    /**
+     * Reloads the spool: finished jobs become available again and unfinished ones are re-queued,
+     * oldest first.
+     */
+    private void recover() throws IOException {
+        List<Job> requeue = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(spool)) {
+            for (Path path : (Iterable<Path>) listing::iterator) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    deleteFile(path);
+                } else if (name.endsWith(JOB_SUFFIX)) {
+                    Job job = load(path, name.substring(0, name.length() - JOB_SUFFIX.length()));
+                    if (job == null) {
+                        continue;
+                    }
+                    jobs.put(job.id, job);
+                    if (!job.state.isFinished()) {
+                        requeue.add(job);
+                    }
+                }
+            }
+        }
+
+        requeue.sort(Comparator.comparing(Job::getSubmittedAt));
+        for (Job job : requeue) {
+            unfinished.incrementAndGet();
+            job.task = executor.submit(() -> run(job));
+        }
+        if (!jobs.isEmpty()) {
+            logger.info("Recovered {} jobs from {} ({} queued again)", jobs.size(), spool, requeue.size());
+        }
+    }
+
+    private Job load(Path path, String id) {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+            VoiceProcessRequest request = new VoiceProcessRequest(
+                    Float.parseFloat(properties.getProperty("shift")),
+                    Float.parseFloat(properties.getProperty("formant")),
+                    Float.parseFloat(properties.getProperty("base")));
+            request.setQuality(DspQuality.fromName(properties.getProperty("quality")));
+            Job job = new Job(id, request, AudioOutputFormat.fromName(properties.getProperty("format")),
+                    properties.getProperty("fileName"), Instant.ofEpochMilli(Long.parseLong(properties.getProperty("submittedAt"))));
+
+            State state = State.valueOf(properties.getProperty("state"));
+            if (state == State.DONE && !Files.exists(file(id, RESULT_SUFFIX))
+                    || !state.isFinished() && !Files.exists(file(id, UPLOAD_SUFFIX))) {
+                throw new IOException("files missing for state " + state);
+            }
+            if (state.isFinished()) {
+                job.state = state;
+                job.error = properties.getProperty("error");
+                job.finishedAt = Instant.ofEpochMilli(Long.parseLong(properties.getProperty("finishedAt")));
+                job.totalSamples = Integer.parseInt(properties.getProperty("totalSamples", "0"));
+                job.processedSamples = job.totalSamples;
+                job.resultBytes = Long.parseLong(properties.getProperty("resultBytes", "0"));
+                job.completion.complete(job);
+            }
+            return job;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Discarding unreadable job {}: {}", id, e.getMessage());
+            deleteFiles(id);
+            return null;
+        }
+    }
+
+    private void save(Job job) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("fileName", String.valueOf(job.fileName));
+        properties.setProperty("shift", Float.toString(job.request.getShift()));
+        properties.setProperty("formant", Float.toString(job.request.getFormant()));
+        properties.setProperty("base", Float.toString(job.request.getBase()));
+        properties.setProperty("quality", job.request.getQuality().name());
+        properties.setProperty("format", job.format.name());
+        properties.setProperty("submittedAt", Long.toString(job.submittedAt.toEpochMilli()));
+        // Running is not a state worth keeping: after a restart the job is queued again
+        properties.setProperty("state", (job.state == State.RUNNING ? State.QUEUED : job.state).name());
+        if (job.state.isFinished()) {
+            properties.setProperty("finishedAt", Long.toString(job.finishedAt.toEpochMilli()));
+            properties.setProperty("totalSamples", Integer.toString(job.totalSamples));
+            properties.setProperty("resultBytes", Long.toString(job.resultBytes));
+        }
+        if (job.error != null) {
+            properties.setProperty("error", job.error);
+        }
+
+        // Written under a temporary name so a restart never reads half a file
+        Path temp = file(job.id, JOB_SUFFIX + TEMP_SUFFIX);
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "voice job " + job.id);
+        }
+        Files.move(temp, file(job.id, JOB_SUFFIX), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteFiles(String id) {
+        deleteFile(file(id, JOB_SUFFIX));
+        deleteFile(file(id, UPLOAD_SUFFIX));
+        deleteFile(file(id, RESULT_SUFFIX));
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Cannot delete {}", file, e);
+        }
+    }
+
+    private Path file(String id, String suffix) {
+        return spool.resolve(id + suffix);
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.dsp.VoiceDsp;
+import com.example.voicechanger.dto.VoiceProcessRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ShortBuffer;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Incremental processing of a live stream sent as a series of HTTP chunks.
+ * <p>
+ * A session owns a processor of its own, configured once when it is opened, so successive chunks
+ * continue one stream: the stretcher keeps its history across chunks (no cold start or seam at
+ * chunk boundaries) and each sample goes through the DSP exactly once. Each chunk returns only the
+ * output that chunk produced; with {@code voice.changer.latency.compensation} the stretcher's
+ * leading delay is dropped from the first chunks, and {@link #close} returns the samples still
+ * inside the processor. The concatenated responses are then what one processor makes of the
+ * concatenated input, as {@code /api/process} does for uploads too short to split.
+ * <p>
+ * Sessions hold a processor for as long as they are open, outside the pool that request threads
+ * check processors out of, so their number is capped by {@code voice.live.sessions.max}. A session
+ * that has not received a chunk for {@code voice.live.sessions.idle.timeout.seconds} is closed and
+ * its processor disposed.
+ */
+@Service
+public class LiveSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveSessionService.class);
+    private static final int SAMPLE_RATE = 8000;
+
+    /**
+     * An open stream. Chunks of one session are processed one at a time, in the order they arrive.
+     */
+    @Getter
+    public static final class Session {
+        private final String id;
+        private final VoiceProcessRequest request;
+        private final AudioOutputFormat format;
+        private final Instant openedAt;
+        private volatile long receivedSamples;
+        private volatile long returnedSamples;
+        @Getter(AccessLevel.NONE)
+        private volatile long lastUsedNanos = System.nanoTime();
+        // Everything below is guarded by the session monitor
+        @Getter(AccessLevel.NONE)
+        private final VoiceDsp processor;
+        // Leading output samples still to drop (the stretcher delay)
+        @Getter(AccessLevel.NONE)
+        private int skip;
+        @Getter(AccessLevel.NONE)
+        private final short[] block;
+        @Getter(AccessLevel.NONE)
+        private boolean closed;
+
+        Session(String id, VoiceProcessRequest request, AudioOutputFormat format, VoiceDsp processor, int skip) {
+            this.id = id;
+            this.request = request;
+            this.format = format;
+            this.openedAt = Instant.now();
+            this.processor = processor;
+            this.skip = skip;
+            this.block = new short[Math.max(processor.getConfiguredBufferLength(), processor.getTailLength())];
+        }
+    }
+
+    @Value("${voice.live.sessions.max:64}")
+    private int maxSessions;
+
+    @Value("${voice.live.sessions.idle.timeout.seconds:30}")
+    private long idleTimeoutSeconds;
+
+    @Value("${voice.changer.latency.compensation:true}")
+    private boolean latencyCompensation;
+
+    private final VoiceProcessingService voiceProcessingService;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "voice-live-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LiveSessionService(VoiceProcessingService voiceProcessingService) {
+        this.voiceProcessingService = voiceProcessingService;
+    }
+
+    @PostConstruct
+    public void init() {
+        long period = Math.max(1, idleTimeoutSeconds / 2);
+        sweeper.scheduleWithFixedDelay(this::expire, period, period, TimeUnit.SECONDS);
+        logger.info("Live sessions: max={}, idle timeout {} s", maxSessions, idleTimeoutSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        sessions.values().forEach(this::discard);
+    }
+
+    /**
+     * Opens a session that processes every chunk with {@code request}, returning results in
+     * {@code format}.
+     *
+     * @throws RejectedExecutionException if {@code voice.live.sessions.max} sessions are open
+     */
+    public Session open(VoiceProcessRequest request, AudioOutputFormat format) {
+        if (open.incrementAndGet() > maxSessions) {
+            open.decrementAndGet();
+            throw new RejectedExecutionException("Too many live sessions (" + maxSessions + ")");
+        }
+        try {
+            VoiceDsp processor = voiceProcessingService.createProcessor(request.getQuality());
+            if (!processor.beginStream(request.getShift(), request.getFormant(), request.getBase())) {
+                processor.dispose();
+                throw new IllegalStateException("Processor rejected stream settings");
+            }
+            Session session = new Session(UUID.randomUUID().toString(), request, format, processor,
+                    latencyCompensation ? processor.getTailLength() : 0);
+            sessions.put(session.id, session);
+            logger.info("Opened live session {}: {}, {}", session.id, request, format);
+            return session;
+        } catch (RuntimeException e) {
+            open.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public Optional<Session> get(String id) {
+        return Optional.ofNullable(sessions.get(id));
+    }
+
+    /**
+     * Pushes the next chunk of the session's stream and returns the output it produced, encoded in
+     * the session format. {@code settings}, if given, changes shift, formant and base from this
+     * chunk on without restarting the stream.
+     *
+     * @return empty if there is no such session (never opened, closed or expired)
+     */
+    public Optional<byte[]> process(String id, ShortBuffer chunk, VoiceProcessRequest settings) {
+        Session session = sessions.get(id);
+        if (session == null) {
+            return Optional.empty();
+        }
+        synchronized (session) {
+            if (session.closed) {
+                return Optional.empty();
+            }
+            VoiceDsp processor = session.processor;
+            if (settings != null) {
+                if (!processor.updateSettings(settings.getShift(), settings.getFormant(), settings.getBase())) {
+                    throw new IllegalArgumentException("Processor rejected settings " + settings);
+                }
+                session.request.setShift(settings.getShift());
+                session.request.setFormant(settings.getFormant());
+                session.request.setBase(settings.getBase());
+            }
+
+            int length = chunk.remaining();
+            short[] output = new short[Math.max(length - session.skip, 0)];
+            int written = 0;
+            int blockLength = processor.getConfiguredBufferLength();
+            for (int offset = 0; offset < length; offset += blockLength) {
+                int count = Math.min(blockLength, length - offset);
+                chunk.get(chunk.position() + offset, session.block, 0, count);
+                if (!processor.processBlockInPlace(session.block, 0, count)) {
+                    throw new IllegalStateException("Block processing failed in session " + id);
+                }
+                written += drain(session, count, output, written);
+            }
+            session.receivedSamples += length;
+            session.returnedSamples += written;
+            session.lastUsedNanos = System.nanoTime();
+            return Optional.of(session.format.toByteArray(ShortBuffer.wrap(output, 0, written), SAMPLE_RATE));
+        }
+    }
+
+    /**
+     * Ends the session and returns the samples still inside its processor, encoded in the session
+     * format.
+     *
+     * @return empty if there is no such session
+     */
+    public Optional<byte[]> close(String id) {
+        Session session = sessions.remove(id);
+        if (session == null) {
+            return Optional.empty();
+        }
+        synchronized (session) {
+            if (session.closed) {
+                return Optional.empty();
+            }
+            int flushed = session.processor.flush(session.block, 0);
+            short[] output = new short[Math.max(flushed - session.skip, 0)];
+            int written = drain(session, flushed, output, 0);
+            session.returnedSamples += written;
+            release(session);
+            logger.info("Closed live session {}: {} samples in, {} out",
+                    id, session.receivedSamples, session.returnedSamples);
+            return Optional.of(session.format.toByteArray(ShortBuffer.wrap(output, 0, written), SAMPLE_RATE));
+        }
+    }
+
+    // Copies the first `count` processed samples of the block to the output, after any delay still to drop
+    private static int drain(Session session, int count, short[] output, int outputOffset) {
+        int dropped = Math.min(session.skip, count);
+        session.skip -= dropped;
+        System.arraycopy(session.block, dropped, output, outputOffset, count - dropped);
+        return count - dropped;
+    }
+
+    private void expire() {
+        long cutoff = System.nanoTime() - TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        for (Session session : sessions.values()) {
+            if (session.lastUsedNanos - cutoff < 0 && sessions.remove(session.id, session)) {
+                logger.info("Live session {} idle for {} s, closing", session.id, idleTimeoutSeconds);
+                discard(session);
+            }
+        }
+    }
+
+    private void discard(Session session) {
+        synchronized (session) {
+            if (!session.closed) {
+                release(session);
+            }
+        }
+    }
+
+    // Caller holds the session monitor
+    private void release(Session session) {
+        session.closed = true;
+        session.processor.dispose();
+        open.decrementAndGet();
+    }
+}
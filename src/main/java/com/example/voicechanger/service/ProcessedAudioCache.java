@@ -0,0 +1,356 @@
+package com.example.voicechanger.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Processed files keyed by a SHA-256 of the upload and the processing parameters, so the same clip
+ * run through the same preset is decoded and processed once.
+ * <p>
+ * Results live in a byte-bounded LRU on the heap and, when {@code voice.cache.disk.dir} is set, in
+ * a second LRU of files that are memory-mapped when read (the page cache holds them, not the heap,
+ * and they survive restarts). Concurrent requests for a key that is being processed wait for that
+ * one result instead of processing it again. The key doubles as the response {@code ETag}.
+ */
+@Component
+public class ProcessedAudioCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessedAudioCache.class);
+    private static final String FILE_SUFFIX = ".audio";
+
+    /**
+     * Produces the file to cache on a miss.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        byte[] load() throws Exception;
+    }
+
+    /**
+     * A cached file. {@code data} is read-only and may be memory-mapped; use {@link #writeTo}.
+     */
+    public record CachedAudio(String key, ByteBuffer data) {
+
+        public String etag() {
+            return ProcessedAudioCache.etag(key);
+        }
+
+        public int size() {
+            return data.remaining();
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            Channels.newChannel(out).write(data.duplicate());
+            out.flush();
+        }
+    }
+
+    @Value("${voice.cache.memory.max.bytes:67108864}")
+    private long memoryMaxBytes;
+
+    @Value("${voice.cache.disk.dir:}")
+    private String diskDir;
+
+    @Value("${voice.cache.disk.max.bytes:1073741824}")
+    private long diskMaxBytes;
+
+    // A result on disk from another engine or latency setting must not be served after a restart
+    @Value("${voice.dsp.backend:jni}")
+    private String backend;
+
+    @Value("${voice.changer.latency.compensation:true}")
+    private boolean latencyCompensation;
+
+    // Both maps are in access order (eldest first) and guarded by their own monitor
+    private final LinkedHashMap<String, ByteBuffer> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<CachedAudio>> inFlight = new ConcurrentHashMap<>();
+    private long memoryBytes;
+    private long diskBytes;
+    private Path diskPath;
+
+    @PostConstruct
+    public void init() {
+        if (diskDir == null || diskDir.isBlank()) {
+            return;
+        }
+        try {
+            diskPath = Files.createDirectories(Path.of(diskDir));
+            // Files left by the previous run, least recently written first
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(diskPath)) {
+                files = listing.filter(p -> p.getFileName().toString().endsWith(FILE_SUFFIX))
+                        .sorted(Comparator.comparingLong(ProcessedAudioCache::lastModified))
+                        .toList();
+            }
+            synchronized (disk) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long size = Files.size(file);
+                    disk.put(name.substring(0, name.length() - FILE_SUFFIX.length()), size);
+                    diskBytes += size;
+                }
+                trimDisk();
+            }
+            logger.info("Processed audio disk cache at {}: {} files, {} bytes", diskPath, disk.size(), diskBytes);
+        } catch (IOException e) {
+            logger.warn("Cannot use {} for the processed audio cache; caching in memory only", diskDir, e);
+            diskPath = null;
+        }
+    }
+
+    /**
+     * Content address of processing {@code input} with {@code parameters} (anything whose
+     * {@code toString} identifies it: shift, quality tier, output format...).
+     */
+    public String key(byte[] input, Object... parameters) {
+        MessageDigest digest = sha256();
+        digest.update(input);
+        StringBuilder suffix = new StringBuilder().append(backend).append('|').append(latencyCompensation);
+        for (Object parameter : parameters) {
+            suffix.append('|').append(parameter);
+        }
+        digest.update(suffix.toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Whether {@code key} can be served without processing.
+     */
+    public boolean contains(String key) {
+        synchronized (memory) {
+            if (memory.containsKey(key)) {
+                return true;
+            }
+        }
+        synchronized (disk) {
+            return disk.containsKey(key);
+        }
+    }
+
+    /**
+     * Returns the cached result for {@code key}, running {@code loader} on a miss. Only one caller
+     * runs the loader for a key at a time; the others wait for and share its result (or failure).
+     *
+     * @throws IOException if the loader fails (other checked exceptions are wrapped)
+     */
+    public CachedAudio get(String key, Loader loader) throws IOException {
+        CachedAudio cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<CachedAudio> flight = new CompletableFuture<>();
+        CompletableFuture<CachedAudio> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // Another flight may have finished between the lookup and claiming this one
+            cached = lookup(key);
+            if (cached == null) {
+                cached = new CachedAudio(key, ByteBuffer.wrap(loader.load()).asReadOnlyBuffer());
+                store(cached);
+            }
+            flight.complete(cached);
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } catch (Exception e) {
+            IOException wrapped = e instanceof InterruptedException
+                    ? interrupted()
+                    : new IOException(e.getMessage(), e);
+            flight.completeExceptionally(wrapped);
+            throw wrapped;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * The strong {@code ETag} of the result stored under {@code key}.
+     */
+    public static String etag(String key) {
+        return "\"" + key + "\"";
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header value names {@code etag} (or is {@code *}).
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CachedAudio lookup(String key) {
+        synchronized (memory) {
+            ByteBuffer data = memory.get(key);
+            if (data != null) {
+                return new CachedAudio(key, data);
+            }
+        }
+        if (diskPath == null) {
+            return null;
+        }
+        synchronized (disk) {
+            // get, not containsKey, so the hit counts as a use for the LRU order
+            if (disk.get(key) == null) {
+                return null;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file(key), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed (and after the file is evicted)
+            return new CachedAudio(key, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (NoSuchFileException e) {
+            removeFromDisk(key);
+            return null;
+        } catch (IOException e) {
+            logger.warn("Cannot read cached audio {}", key, e);
+            removeFromDisk(key);
+            return null;
+        }
+    }
+
+    private void store(CachedAudio cached) {
+        int size = cached.size();
+        if (size <= memoryMaxBytes) {
+            synchronized (memory) {
+                if (memory.put(cached.key(), cached.data()) == null) {
+                    memoryBytes += size;
+                }
+                Iterator<ByteBuffer> eldest = memory.values().iterator();
+                while (memoryBytes > memoryMaxBytes && eldest.hasNext()) {
+                    memoryBytes -= eldest.next().remaining();
+                    eldest.remove();
+                }
+            }
+        }
+
+        if (diskPath != null && size <= diskMaxBytes) {
+            try {
+                // Written under a temporary name so a reader never maps a partial file
+                Path temp = Files.createTempFile(diskPath, cached.key(), ".tmp");
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    ByteBuffer data = cached.data().duplicate();
+                    while (data.hasRemaining()) {
+                        channel.write(data);
+                    }
+                }
+                Files.move(temp, file(cached.key()), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                synchronized (disk) {
+                    Long previous = disk.put(cached.key(), (long) size);
+                    diskBytes += size - (previous == null ? 0 : previous);
+                    trimDisk();
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot write cached audio {}", cached.key(), e);
+            }
+        }
+    }
+
+    // Caller holds the disk monitor
+    private void trimDisk() {
+        Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            diskBytes -= entry.getValue();
+            eldest.remove();
+            try {
+                Files.deleteIfExists(file(entry.getKey()));
+            } catch (IOException e) {
+                logger.warn("Cannot delete cached audio {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void removeFromDisk(String key) {
+        synchronized (disk) {
+            Long size = disk.remove(key);
+            if (size != null) {
+                diskBytes -= size;
+            }
+        }
+    }
+
+    private Path file(String key) {
+        return diskPath.resolve(key + FILE_SUFFIX);
+    }
+
+    private static CachedAudio await(CompletableFuture<CachedAudio> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            throw interrupted();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw new IOException(io.getMessage(), io);
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static InterruptedIOException interrupted() {
+        Thread.currentThread().interrupt();
+        return new InterruptedIOException("Interrupted while processing audio");
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package com.example.voicechanger.service;
 
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.audio.ChannelMixer;
+import com.example.voicechanger.audio.RawAudioFormat;
+import com.example.voicechanger.audio.Resampler;
+import com.example.voicechanger.audio.WavData;
+import com.example.voicechanger.audio.WavParser;
 import com.example.voicechanger.dto.VoiceChangerDto;
+import com.example.voicechanger.dto.VoiceProcessRequest;
+import com.example.voicechanger.service.esl.CallStateRegistry;
 import com.example.voicechanger.service.esl.EslService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
+import java.nio.ShortBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -18,7 +27,10 @@ import java.util.regex.Pattern;
 public class VoiceChangerService {
 
     private final EslService eslService;
+    private final CallStateRegistry callStateRegistry;
     private static final String TEMP_DIR = System.getProperty("java.io.tmpdir") + "/voice_morph/";
+    // G.711 output is always narrowband mono, as FreeSWITCH plays it
+    private static final int TELEPHONY_SAMPLE_RATE = 8000;
 
     private static final Pattern UUID_PATTERN = Pattern.compile(
             "^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$"
@@ -30,8 +42,21 @@ public class VoiceChangerService {
     // Global call duration setting (in seconds)
     private volatile int globalCallDuration = 0; // 0 means disabled
 
-    public VoiceChangerService(EslService eslService) {
+    private final VoiceProcessingService voiceProcessingService;
+    private final boolean soxEngine;
+
+    public VoiceChangerService(EslService eslService, CallStateRegistry callStateRegistry,
+                               VoiceProcessingService voiceProcessingService,
+                               @Value("${voice.test.engine:native}") String testEngine) {
         this.eslService = eslService;
+        this.callStateRegistry = callStateRegistry;
+        this.voiceProcessingService = voiceProcessingService;
+        this.soxEngine = switch (testEngine.trim().toLowerCase()) {
+            case "native" -> false;
+            case "sox" -> true;
+            default -> throw new IllegalArgumentException("voice.test.engine must be native or sox, got " + testEngine);
+        };
+        log.info("Test endpoints render with {}", getTestEngine());
     }
 
     // Voice type presets
@@ -42,93 +67,92 @@ public class VoiceChangerService {
     );
 
     // ------------------- Audio Processing Methods -------------------
-    public File processAudioFile(MultipartFile audioFile, String voiceType) throws Exception {
-        // Create temp directory if it doesn't exist
-        Files.createDirectories(Path.of(TEMP_DIR));
-
-        // Save uploaded file
-        File inputFile = new File(TEMP_DIR + "input_" + System.currentTimeMillis() + ".wav");
-        try (FileOutputStream fos = new FileOutputStream(inputFile)) {
-            fos.write(audioFile.getBytes());
-        }
 
-        return processAudioFile(inputFile, voiceType);
-    }
-
-    public File processLiveAudio(byte[] audioData, String voiceType) throws Exception {
-        // Create temp directory if it doesn't exist
-        Files.createDirectories(Path.of(TEMP_DIR));
-
-        // Save audio data to file
-        File inputFile = new File(TEMP_DIR + "live_input_" + System.currentTimeMillis() + ".wav");
-        try (FileOutputStream fos = new FileOutputStream(inputFile)) {
-            fos.write(audioData);
-        }
-
-        return processAudioFile(inputFile, voiceType);
-    }
-
-    private File processAudioFile(File inputFile, String voiceType) throws Exception {
-        // Get voice preset
+    /**
+     * Renders an upload for the {@code /voicechanger/test-*} endpoints with a voice preset and
+     * returns the whole file in {@code format}. The upload is a headerless body if
+     * {@code rawFormat} is given, otherwise a file in any format {@code /api/process} accepts.
+     * <p>
+     * With the {@code native} engine (the default) this is {@code /api/process} with the preset's
+     * shift, formant and base: decoded and processed in memory at 8 kHz. The {@code sox} engine runs
+     * SoX on temporary files instead (adding its echo) and keeps the upload's sample rate for WAV
+     * output.
+     *
+     * @throws IllegalArgumentException if the voice type is unknown
+     */
+    public byte[] renderTestAudio(byte[] audioData, Optional<RawAudioFormat> rawFormat, String voiceType,
+                                  AudioOutputFormat format) throws Exception {
         VoicePreset preset = VOICE_PRESETS.get(voiceType.toLowerCase());
         if (preset == null) {
             throw new IllegalArgumentException("Invalid voice type");
         }
 
-        // Process audio using SoX (Sound eXchange) - you'll need to install sox
-        File outputFile = new File(TEMP_DIR + "output_" + System.currentTimeMillis() + ".wav");
-
-        String soxCommand = String.format("sox \"%s\" \"%s\" pitch %.1f formant %.1f echo 0.8 0.88 100 0.4",
-                inputFile.getAbsolutePath(),
-                outputFile.getAbsolutePath(),
-                preset.shift,
-                preset.formant);
-
-        Process process = Runtime.getRuntime().exec(soxCommand);
-        int exitCode = process.waitFor();
-
-        if (exitCode != 0) {
-            throw new RuntimeException("Audio processing failed");
+        if (soxEngine) {
+            // SoX reads WAV, so raw bodies are wrapped in a header at their own sample rate
+            byte[] wav = rawFormat.isPresent()
+                    ? AudioOutputFormat.WAV.toByteArray(rawFormat.get().decode(audioData, rawFormat.get().sampleRate()),
+                    rawFormat.get().sampleRate())
+                    : audioData;
+            return renderWithSox(wav, preset, format);
         }
 
-        // Clean up input file
-        inputFile.delete();
+        ShortBuffer pcm = rawFormat.isPresent()
+                ? voiceProcessingService.decodeRaw(audioData, rawFormat.get())
+                : voiceProcessingService.decodeAudio(audioData);
+        return voiceProcessingService.processDecoded(pcm,
+                new VoiceProcessRequest(preset.shift, preset.formant, preset.base), format);
+    }
 
-        return outputFile;
+    /**
+     * Engine the test endpoints render with, {@code native} or {@code sox}; part of the cache key,
+     * since the two sound different.
+     */
+    public String getTestEngine() {
+        return soxEngine ? "sox" : "native";
     }
 
-    // Alternative method using FFmpeg (if you prefer)
-    public File processAudioWithFFmpeg(MultipartFile audioFile, String voiceType) throws Exception {
+    private byte[] renderWithSox(byte[] wav, VoicePreset preset, AudioOutputFormat format) throws Exception {
         Files.createDirectories(Path.of(TEMP_DIR));
-
-        File inputFile = new File(TEMP_DIR + "input_" + System.currentTimeMillis() + ".wav");
-        try (FileOutputStream fos = new FileOutputStream(inputFile)) {
-            fos.write(audioFile.getBytes());
+        // Unique names, so concurrent requests never share files
+        Path input = Files.createTempFile(Path.of(TEMP_DIR), "input_", ".wav");
+        Path output = Files.createTempFile(Path.of(TEMP_DIR), "output_", ".wav");
+        try {
+            Files.write(input, wav);
+            Process process = new ProcessBuilder("sox", input.toString(), output.toString(),
+                    "pitch", String.format(Locale.ROOT, "%.1f", preset.shift),
+                    "formant", String.format(Locale.ROOT, "%.1f", preset.formant),
+                    "echo", "0.8", "0.88", "100", "0.4")
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Audio processing failed");
+            }
+            return readProcessedAudio(Files.readAllBytes(output), format);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
         }
+    }
 
-        VoicePreset preset = VOICE_PRESETS.get(voiceType.toLowerCase());
-        if (preset == null) {
-            throw new IllegalArgumentException("Invalid voice type");
+    /**
+     * Converts a file SoX wrote to {@code format}. WAV is returned as SoX wrote it; G.711 formats
+     * are mixed down and resampled to 8 kHz mono first.
+     */
+    private static byte[] readProcessedAudio(byte[] wav, AudioOutputFormat format) throws IOException {
+        if (format == AudioOutputFormat.WAV) {
+            return wav;
         }
 
-        File outputFile = new File(TEMP_DIR + "output_" + System.currentTimeMillis() + ".wav");
-
-        // FFmpeg command for voice morphing
-        String ffmpegCommand = String.format("ffmpeg -i \"%s\" -af \"asetrate=44100*%.2f,atempo=1/%.2f\" \"%s\"",
-                inputFile.getAbsolutePath(),
-                (1.0 + preset.shift/100.0),
-                (1.0 + preset.shift/100.0),
-                outputFile.getAbsolutePath());
-
-        Process process = Runtime.getRuntime().exec(ffmpegCommand);
-        int exitCode = process.waitFor();
-
-        if (exitCode != 0) {
-            throw new RuntimeException("FFmpeg processing failed");
+        WavData data = WavParser.parse(wav);
+        if (!ChannelMixer.supports(data.format())) {
+            throw new IOException("Unsupported processed sample format: " + data.format());
         }
-
-        inputFile.delete();
-        return outputFile;
+        short[] pcm = Resampler.of(data.format().sampleRate(), TELEPHONY_SAMPLE_RATE)
+                .process(ChannelMixer.toMono(data));
+        return format.toByteArray(ShortBuffer.wrap(pcm), TELEPHONY_SAMPLE_RATE);
     }
 
     // ------------------- Global Call Duration -------------------
@@ -199,19 +223,21 @@ public class VoiceChangerService {
         }
 
         String fsCommand;
+        boolean start;
         switch (request.command().toLowerCase()) {
             case "start":
                 log.info("🎭 Starting voice changer for call {}", request.uuid());
-                String directionCheck = eslService.sendCommand("uuid_dump " + request.uuid());
-                if (!directionCheck.matches("(?s).*(Call-Direction: outbound|direction=outbound).*")) {
+                if (!isOutboundCall(request.uuid())) {
                     log.warn("⚠️ Voice changer start rejected - not an outbound call: {}", request.uuid());
                     return "Error: Voice changer can only be started on outbound calls";
                 }
                 fsCommand = "voicechanger start " + request.uuid();
+                start = true;
                 break;
             case "stop":
                 log.info("🛑 Stopping voice changer for call {}", request.uuid());
                 fsCommand = "voicechanger stop " + request.uuid();
+                start = false;
                 break;
             default:
                 log.error("❌ Invalid voice changer command: {}", request.command());
@@ -223,6 +249,7 @@ public class VoiceChangerService {
             log.error("❌ Voice changer command failed: {}", result);
             return "Error: " + result;
         }
+        callStateRegistry.markVoiceChanger(request.uuid(), start);
         log.info("✅ Voice changer command successful for call {}", request.uuid());
         return result;
     }
@@ -246,14 +273,15 @@ public class VoiceChangerService {
         }
 
         log.info("🎤 Setting voice type '{}' for call {}", request.voiceType(), request.uuid());
-        String fsCommand = String.format("voicechanger set %s %.1f %.1f %.1f",
-                request.uuid(), preset.shift, preset.formant, preset.base);
+        String params = String.format("%.1f %.1f %.1f", preset.shift, preset.formant, preset.base);
+        String fsCommand = "voicechanger set " + request.uuid() + " " + params;
 
         String result = eslService.sendCommand(fsCommand);
         if (result.contains("-ERR") || result.startsWith("ERROR:")) {
             log.error("❌ Voice type setting failed: {}", result);
             return "Error: " + result;
         }
+        callStateRegistry.markVoiceChangerParams(request.uuid(), params);
         log.info("✅ Voice type '{}' applied successfully to call {}", request.voiceType(), request.uuid());
         return result;
     }
@@ -271,8 +299,7 @@ public class VoiceChangerService {
         }
 
         log.info("🔪 Terminating call {}", request.uuid());
-        String directionCheck = eslService.sendCommand("uuid_dump " + request.uuid());
-        if (!directionCheck.matches("(?s).*(Call-Direction: outbound|direction=outbound).*")) {
+        if (!isOutboundCall(request.uuid())) {
             log.warn("⚠️ Call termination rejected - not an outbound call: {}", request.uuid());
             return "Error: Only outbound calls can be terminated from this interface";
         }
@@ -360,8 +387,18 @@ public class VoiceChangerService {
         }
 
         log.debug("📊 Checking voice changer status for call {}", uuid);
-        String statusOutput = eslService.sendCommand("voicechanger status " + uuid);
-        boolean active = statusOutput.contains("+OK Running");
+        boolean active = callStateRegistry.get(uuid)
+                .map(call -> {
+                    Boolean known = call.getVoiceChangerActive();
+                    if (known != null) {
+                        return known;
+                    }
+                    // Call picked up by a resync, started before we were listening: ask once
+                    boolean running = eslService.sendCommand("voicechanger status " + uuid).contains("+OK Running");
+                    callStateRegistry.markVoiceChanger(uuid, running);
+                    return running;
+                })
+                .orElse(false);
 
         log.debug("🎭 Voice changer status for {}: {}", uuid, active ? "Active" : "Inactive");
         return Map.of(
@@ -378,82 +415,29 @@ public class VoiceChangerService {
             return new ArrayList<>();
         }
 
-        log.debug("📊 Retrieving active calls from FreeSWITCH");
-        String result = eslService.sendCommand("show calls");
         List<VoiceChangerDto.CallInfo> calls = new ArrayList<>();
-
-        if (result.startsWith("ERROR:")) {
-            log.error("❌ Failed to get active calls: {}", result);
-            return calls;
-        }
-
-        try {
-            String[] lines = result.split("\n");
-            boolean headerSkipped = false;
-
-            for (String line : lines) {
-                if (!headerSkipped) {
-                    headerSkipped = true;
-                    continue;
-                }
-                if (line.trim().isEmpty()) continue;
-
-                String[] parts = line.split(",", -1);
-                if (parts.length < 25) continue;
-
-                String uuid = parts[21].trim();
-                String caller = parts[5].trim();
-                String callee = parts[6].trim();
-
-                if (isValidUuid(uuid)) {
-                    long durationSeconds = getLiveCallDuration(uuid);
-                    calls.add(new VoiceChangerDto.CallInfo(uuid, caller, callee, durationSeconds));
-
-                    // Schedule automatic termination for new calls if global duration is set
-                    if (globalCallDuration > 0 && !scheduledTerminations.containsKey(uuid)) {
-                        scheduleAutomaticTermination(uuid);
-                    }
-                }
+        for (CallStateRegistry.CallState call : callStateRegistry.bridgedCalls()) {
+            String uuid = call.getUuid();
+            calls.add(new VoiceChangerDto.CallInfo(uuid, call.getCallerNumber(), call.getDestinationNumber(),
+                    call.durationSeconds()));
+
+            // Schedule automatic termination for new calls if global duration is set
+            if (globalCallDuration > 0 && !scheduledTerminations.containsKey(uuid)) {
+                scheduleAutomaticTermination(uuid);
             }
-
-            log.debug("📋 Found {} active calls", calls.size());
-        } catch (Exception e) {
-            log.error("❌ Error parsing active calls response: {}", e.getMessage(), e);
         }
 
+        log.debug("📋 Found {} active calls", calls.size());
         return calls;
     }
 
     // ------------------- Helpers -------------------
     private long getLiveCallDuration(String uuid) {
-        try {
-            String result = eslService.sendCommand("uuid_dump " + uuid);
-
-            if (result.startsWith("ERROR:")) {
-                log.debug("🔍 Could not get call duration for {}: {}", uuid, result);
-                return 0;
-            }
+        return callStateRegistry.get(uuid).map(CallStateRegistry.CallState::durationSeconds).orElse(0L);
+    }
 
-            String[] lines = result.split("\n");
-            for (String line : lines) {
-                if (line.startsWith("Caller-Channel-Answered-Time:")) {
-                    try {
-                        long answeredTime = Long.parseLong(line.split(": ")[1].trim());
-                        if (answeredTime > 0) {
-                            long duration = (System.currentTimeMillis() * 1000 - answeredTime) / 1_000_000;
-                            log.trace("⏱️ Call {} duration: {} seconds", uuid, duration);
-                            return duration;
-                        }
-                    } catch (NumberFormatException e) {
-                        log.debug("📊 Could not parse answered time for call {}: {}", uuid, line);
-                    }
-                    break;
-                }
-            }
-        } catch (Exception e) {
-            log.debug("❌ Error computing live duration for call {}: {}", uuid, e.getMessage());
-        }
-        return 0;
+    private boolean isOutboundCall(String uuid) {
+        return callStateRegistry.get(uuid).map(CallStateRegistry.CallState::isOutbound).orElse(false);
     }
 
     private void terminateScheduledCall(String uuid) {
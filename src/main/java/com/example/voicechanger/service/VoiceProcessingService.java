@@ -1,7 +1,21 @@
 package com.example.voicechanger.service;
 
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.audio.AudioStreamDecoder;
+import com.example.voicechanger.audio.ChannelMixer;
+import com.example.voicechanger.audio.FfmpegDecoderPool;
+import com.example.voicechanger.audio.RawAudioFormat;
+import com.example.voicechanger.audio.Resampler;
+import com.example.voicechanger.audio.WavData;
+import com.example.voicechanger.audio.WavFormat;
+import com.example.voicechanger.audio.WavParser;
+import com.example.voicechanger.audio.WavWriter;
+import com.example.voicechanger.dsp.DspQuality;
+import com.example.voicechanger.dsp.ParallelSegmentProcessor;
+import com.example.voicechanger.dsp.VoiceDsp;
+import com.example.voicechanger.dsp.VoiceDspFactory;
+import com.example.voicechanger.dsp.VoiceProcessorPool;
 import com.example.voicechanger.dto.VoiceProcessRequest;
-import com.example.voicechanger.nativelib.NativeVoiceProcessor;
 import net.bramp.ffmpeg.FFmpeg;
 import net.bramp.ffmpeg.FFmpegExecutor;
 import net.bramp.ffmpeg.FFprobe;
@@ -10,15 +24,35 @@ import net.bramp.ffmpeg.probe.FFmpegProbeResult;
 import net.bramp.ffmpeg.probe.FFmpegStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 
 import javax.sound.sampled.*;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
 @Service
 public class VoiceProcessingService {
@@ -27,13 +61,36 @@ public class VoiceProcessingService {
     private static final int SAMPLE_RATE = 8000;
     private static final int SAMPLE_SIZE = 16; // 16-bit
     private static final int CHANNELS = 1; // mono
+    // Upload bytes read and decoded at a time by processStream
+    private static final int STREAM_READ_SIZE = 8192;
 
-    private final NativeVoiceProcessor nativeProcessor;
+    private final VoiceProcessorPool processorPool;
+    private final VoiceDspFactory dspFactory;
+    private final ParallelSegmentProcessor parallelProcessor;
+    private final FfmpegDecoderPool decoderPool;
     private final FFmpeg ffmpeg;
     private final FFprobe ffprobe;
 
-    public VoiceProcessingService() {
-        this.nativeProcessor = new NativeVoiceProcessor();
+    @Value("${voice.changer.max.buffer.size:8192}")
+    private int blockSize;
+
+    // Drop the stretcher's leading delay so the output lines up with (and is as long as) the input
+    @Value("${voice.changer.latency.compensation:true}")
+    private boolean latencyCompensation;
+
+    // Longest /process-stream upload, in seconds of decoded audio
+    @Value("${voice.changer.stream.max.seconds:3600}")
+    private long maxStreamSeconds;
+
+    // Algorithmic latency depends only on the tier (sample rate and block size are fixed here)
+    private final Map<DspQuality, Latency> latencies = new ConcurrentHashMap<>();
+
+    public VoiceProcessingService(VoiceProcessorPool processorPool, VoiceDspFactory dspFactory,
+                                  ParallelSegmentProcessor parallelProcessor, FfmpegDecoderPool decoderPool) {
+        this.processorPool = processorPool;
+        this.dspFactory = dspFactory;
+        this.parallelProcessor = parallelProcessor;
+        this.decoderPool = decoderPool;
         try {
             // Initialize FFmpeg (assumes ffmpeg is in PATH)
             this.ffmpeg = new FFmpeg("ffmpeg");
@@ -48,47 +105,481 @@ public class VoiceProcessingService {
         logger.info("Processing audio: {} bytes", audioData.length);
 
         try {
-            // First, detect if audio is already in the target format
+            return processDecoded(decodeAudio(audioData), request);
+        } catch (Exception e) {
+            logger.error("Error in audio processing", e);
+            throw new IOException("Failed to process audio: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Processes PCM that is already 8 kHz mono (e.g. a raw {@code audio/L16} body) and returns it
+     * as a WAV file.
+     */
+    public byte[] processDecoded(ShortBuffer pcmData, VoiceProcessRequest request) {
+        return processDecoded(pcmData, request, AudioOutputFormat.WAV);
+    }
+
+    /**
+     * Same as {@link #processDecoded(ShortBuffer, VoiceProcessRequest)}, returning the result in
+     * {@code format} (e.g. G.711 for FreeSWITCH).
+     */
+    public byte[] processDecoded(ShortBuffer pcmData, VoiceProcessRequest request, AudioOutputFormat format) {
+        ShortBuffer processedPcm = processPcm(pcmData, request);
+
+        logger.info("Native processing complete: {} samples", processedPcm.remaining());
+
+        // Header and samples written in bulk into the one result array
+        return format.toByteArray(processedPcm, SAMPLE_RATE);
+    }
+
+    /**
+     * Receives one rendering from {@link #processEach}.
+     */
+    @FunctionalInterface
+    public interface RenderConsumer {
+        void accept(String name, byte[] file) throws IOException;
+    }
+
+    /**
+     * Processes the same decoded PCM with every request at once, each on its own pooled processor,
+     * and hands each file to {@code consumer} as soon as it is done (in completion order, on the
+     * calling thread). The PCM is shared read-only, so the upload is decoded only once and the
+     * whole call takes about as long as the slowest rendering.
+     *
+     * @throws IOException if a rendering fails or {@code consumer} throws; renderings still
+     *                     running are then cancelled
+     */
+    public void processEach(ShortBuffer pcmData, Map<String, VoiceProcessRequest> requests, AudioOutputFormat format,
+                            RenderConsumer consumer) throws IOException {
+        ShortBuffer shared = pcmData.asReadOnlyBuffer();
+        CompletionService<Map.Entry<String, byte[]>> completion =
+                new ExecutorCompletionService<>(parallelProcessor.getExecutor());
+        List<Future<Map.Entry<String, byte[]>>> renderings = new ArrayList<>(requests.size());
+        requests.forEach((name, request) -> renderings.add(completion.submit(
+                () -> Map.entry(name, processDecoded(shared.duplicate(), request, format)))));
+
+        try {
+            for (int i = 0; i < renderings.size(); i++) {
+                Map.Entry<String, byte[]> rendered = completion.take().get();
+                consumer.accept(rendered.getKey(), rendered.getValue());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rendering presets");
+        } catch (ExecutionException e) {
+            throw new IOException("Rendering failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            renderings.forEach(rendering -> rendering.cancel(true));
+        }
+    }
+
+    /**
+     * Decodes a headerless {@code audio/L16}, {@code audio/PCMU} or {@code audio/PCMA} body. 8 kHz mono L16 is used in
+     * place; other rates and channel counts are mixed down and resampled.
+     *
+     * @throws IllegalArgumentException if the rate or channel count is invalid
+     */
+    public ShortBuffer decodeRaw(byte[] body, RawAudioFormat format) {
+        logger.info("Raw {} body: {} bytes", format.encoding(), body.length);
+        return format.decode(body, SAMPLE_RATE);
+    }
+
+    /**
+     * Decodes an upload (WAV, MP3 or anything else FFmpeg or Java Sound can read) to 8 kHz mono
+     * PCM, ready for {@link #writeProcessed}.
+     */
+    public ShortBuffer decodeAudio(byte[] audioData) throws IOException {
+        ShortBuffer pcmData;
+        if (WavParser.isWav(audioData)) {
+            pcmData = decodeWav(audioData);
+        } else {
             AudioFormatInfo formatInfo = detectAudioFormat(audioData);
             logger.info("Detected format: {} Hz, {} channels, {} bits, format: {}",
                     formatInfo.sampleRate, formatInfo.channels, formatInfo.sampleSize, formatInfo.encoding);
+            logger.info("Converting audio to target format (8kHz WAV)");
+            pcmData = convertToTargetFormat(audioData, formatInfo);
+        }
+
+        logger.info("Ready for processing: {} samples", pcmData.remaining());
+        return pcmData;
+    }
+
+    /**
+     * Size in bytes of the file {@link #writeProcessed} will write for {@code pcmData}.
+     */
+    public long processedSize(ShortBuffer pcmData, VoiceProcessRequest request, AudioOutputFormat format) {
+        return format.fileSize(outputLength(pcmData.remaining(), request.getQuality()));
+    }
 
-            short[] pcmData;
+    /**
+     * Processes decoded PCM and writes the result to {@code out} in {@code format}. On a single
+     * processor each block is written as soon as it is processed, so neither the time to the first
+     * byte nor the memory used depend on the length of the input.
+     *
+     * @throws IOException if writing fails; the response is then incomplete
+     */
+    public void writeProcessed(ShortBuffer pcmData, VoiceProcessRequest request, AudioOutputFormat format,
+                               OutputStream out) throws IOException {
+        int length = pcmData.remaining();
+        if (parallelProcessor.shouldSplit(length, SAMPLE_RATE)) {
+            // The segments only exist once all of them are done, so this path is written in bulk
+            short[] processed = parallelProcessor.process(pcmData, SAMPLE_RATE, blockSize, request.getQuality(),
+                    request.getShift(), request.getFormant(), request.getBase());
+            WavWriter writer = new WavWriter(out, SAMPLE_RATE, CHANNELS, processed.length, format);
+            writer.write(processed, 0, processed.length);
+            writer.flush();
+            return;
+        }
 
-            // Check if already in target format (8kHz, 16-bit, mono WAV)
-            if (formatInfo.sampleRate == SAMPLE_RATE &&
-                formatInfo.channels == CHANNELS &&
-                formatInfo.sampleSize == SAMPLE_SIZE &&
-                formatInfo.encoding.equals("PCM_SIGNED")) {
+        VoiceDsp processor = processorPool.checkout(SAMPLE_RATE, blockSize, request.getQuality());
+        try {
+            writeProcessed(pcmData, request, format, processor, out, processed -> { });
+        } finally {
+            processorPool.checkin(processor);
+        }
+    }
 
-                logger.info("Audio already in target format (8kHz WAV), skipping conversion");
-                pcmData = extractPCMFromWav(audioData);
-            } else {
-                logger.info("Converting audio to target format (8kHz WAV)");
-                // Convert to target format
-                pcmData = convertToTargetFormat(audioData, formatInfo);
+    /**
+     * Same as {@link #writeProcessed(ShortBuffer, VoiceProcessRequest, AudioOutputFormat, OutputStream)}
+     * on the caller's processor (from {@link #createProcessor}), never split across cores - for
+     * workers that already keep the cores busy with one stream each. After each block,
+     * {@code progress} is given the number of input samples processed so far; it may throw to
+     * abandon the stream.
+     *
+     * @throws IOException if writing fails; the output is then incomplete
+     */
+    public void writeProcessed(ShortBuffer pcmData, VoiceProcessRequest request, AudioOutputFormat format,
+                               VoiceDsp processor, OutputStream out, IntConsumer progress) throws IOException {
+        int length = pcmData.remaining();
+        int tail = processor.getTailLength();
+        WavWriter writer = new WavWriter(out, SAMPLE_RATE, CHANNELS, serialOutputLength(length, request.getQuality()), format);
+        if (!processor.beginStream(request.getShift(), request.getFormant(), request.getBase())) {
+            throw new IllegalStateException("Processor rejected stream settings");
+        }
+
+        // The first `tail` output samples are the stretcher delay; drop them when compensating
+        int skip = latencyCompensation ? tail : 0;
+        int blockLength = processor.getConfiguredBufferLength();
+        short[] block = new short[Math.max(blockLength, tail)];
+        for (int offset = 0; offset < length; offset += blockLength) {
+            int count = Math.min(blockLength, length - offset);
+            pcmData.get(pcmData.position() + offset, block, 0, count);
+            if (!processor.processBlockInPlace(block, 0, count)) {
+                throw new IllegalStateException("Block processing failed at sample " + offset);
             }
+            int dropped = Math.min(skip, count);
+            skip -= dropped;
+            writer.write(block, dropped, count - dropped);
+            progress.accept(offset + count);
+        }
+        int flushed = processor.flush(block, 0);
+        int dropped = Math.min(skip, flushed);
+        writer.write(block, dropped, flushed - dropped);
+        writer.flush();
+    }
+
+    /**
+     * A file being rendered from an upload that is still arriving: {@code size} bytes (or -1 if
+     * the upload does not declare its length) produced by {@code body} as it is subscribed to.
+     */
+    public record ProcessedStream(long size, Flux<DataBuffer> body) {
+    }
+
+    /**
+     * Processes an upload while it is still being received. The upload is read as a
+     * {@code Flux<DataBuffer>} of {@value #STREAM_READ_SIZE}-byte chunks, each decoded by an
+     * {@link AudioStreamDecoder} (header parsing, mixing down, resampling), run through one pooled processor
+     * and encoded in {@code format}, so the first output goes out after the first chunk and neither
+     * the upload nor the result is ever held whole. Every stage pulls one chunk at a time from the
+     * one before it, so a slow client slows down reading the upload rather than filling the heap.
+     * <p>
+     * The upload is a headerless body of {@code contentLength} bytes (-1 if unknown) if
+     * {@code rawFormat} is given, a WAV file otherwise. The header of a WAV upload is read before
+     * this returns, so malformed or unsupported uploads fail here rather than after the response
+     * has started. The output is what
+     * {@link #writeProcessed} makes of the same audio on a single processor; a file of unknown
+     * length gets {@code 0xFFFFFFFF} header sizes.
+     * <p>
+     * Uploads are limited to {@code voice.changer.stream.max.seconds} of audio. One declared
+     * longer is rejected here; one of undeclared length fails the body once it exceeds the limit.
+     * An upload shorter than it declared is padded with silence to the announced length.
+     *
+     * @throws IOException              if the upload cannot be read or its header is malformed or
+     *                                  unsupported
+     * @throws IllegalArgumentException if the raw rate or channel count is invalid, or the upload
+     *                                  is declared longer than the limit
+     */
+    public ProcessedStream processStream(InputStream upload, Optional<RawAudioFormat> rawFormat, long contentLength,
+                                         VoiceProcessRequest request, AudioOutputFormat format) throws IOException {
+        // Bounded so that every length below fits an int
+        long maxSamples = Math.min(maxStreamSeconds * SAMPLE_RATE, Integer.MAX_VALUE / 2);
+        AudioStreamDecoder decoder = rawFormat
+                .map(raw -> AudioStreamDecoder.raw(raw, contentLength, SAMPLE_RATE, maxSamples))
+                .orElseGet(() -> AudioStreamDecoder.wav(SAMPLE_RATE, maxSamples));
+        byte[] chunk = new byte[STREAM_READ_SIZE];
+        short[] first = new short[0];
+        while (!decoder.isReady()) {
+            int read = upload.read(chunk);
+            ShortBuffer decoded = read < 0 ? decoder.finish() : decoder.decode(ByteBuffer.wrap(chunk, 0, read));
+            first = new short[decoded.remaining()];
+            decoded.get(first);
+        }
+        WavFormat inputFormat = decoder.format();
+        logger.info("Streaming {} Hz, {} channels, {} bits, format: {}, {} samples",
+                inputFormat.sampleRate(), inputFormat.channels(), inputFormat.bitsPerSample(), inputFormat.encoding(),
+                decoder.expectedLength() < 0 ? "unknown" : decoder.expectedLength());
+
+        int outputLength = decoder.expectedLength() < 0
+                ? -1 : serialOutputLength(Math.toIntExact(decoder.expectedLength()), request.getQuality());
+        ByteBuffer header = ByteBuffer.allocate(format.headerSize()).order(ByteOrder.LITTLE_ENDIAN);
+        format.writeHeader(header, SAMPLE_RATE, CHANNELS, outputLength);
+
+        Flux<ShortBuffer> pcm = Flux.concat(
+                Mono.just(ShortBuffer.wrap(first)),
+                // The container owns (and closes) the request stream
+                DataBufferUtils.readInputStream(() -> StreamUtils.nonClosing(upload), DefaultDataBufferFactory.sharedInstance,
+                                STREAM_READ_SIZE)
+                        .handle((DataBuffer buffer, SynchronousSink<ShortBuffer> sink) -> {
+                            try {
+                                int read = buffer.readableByteCount();
+                                buffer.read(chunk, 0, read);
+                                sink.next(decoder.decode(ByteBuffer.wrap(chunk, 0, read)));
+                            } catch (IOException e) {
+                                sink.error(e);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                        }),
+                Mono.fromCallable(decoder::finish),
+                // Silence for an upload shorter than it declared, a bounded piece at a time
+                Flux.generate((SynchronousSink<ShortBuffer> sink) -> {
+                    ShortBuffer padding = decoder.nextPadding();
+                    if (padding.hasRemaining()) {
+                        sink.next(padding);
+                    } else {
+                        sink.complete();
+                    }
+                }));
+
+        Flux<DataBuffer> body = Flux.using(
+                () -> processorPool.checkout(SAMPLE_RATE, blockSize, request.getQuality()),
+                processor -> {
+                    BlockStream blocks = new BlockStream(processor, request);
+                    // Each decoded chunk is processed and encoded before the next one is decoded,
+                    // so the decoder's and the block stream's buffers can be reused
+                    return Flux.concat(
+                            Mono.fromSupplier(() -> DefaultDataBufferFactory.sharedInstance.wrap(header.array())),
+                            Flux.concat(pcm.map(blocks::process), Mono.fromSupplier(blocks::flush))
+                                    .filter(ShortBuffer::hasRemaining)
+                                    .map(samples -> encode(samples, format)));
+                },
+                processorPool::checkin);
+        return new ProcessedStream(outputLength < 0 ? -1 : format.fileSize(outputLength), body);
+    }
+
+    // Runs a stream of chunks through one processor, dropping the stretcher delay when compensating
+    private final class BlockStream {
+        private final VoiceDsp processor;
+        private final int blockLength;
+        private short[] output;
+        private int skip;
+
+        BlockStream(VoiceDsp processor, VoiceProcessRequest request) {
+            if (!processor.beginStream(request.getShift(), request.getFormant(), request.getBase())) {
+                throw new IllegalStateException("Processor rejected stream settings");
+            }
+            this.processor = processor;
+            this.blockLength = processor.getConfiguredBufferLength();
+            this.output = new short[Math.max(blockLength, processor.getTailLength())];
+            this.skip = latencyCompensation ? processor.getTailLength() : 0;
+        }
+
+        // The result is valid until the next call
+        ShortBuffer process(ShortBuffer chunk) {
+            int length = chunk.remaining();
+            if (output.length < length) {
+                output = new short[length];
+            }
+            int written = 0;
+            for (int offset = 0; offset < length; offset += blockLength) {
+                int count = Math.min(blockLength, length - offset);
+                chunk.get(chunk.position() + offset, output, written, count);
+                if (!processor.processBlockInPlace(output, written, count)) {
+                    throw new IllegalStateException("Block processing failed");
+                }
+                written += drop(written, count);
+            }
+            return ShortBuffer.wrap(output, 0, written);
+        }
+
+        ShortBuffer flush() {
+            int flushed = processor.flush(output, 0);
+            return ShortBuffer.wrap(output, 0, drop(0, flushed));
+        }
+
+        // Removes any delay still to drop from the `count` samples just processed at `offset`
+        private int drop(int offset, int count) {
+            int dropped = Math.min(skip, count);
+            skip -= dropped;
+            System.arraycopy(output, offset + dropped, output, offset, count - dropped);
+            return count - dropped;
+        }
+    }
 
-            logger.info("Ready for processing: {} samples", pcmData.length);
+    private static DataBuffer encode(ShortBuffer samples, AudioOutputFormat format) {
+        ByteBuffer encoded = ByteBuffer.allocate(samples.remaining() * format.bytesPerSample());
+        format.encode(samples, encoded);
+        return DefaultDataBufferFactory.sharedInstance.wrap(encoded.flip());
+    }
+
+    /**
+     * A processor for {@code quality} configured like the pooled ones but outside the pool, for a
+     * long-lived worker that must not take processors from requests. The caller disposes it.
+     */
+    public VoiceDsp createProcessor(DspQuality quality) {
+        return createProcessor(SAMPLE_RATE, quality);
+    }
+
+    /**
+     * As {@link #createProcessor(DspQuality)}, at {@code sampleRate}.
+     */
+    public VoiceDsp createProcessor(int sampleRate, DspQuality quality) {
+        VoiceDsp processor = dspFactory.create();
+        if (!processor.configure(sampleRate, blockSize, quality)) {
+            processor.dispose();
+            throw new IllegalStateException("Failed to configure processor for " + sampleRate + " Hz, " + quality);
+        }
+        return processor;
+    }
 
-            // Process with native library
-            short[] processedPcm = nativeProcessor.processAudio(
+    private int outputLength(int inputLength, DspQuality quality) {
+        // Parallel segments are always compensated
+        if (parallelProcessor.shouldSplit(inputLength, SAMPLE_RATE)) {
+            return inputLength;
+        }
+        return serialOutputLength(inputLength, quality);
+    }
+
+    private int serialOutputLength(int inputLength, DspQuality quality) {
+        // The tail is kept unless trimmed
+        if (latencyCompensation) {
+            return inputLength;
+        }
+        Latency latency = getLatency(quality);
+        return inputLength + latency.inputSamples() + latency.outputSamples();
+    }
+
+    /**
+     * Reads a WAV upload in one pass over its header. 8 kHz mono 16-bit PCM is used in place (a
+     * view into {@code wavData}); other PCM formats are mixed down and resampled in-process.
+     */
+    private ShortBuffer decodeWav(byte[] wavData) throws IOException {
+        WavData wav = WavParser.parse(wavData);
+        WavFormat format = wav.format();
+        logger.info("Detected format: {} Hz, {} channels, {} bits, format: {}",
+                format.sampleRate(), format.channels(), format.bitsPerSample(), format.encoding());
+
+        if (format.isPcm16Mono(SAMPLE_RATE)) {
+            logger.info("Audio already in target format (8kHz WAV), skipping conversion");
+            return wav.samples();
+        }
+
+        if (ChannelMixer.supports(format)) {
+            logger.info("Converting audio to target format (8kHz mono) in-process");
+            float[] mono = ChannelMixer.toMono(wav);
+            return ShortBuffer.wrap(Resampler.of(format.sampleRate(), SAMPLE_RATE).process(mono));
+        }
+
+        // Compressed or unusual sample formats inside a WAV container
+        logger.info("Converting {} audio to target format (8kHz WAV) with FFmpeg", format.encoding());
+        return convertWithFFmpeg(wavData, ".wav");
+    }
+
+    /**
+     * Runs 8 kHz PCM through the voice DSP: split across cores for long inputs, otherwise on a
+     * single pooled processor.
+     */
+    private ShortBuffer processPcm(ShortBuffer pcmData, VoiceProcessRequest request) {
+        int length = pcmData.remaining();
+        if (parallelProcessor.shouldSplit(length, SAMPLE_RATE)) {
+            // Segments are always latency-compensated: the result lines up with the input
+            return ShortBuffer.wrap(parallelProcessor.process(pcmData, SAMPLE_RATE, blockSize, request.getQuality(),
+                    request.getShift(), request.getFormant(), request.getBase()));
+        }
+
+        // Process with a processor borrowed from the pool, so concurrent
+        // requests never share stretcher state
+        short[] processedPcm;
+        int latencySamples;
+        VoiceDsp nativeProcessor = processorPool.checkout(SAMPLE_RATE, blockSize, request.getQuality());
+        try {
+            processedPcm = nativeProcessor.processAudio(
                     pcmData,
-                    pcmData.length,
                     request.getShift(),
                     request.getFormant(),
                     request.getBase(),
                     SAMPLE_RATE
             );
+            latencySamples = nativeProcessor.getTailLength();
+        } finally {
+            processorPool.checkin(nativeProcessor);
+        }
 
-            logger.info("Native processing complete: {} samples", processedPcm.length);
+        // The processor returns input + tail samples, delayed by the tail length
+        if (latencyCompensation) {
+            return ShortBuffer.wrap(processedPcm, latencySamples, length);
+        }
+        return ShortBuffer.wrap(processedPcm);
+    }
 
-            // Convert back to byte array and create WAV
-            return createWavFile(processedPcm);
+    /**
+     * Describes each quality tier at the service sample rate: STFT sizes, estimated relative CPU
+     * cost, and the algorithmic latency reported by a processor configured for that tier.
+     */
+    public List<Map<String, Object>> describeQualityTiers() {
+        List<Map<String, Object>> tiers = new ArrayList<>();
+        for (DspQuality quality : DspQuality.values()) {
+            Latency latency = getLatency(quality);
+
+            Map<String, Object> tier = new LinkedHashMap<>();
+            tier.put("name", quality.name().toLowerCase());
+            tier.put("blockMs", quality.blockSamples(SAMPLE_RATE) * 1000 / SAMPLE_RATE);
+            tier.put("intervalMs", quality.intervalSamples(SAMPLE_RATE) * 1000 / SAMPLE_RATE);
+            tier.put("relativeCpuCost", Math.round(quality.relativeCost() * 100) / 100.0);
+            tier.put("inputLatencySamples", latency.inputSamples());
+            tier.put("outputLatencySamples", latency.outputSamples());
+            tier.put("latencyMs", latency.totalMs());
+            tiers.add(tier);
+        }
+        return tiers;
+    }
 
-        } catch (Exception e) {
-            logger.error("Error in audio processing", e);
-            throw new IOException("Failed to process audio: " + e.getMessage(), e);
+    /**
+     * Algorithmic delay of a tier at the service sample rate, as reported by a processor
+     * configured for it. This is the end-to-end delay a live stream sees from the DSP alone.
+     * <p>
+     * Measured once per tier on a processor of its own, so it never waits on the pool; two
+     * callers racing on the first lookup both measure and the first result is kept.
+     */
+    public Latency getLatency(DspQuality quality) {
+        Latency latency = latencies.get(quality);
+        if (latency != null) {
+            return latency;
+        }
+        VoiceDsp processor = createProcessor(quality);
+        try {
+            latency = new Latency(processor.getInputLatency(), processor.getOutputLatency());
+        } finally {
+            processor.dispose();
+        }
+        Latency existing = latencies.putIfAbsent(quality, latency);
+        return existing != null ? existing : latency;
+    }
+
+    public record Latency(int inputSamples, int outputSamples) {
+        public double totalMs() {
+            return (inputSamples + outputSamples) * 1000.0 / SAMPLE_RATE;
         }
     }
 
@@ -115,7 +606,7 @@ public class VoiceProcessingService {
             return new AudioFormatInfo(0, 0, 0, "MP3", true);
         }
 
-        // Try to read as WAV using Java Sound API
+        // Other containers Java Sound understands (AIFF, AU)
         try (ByteArrayInputStream bais = new ByteArrayInputStream(audioData);
              AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(bais)) {
 
@@ -150,47 +641,34 @@ public class VoiceProcessingService {
         return false;
     }
 
-    private short[] extractPCMFromWav(byte[] wavData) throws IOException {
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(wavData);
-             AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(bais)) {
-
-            // Read all data
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = audioInputStream.read(buffer)) != -1) {
-                baos.write(buffer, 0, bytesRead);
-            }
-
-            byte[] pcmBytes = baos.toByteArray();
-            short[] samples = new short[pcmBytes.length / 2];
-            ByteBuffer.wrap(pcmBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
-
-            return samples;
-        } catch (UnsupportedAudioFileException e) {
-            throw new IOException("Invalid WAV format", e);
-        }
-    }
-
-    private short[] convertToTargetFormat(byte[] audioData, AudioFormatInfo formatInfo) throws IOException {
+    private ShortBuffer convertToTargetFormat(byte[] audioData, AudioFormatInfo formatInfo) throws IOException {
         if (formatInfo.isMP3) {
-            return convertMP3ToTargetFormat(audioData);
+            return convertWithFFmpeg(audioData, ".mp3");
         } else {
-            return convertWavToTargetFormat(audioData);
+            return convertToPCM16(audioData);
         }
     }
 
-    private short[] convertMP3ToTargetFormat(byte[] mp3Data) throws IOException {
+    private ShortBuffer convertWithFFmpeg(byte[] audioData, String suffix) throws IOException {
+        if (decoderPool.isAvailable()) {
+            try {
+                return decoderPool.decode(audioData);
+            } catch (IOException e) {
+                // e.g. MP4 with its index at the end, which can't be read from a pipe
+                logger.warn("Pipe decoding failed, retrying from a temporary file: {}", e.getMessage());
+            }
+        }
+
         try {
             // Create temporary files for conversion
-            Path inputPath = Files.createTempFile("input", ".mp3");
+            Path inputPath = Files.createTempFile("input", suffix);
             Path outputPath = Files.createTempFile("output", ".wav");
 
             try {
-                // Write input MP3 data
-                Files.write(inputPath, mp3Data, StandardOpenOption.WRITE);
+                // Write input data
+                Files.write(inputPath, audioData, StandardOpenOption.WRITE);
 
-                // Build FFmpeg command to convert MP3 to 8kHz WAV
+                // Build FFmpeg command to convert to 8kHz WAV
                 FFmpegBuilder builder = new FFmpegBuilder()
                         .setInput(inputPath.toString())
                         .overrideOutputFiles(true)
@@ -203,9 +681,8 @@ public class VoiceProcessingService {
                 FFmpegExecutor executor = new FFmpegExecutor(ffmpeg, ffprobe);
                 executor.createJob(builder).run();
 
-                // Read converted WAV file
-                byte[] wavData = Files.readAllBytes(outputPath);
-                return extractPCMFromWav(wavData);
+                // Read converted WAV file; the samples are a view into it
+                return WavParser.parse(Files.readAllBytes(outputPath)).samples();
 
             } finally {
                 // Clean up temporary files
@@ -214,20 +691,13 @@ public class VoiceProcessingService {
             }
 
         } catch (Exception e) {
-            logger.error("Error converting MP3 to target format", e);
-            throw new IOException("MP3 conversion failed: " + e.getMessage(), e);
+            logger.error("Error converting audio to target format with FFmpeg", e);
+            throw new IOException("FFmpeg conversion failed: " + e.getMessage(), e);
         }
     }
 
-    private short[] convertWavToTargetFormat(byte[] wavData) throws IOException {
-        return convertToPCM16(wavData);
-    }
-
-    private short[] convertToPCM16(byte[] audioData) throws IOException {
-        try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(audioData);
-            AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(bais);
-
+    private ShortBuffer convertToPCM16(byte[] audioData) throws IOException {
+        try (AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(new ByteArrayInputStream(audioData))) {
             AudioFormat sourceFormat = audioInputStream.getFormat();
             logger.info("Source format: {} Hz, {} channels, {} bits",
                     sourceFormat.getSampleRate(), sourceFormat.getChannels(), sourceFormat.getSampleSizeInBits());
@@ -248,71 +718,16 @@ public class VoiceProcessingService {
                 throw new IOException("Conversion from " + sourceFormat + " to " + targetFormat + " not supported");
             }
 
-            AudioInputStream convertedStream = AudioSystem.getAudioInputStream(targetFormat, audioInputStream);
-
-            // Read all data
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = convertedStream.read(buffer)) != -1) {
-                baos.write(buffer, 0, bytesRead);
+            try (AudioInputStream convertedStream = AudioSystem.getAudioInputStream(targetFormat, audioInputStream)) {
+                // Read straight into one array and view it as samples
+                byte[] pcmBytes = convertedStream.readAllBytes();
+                return ByteBuffer.wrap(pcmBytes, 0, pcmBytes.length & ~1)
+                        .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
             }
 
-            byte[] pcmBytes = baos.toByteArray();
-
-            // Convert to short array
-            short[] samples = new short[pcmBytes.length / 2];
-            ByteBuffer.wrap(pcmBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
-
-            convertedStream.close();
-            audioInputStream.close();
-
-            return samples;
-
         } catch (UnsupportedAudioFileException e) {
             logger.error("Unsupported audio format", e);
             throw new IOException("Unsupported audio format. Please upload WAV or MP3.", e);
         }
     }
-
-    private byte[] createWavFile(short[] pcmData) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // WAV header
-        int sampleRate = SAMPLE_RATE;
-        int bitsPerSample = SAMPLE_SIZE;
-        int channels = CHANNELS;
-        int byteRate = sampleRate * channels * bitsPerSample / 8;
-        int blockAlign = channels * bitsPerSample / 8;
-        int dataSize = pcmData.length * 2; // 2 bytes per sample
-        int fileSize = 36 + dataSize;
-
-        // RIFF header
-        dos.writeBytes("RIFF");
-        dos.writeInt(Integer.reverseBytes(fileSize));
-        dos.writeBytes("WAVE");
-
-        // Format chunk
-        dos.writeBytes("fmt ");
-        dos.writeInt(Integer.reverseBytes(16)); // chunk size
-        dos.writeShort(Short.reverseBytes((short) 1)); // PCM format
-        dos.writeShort(Short.reverseBytes((short) channels));
-        dos.writeInt(Integer.reverseBytes(sampleRate));
-        dos.writeInt(Integer.reverseBytes(byteRate));
-        dos.writeShort(Short.reverseBytes((short) blockAlign));
-        dos.writeShort(Short.reverseBytes((short) bitsPerSample));
-
-        // Data chunk
-        dos.writeBytes("data");
-        dos.writeInt(Integer.reverseBytes(dataSize));
-
-        // PCM data
-        for (short sample : pcmData) {
-            dos.writeShort(Short.reverseBytes(sample));
-        }
-
-        dos.close();
-        return baos.toByteArray();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,279 @@
+package com.example.voicechanger.service.esl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live state of the channels FreeSWITCH has up, kept from the ESL event stream so the call
+ * endpoints can answer without a {@code show calls} or {@code uuid_dump} round trip.
+ * <p>
+ * Channels are added on {@code CHANNEL_CREATE}, updated on {@code CHANNEL_ANSWER} and
+ * {@code CHANNEL_BRIDGE}, and removed on {@code CHANNEL_HANGUP}. Events are missed while the ESL
+ * connection is down, so {@link #resync} rebuilds the table from {@code show calls} each time it
+ * connects; that is the only time the registry queries FreeSWITCH.
+ * <p>
+ * Voice changer state is what this application last started, stopped or set on the channel. For
+ * channels found by a resync it is unknown ({@code null}) until someone records it.
+ */
+@Slf4j
+@Component
+public class CallStateRegistry {
+
+    /**
+     * One channel (call leg).
+     */
+    @Getter
+    public static final class CallState {
+        private final String uuid;
+        private final String direction;
+        private final String callerNumber;
+        private final String destinationNumber;
+        // Microseconds since the epoch, as FreeSWITCH stamps them; 0 until answered
+        private volatile long answeredMicros;
+        // The leg on the other side of the bridge, and whether this is the B-leg of it
+        private volatile String bridgedTo;
+        private volatile boolean bLeg;
+        private volatile Boolean voiceChangerActive;
+        // "shift formant base" last set, or null for the module defaults
+        private volatile String voiceChangerParams;
+        @Getter(AccessLevel.NONE)
+        private final long trackedAtNanos = System.nanoTime();
+
+        CallState(String uuid, String direction, String callerNumber, String destinationNumber,
+                  Boolean voiceChangerActive) {
+            this.uuid = uuid;
+            this.direction = direction;
+            this.callerNumber = callerNumber;
+            this.destinationNumber = destinationNumber;
+            this.voiceChangerActive = voiceChangerActive;
+        }
+
+        public boolean isOutbound() {
+            return "outbound".equalsIgnoreCase(direction);
+        }
+
+        public boolean isAnswered() {
+            return answeredMicros > 0;
+        }
+
+        /**
+         * Seconds since the channel was answered, 0 if it has not been.
+         */
+        public long durationSeconds() {
+            long answered = answeredMicros;
+            return answered > 0 ? Math.max(0, (System.currentTimeMillis() * 1000 - answered) / 1_000_000) : 0;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, CallState> calls = new ConcurrentHashMap<>();
+    // Hangups seen while a resync is running, so the snapshot does not bring those channels back
+    private volatile Set<String> hungUpDuringResync;
+
+    public CallStateRegistry(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // ------------------- Events -------------------
+
+    public void onCreate(Map<String, String> headers) {
+        CallState state = track(headers);
+        if (state != null) {
+            log.debug("📇 Tracking channel {} ({}) {} -> {}", state.uuid, state.direction,
+                    state.callerNumber, state.destinationNumber);
+        }
+    }
+
+    public void onAnswer(Map<String, String> headers) {
+        CallState state = track(headers);
+        if (state == null) {
+            return;
+        }
+        long answered = parseLong(headers.get("Caller-Channel-Answered-Time"));
+        if (answered <= 0) {
+            answered = parseLong(headers.get("variable_answer_uepoch"));
+        }
+        state.answeredMicros = answered > 0 ? answered : System.currentTimeMillis() * 1000;
+    }
+
+    public void onBridge(Map<String, String> headers) {
+        String aLegUuid = headers.get("Bridge-A-Unique-ID");
+        String bLegUuid = headers.get("Bridge-B-Unique-ID");
+        if (aLegUuid == null || bLegUuid == null) {
+            return;
+        }
+        CallState aLeg = calls.get(aLegUuid);
+        if (aLeg == null) {
+            // The event describes the A-leg
+            aLeg = track(headers);
+        }
+        if (aLeg != null) {
+            aLeg.bridgedTo = bLegUuid;
+        }
+        CallState bLeg = calls.get(bLegUuid);
+        if (bLeg == null) {
+            bLeg = calls.computeIfAbsent(bLegUuid, uuid -> new CallState(uuid,
+                    headers.get("Other-Leg-Direction"),
+                    headers.get("Other-Leg-Caller-ID-Number"),
+                    headers.get("Other-Leg-Destination-Number"),
+                    false));
+        }
+        bLeg.bridgedTo = aLegUuid;
+        bLeg.bLeg = true;
+    }
+
+    public void onHangup(Map<String, String> headers) {
+        String uuid = headers.get("Unique-ID");
+        if (uuid == null) {
+            return;
+        }
+        calls.remove(uuid);
+        Set<String> hungUp = hungUpDuringResync;
+        if (hungUp != null) {
+            hungUp.add(uuid);
+        }
+    }
+
+    // ------------------- Voice Changer -------------------
+
+    /**
+     * Records that the voice changer was started ({@code active}) or stopped on a channel.
+     */
+    public void markVoiceChanger(String uuid, boolean active) {
+        CallState state = calls.get(uuid);
+        if (state != null) {
+            state.voiceChangerActive = active;
+        }
+    }
+
+    /**
+     * Records the parameters last set on a channel's voice changer.
+     */
+    public void markVoiceChangerParams(String uuid, String params) {
+        CallState state = calls.get(uuid);
+        if (state != null) {
+            state.voiceChangerParams = params;
+        }
+    }
+
+    // ------------------- Queries -------------------
+
+    public Optional<CallState> get(String uuid) {
+        return uuid == null ? Optional.empty() : Optional.ofNullable(calls.get(uuid));
+    }
+
+    /**
+     * B-legs of the bridged calls: one per call, the leg the voice changer runs on.
+     */
+    public List<CallState> bridgedCalls() {
+        List<CallState> bridged = new ArrayList<>();
+        for (CallState state : calls.values()) {
+            if (state.bLeg && state.bridgedTo != null) {
+                bridged.add(state);
+            }
+        }
+        return bridged;
+    }
+
+    public int size() {
+        return calls.size();
+    }
+
+    // ------------------- Resync -------------------
+
+    /**
+     * Replaces the table with what FreeSWITCH has up now, keeping channels tracked from events
+     * since the resync started. Takes one {@code show calls} and one {@code uuid_getvar} per
+     * channel for its answer time; called on every (re)connect, never per request.
+     */
+    public void resync(EslService eslService) {
+        long startedNanos = System.nanoTime();
+        Set<String> hungUp = ConcurrentHashMap.newKeySet();
+        hungUpDuringResync = hungUp;
+        try {
+            String result = eslService.sendCommand("show calls as json");
+            if (result.startsWith("ERROR:") || result.startsWith("-ERR")) {
+                log.warn("⚠️ Call state resync failed: {}", result);
+                return;
+            }
+
+            JsonNode rows = objectMapper.readTree(result).path("rows");
+            Set<String> live = new HashSet<>();
+            for (JsonNode row : rows) {
+                String aLegUuid = row.path("uuid").asText("");
+                String bLegUuid = row.path("b_uuid").asText("");
+                if (!aLegUuid.isEmpty()) {
+                    live.add(aLegUuid);
+                    seed(eslService, hungUp, aLegUuid, row.path("direction").asText(null),
+                            row.path("cid_num").asText(null), row.path("dest").asText(null),
+                            bLegUuid.isEmpty() ? null : bLegUuid, false);
+                }
+                if (!bLegUuid.isEmpty()) {
+                    live.add(bLegUuid);
+                    seed(eslService, hungUp, bLegUuid, row.path("b_direction").asText(null),
+                            row.path("b_cid_num").asText(null), row.path("b_dest").asText(null),
+                            aLegUuid.isEmpty() ? null : aLegUuid, true);
+                }
+            }
+
+            // Channels that hung up while the connection was down
+            calls.values().removeIf(state -> !live.contains(state.uuid) && state.trackedAtNanos - startedNanos < 0);
+            log.info("📇 Call state resynced - {} channels up", calls.size());
+        } catch (Exception e) {
+            log.error("❌ Error resyncing call state: {}", e.getMessage(), e);
+        } finally {
+            hungUpDuringResync = null;
+        }
+    }
+
+    private void seed(EslService eslService, Set<String> hungUp, String uuid, String direction,
+                      String callerNumber, String destinationNumber, String bridgedTo, boolean bLeg) {
+        if (calls.containsKey(uuid)) {
+            return;
+        }
+        CallState state = new CallState(uuid, direction, callerNumber, destinationNumber, null);
+        state.answeredMicros = parseLong(eslService.sendCommand("uuid_getvar " + uuid + " answer_uepoch"));
+        state.bridgedTo = bridgedTo;
+        state.bLeg = bLeg;
+        if (!hungUp.contains(uuid)) {
+            calls.putIfAbsent(uuid, state);
+        }
+    }
+
+    // ------------------- Helpers -------------------
+
+    private CallState track(Map<String, String> headers) {
+        String uuid = headers.get("Unique-ID");
+        if (uuid == null) {
+            return null;
+        }
+        return calls.computeIfAbsent(uuid, id -> new CallState(id,
+                headers.get("Call-Direction"),
+                headers.get("Caller-Caller-ID-Number"),
+                headers.get("Caller-Destination-Number"),
+                false));
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -6,9 +6,11 @@ import org.springframework.stereotype.Service;
 public class CallTransferService {
 
     private final EslService eslService;
+    private final CallStateRegistry callStateRegistry;
 
-    public CallTransferService(EslService eslService) {
+    public CallTransferService(EslService eslService, CallStateRegistry callStateRegistry) {
         this.eslService = eslService;
+        this.callStateRegistry = callStateRegistry;
     }
 
     /**
@@ -32,6 +34,9 @@ public class CallTransferService {
         try {
             String command = String.format("voicechanger start %s", uuid);
             String response = eslService.sendCommand(command);
+            if (isSuccess(response)) {
+                callStateRegistry.markVoiceChanger(uuid, true);
+            }
             System.out.println("🎙️ Voicechanger started for UUID=" + uuid);
             System.out.println("✅ Response: " + response);
         } catch (Exception e) {
@@ -47,10 +52,17 @@ public class CallTransferService {
             String args = String.join(" ", params);
             String command = String.format("voicechanger set %s %s", uuid, args);
             String response = eslService.sendCommand(command);
+            if (isSuccess(response)) {
+                callStateRegistry.markVoiceChangerParams(uuid, args);
+            }
             System.out.println("🎛️ Voicechanger params set for UUID=" + uuid + " [" + args + "]");
             System.out.println("✅ Response: " + response);
         } catch (Exception e) {
             System.err.println("❌ Failed to set voicechanger params: " + e.getMessage());
         }
     }
+
+    private static boolean isSuccess(String response) {
+        return !response.contains("-ERR") && !response.startsWith("ERROR:");
+    }
 }
@@ -19,6 +19,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class EslService {
 
     private final FreeSwitchEventListener freeSwitchEventListener;
+    private final CallStateRegistry callStateRegistry;
     private volatile Client eslClient;
     private final ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor();
     private final AtomicBoolean isConnected = new AtomicBoolean(false);
@@ -43,8 +44,9 @@ public class EslService {
     @Value("${freeswitch.esl.reconnect.max.attempts:10}")
     private int maxReconnectAttempts;
 
-    public EslService(FreeSwitchEventListener freeSwitchEventListener) {
+    public EslService(FreeSwitchEventListener freeSwitchEventListener, CallStateRegistry callStateRegistry) {
         this.freeSwitchEventListener = freeSwitchEventListener;
+        this.callStateRegistry = callStateRegistry;
     }
 
     @PostConstruct
@@ -92,6 +94,9 @@ public class EslService {
             log.info("✅ Successfully connected to FreeSWITCH ESL on {}:{}", host, port);
             log.info("📡 ESL event subscription activated - monitoring all FreeSWITCH events");
 
+            // Pick up channels that came or went while events were not being received
+            callStateRegistry.resync(this);
+
         } catch (Exception e) {
             isConnected.set(false);
             log.error("❌ Failed to connect to FreeSWITCH ESL: {}", e.getMessage());
@@ -14,10 +14,12 @@ import java.util.concurrent.atomic.AtomicLong;
 public class FreeSwitchEventListener implements IEslEventListener {
 
     private final CallHandlerService callHandlerService;
+    private final CallStateRegistry callStateRegistry;
     private final AtomicLong eventCounter = new AtomicLong(0);
 
-    public FreeSwitchEventListener(@Lazy CallHandlerService callHandlerService) {
+    public FreeSwitchEventListener(@Lazy CallHandlerService callHandlerService, CallStateRegistry callStateRegistry) {
         this.callHandlerService = callHandlerService;
+        this.callStateRegistry = callStateRegistry;
     }
 
     @Override
@@ -43,10 +45,21 @@ public class FreeSwitchEventListener implements IEslEventListener {
         Map<String, String> headers = event.getEventHeaders();
 
         switch (eventName) {
-            case "CHANNEL_BRIDGE" -> callHandlerService.handleBridge(headers);
+            case "CHANNEL_CREATE" -> callStateRegistry.onCreate(headers);
+            case "CHANNEL_BRIDGE" -> {
+                // Registry first, so the voice changer started on bridge is recorded against the leg
+                callStateRegistry.onBridge(headers);
+                callHandlerService.handleBridge(headers);
+            }
             case "CHANNEL_PARK" -> callHandlerService.handlePark(headers);
-            case "CHANNEL_ANSWER" -> callHandlerService.handleAnswer(headers);
-            case "CHANNEL_HANGUP" -> callHandlerService.handleHangup(headers);
+            case "CHANNEL_ANSWER" -> {
+                callStateRegistry.onAnswer(headers);
+                callHandlerService.handleAnswer(headers);
+            }
+            case "CHANNEL_HANGUP" -> {
+                callStateRegistry.onHangup(headers);
+                callHandlerService.handleHangup(headers);
+            }
             case "CHANNEL_UNPARK" -> callHandlerService.handleUnpark(headers);
             case "HEARTBEAT" -> {
                 // Silent heartbeat - system healthy
@@ -0,0 +1,162 @@
+package com.example.voicechanger.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AudioOutputFormatTests {
+
+    /**
+     * Files written with {@link AudioOutputFormat#writeHeader} read back through {@link WavParser}
+     * with the format, sizes and samples they were written with.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "WAV, 8000, 1",
+            "WAV, 44100, 2",
+            "WAV_ULAW, 8000, 1",
+            "WAV_ULAW, 16000, 2",
+            "WAV_ALAW, 8000, 1",
+            "WAV_ALAW, 8000, 2"
+    })
+    void headerRoundTrip(AudioOutputFormat format, int sampleRate, int channels) throws Exception {
+        int frames = 1001;
+        short[] samples = signal(frames * channels);
+        byte[] file = write(format, sampleRate, channels, frames, samples);
+
+        ByteBuffer riff = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(file.length - 8, riff.getInt(4), "RIFF size");
+
+        WavData data = WavParser.parse(file);
+        WavFormat parsed = data.format();
+        int bytesPerSample = format.bytesPerSample();
+        assertEquals(expectedTag(format), parsed.formatTag());
+        assertEquals(channels, parsed.channels());
+        assertEquals(sampleRate, parsed.sampleRate());
+        assertEquals(bytesPerSample * 8, parsed.bitsPerSample());
+        assertEquals(bytesPerSample * channels, parsed.blockAlign());
+        assertEquals(sampleRate * bytesPerSample * channels, parsed.byteRate());
+        assertEquals(frames, data.frameCount());
+        assertEquals(frames * channels * bytesPerSample, data.payload().remaining());
+        assertArrayEquals(expectedSamples(format, samples), decode(format, data.payload()));
+
+        WavParser.WavStream stream = WavParser.open(new ByteArrayInputStream(file));
+        assertEquals(parsed, stream.format());
+        assertEquals((long) frames * channels * bytesPerSample, stream.dataLength());
+    }
+
+    /**
+     * {@link AudioOutputFormat#toByteArray} writes the whole mono file in the size it announces.
+     */
+    @ParameterizedTest
+    @EnumSource(AudioOutputFormat.class)
+    void toByteArrayRoundTrip(AudioOutputFormat format) throws Exception {
+        short[] samples = signal(777);
+        byte[] file = format.toByteArray(ShortBuffer.wrap(samples), 8000);
+        assertEquals(format.fileSize(samples.length), file.length);
+
+        ByteBuffer payload;
+        if (format.hasHeader()) {
+            WavData data = WavParser.parse(file);
+            assertEquals(1, data.format().channels());
+            payload = data.payload();
+        } else {
+            payload = ByteBuffer.wrap(file);
+        }
+        assertArrayEquals(expectedSamples(format, samples), decode(format, payload));
+    }
+
+    /**
+     * Headers written before the length is known carry {@code 0xFFFFFFFF} sizes, which the parser
+     * reads as "until the end".
+     */
+    @ParameterizedTest
+    @EnumSource(value = AudioOutputFormat.class, names = {"WAV", "WAV_ULAW", "WAV_ALAW"})
+    void unknownLength(AudioOutputFormat format) throws Exception {
+        short[] samples = signal(500);
+        byte[] file = write(format, 8000, 1, -1, samples);
+
+        ByteBuffer riff = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(-1, riff.getInt(4));
+        assertEquals(-1, riff.getInt(format.headerSize() - 4));
+
+        WavData data = WavParser.parse(file);
+        assertEquals(samples.length, data.frameCount());
+        assertEquals(-1, WavParser.open(new ByteArrayInputStream(file)).dataLength());
+    }
+
+    /**
+     * {@link WavWriter} streams the same bytes {@link AudioOutputFormat#toByteArray} builds.
+     */
+    @Test
+    void wavWriterMatchesToByteArray() throws Exception {
+        short[] samples = signal(20_000);
+        for (AudioOutputFormat format : AudioOutputFormat.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WavWriter writer = new WavWriter(out, 8000, 1, samples.length, format);
+            writer.write(samples, 0, 12_345);
+            writer.write(samples, 12_345, samples.length - 12_345);
+            assertArrayEquals(format.toByteArray(ShortBuffer.wrap(samples), 8000), out.toByteArray(), format.name());
+        }
+    }
+
+    private static byte[] write(AudioOutputFormat format, int sampleRate, int channels, int frames, short[] samples) {
+        ByteBuffer file = ByteBuffer.allocate(format.headerSize() + samples.length * format.bytesPerSample())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        format.writeHeader(file, sampleRate, channels, frames);
+        assertEquals(format.headerSize(), file.position(), "header size");
+        format.encode(ShortBuffer.wrap(samples), file);
+        return file.array();
+    }
+
+    private static short[] signal(int length) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (Math.sin(i * 0.031) * 20_000 + (i % 7) * 100);
+        }
+        return samples;
+    }
+
+    private static int expectedTag(AudioOutputFormat format) {
+        return switch (format) {
+            case WAV -> WavFormat.PCM;
+            case WAV_ULAW, PCMU -> WavFormat.MULAW;
+            case WAV_ALAW, PCMA -> WavFormat.ALAW;
+        };
+    }
+
+    // What decoding the encoded samples should give: the samples, or their G.711 levels
+    private static short[] expectedSamples(AudioOutputFormat format, short[] samples) {
+        short[] expected = new short[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            expected[i] = switch (expectedTag(format)) {
+                case WavFormat.MULAW -> G711.ulawToLinear(G711.linearToUlaw(samples[i]));
+                case WavFormat.ALAW -> G711.alawToLinear(G711.linearToAlaw(samples[i]));
+                default -> samples[i];
+            };
+        }
+        return expected;
+    }
+
+    private static short[] decode(AudioOutputFormat format, ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        short[] samples = new short[bytes.length / format.bytesPerSample()];
+        switch (expectedTag(format)) {
+            case WavFormat.MULAW -> G711.decodeUlaw(bytes, 0, samples, 0, samples.length);
+            case WavFormat.ALAW -> G711.decodeAlaw(bytes, 0, samples, 0, samples.length);
+            default -> ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.voicechanger.audio;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class G711Tests {
+
+    /**
+     * Every code expands to the value the JDK's own G.711 codec gives it.
+     */
+    @Test
+    void decodeMatchesJdkCodec() throws Exception {
+        byte[] codes = new byte[256];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = (byte) i;
+        }
+
+        short[] ulaw = new short[256];
+        G711.decodeUlaw(codes, 0, ulaw, 0, codes.length);
+        assertArrayEquals(jdkDecode(codes, AudioFormat.Encoding.ULAW), ulaw);
+
+        short[] alaw = new short[256];
+        G711.decodeAlaw(codes, 0, alaw, 0, codes.length);
+        assertArrayEquals(jdkDecode(codes, AudioFormat.Encoding.ALAW), alaw);
+    }
+
+    /**
+     * Values from the ITU-T G.711 tables (as computed by the reference {@code g711.c}).
+     */
+    @Test
+    void encodeMatchesReferenceValues() {
+        assertEquals((byte) 0xFF, G711.linearToUlaw((short) 0));
+        assertEquals((byte) 0x7E, G711.linearToUlaw((short) -1));
+        assertEquals((byte) 0x80, G711.linearToUlaw(Short.MAX_VALUE));
+        assertEquals((byte) 0x00, G711.linearToUlaw(Short.MIN_VALUE));
+        assertEquals(32124, G711.ulawToLinear((byte) 0x80));
+        assertEquals(-32124, G711.ulawToLinear((byte) 0x00));
+        assertEquals(0, G711.ulawToLinear((byte) 0x7F));
+
+        assertEquals((byte) 0xD5, G711.linearToAlaw((short) 0));
+        assertEquals((byte) 0x55, G711.linearToAlaw((short) -1));
+        assertEquals((byte) 0xAA, G711.linearToAlaw(Short.MAX_VALUE));
+        assertEquals((byte) 0x2A, G711.linearToAlaw(Short.MIN_VALUE));
+        assertEquals(8, G711.alawToLinear((byte) 0xD5));
+        assertEquals(-8, G711.alawToLinear((byte) 0x55));
+        assertEquals(32256, G711.alawToLinear((byte) 0xAA));
+        assertEquals(-32256, G711.alawToLinear((byte) 0x2A));
+    }
+
+    /**
+     * Each decoded level encodes back to itself, and over the whole 16-bit range the round trip
+     * is monotonic and stays within one top-segment step of the input.
+     */
+    @Test
+    void roundTrip() {
+        for (int code = 0; code < 256; code++) {
+            short ulaw = G711.ulawToLinear((byte) code);
+            assertEquals(ulaw, G711.ulawToLinear(G711.linearToUlaw(ulaw)), "µ-law code " + code);
+            short alaw = G711.alawToLinear((byte) code);
+            assertEquals(alaw, G711.alawToLinear(G711.linearToAlaw(alaw)), "A-law code " + code);
+        }
+
+        int previousUlaw = Integer.MIN_VALUE;
+        int previousAlaw = Integer.MIN_VALUE;
+        for (int sample = Short.MIN_VALUE; sample <= Short.MAX_VALUE; sample++) {
+            short ulaw = G711.ulawToLinear(G711.linearToUlaw((short) sample));
+            short alaw = G711.alawToLinear(G711.linearToAlaw((short) sample));
+            assertTrue(ulaw >= previousUlaw && alaw >= previousAlaw, "not monotonic at " + sample);
+            // Beyond the largest level the error is the clipping, not the step
+            if (Math.abs(sample) <= 32124) {
+                assertTrue(Math.abs(ulaw - sample) <= 1024, "µ-law error at " + sample);
+            }
+            if (Math.abs(sample) <= 32256) {
+                assertTrue(Math.abs(alaw - sample) <= 1024, "A-law error at " + sample);
+            }
+            previousUlaw = ulaw;
+            previousAlaw = alaw;
+        }
+    }
+
+    /**
+     * The bulk encoders agree with the per-sample ones and consume their input.
+     */
+    @Test
+    void bulkEncodeMatchesPerSample() {
+        short[] samples = new short[65536];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i + Short.MIN_VALUE);
+        }
+
+        ShortBuffer input = ShortBuffer.wrap(samples);
+        byte[] ulaw = new byte[samples.length + 3];
+        G711.encodeUlaw(input, ulaw, 3);
+        assertEquals(0, input.remaining());
+
+        input = ShortBuffer.wrap(samples);
+        byte[] alaw = new byte[samples.length + 3];
+        G711.encodeAlaw(input, alaw, 3);
+
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(G711.linearToUlaw(samples[i]), ulaw[i + 3]);
+            assertEquals(G711.linearToAlaw(samples[i]), alaw[i + 3]);
+        }
+    }
+
+    private static short[] jdkDecode(byte[] codes, AudioFormat.Encoding encoding) throws Exception {
+        AudioFormat format = new AudioFormat(encoding, 8000, 8, 1, 1, 8000, false);
+        AudioInputStream encoded = new AudioInputStream(new ByteArrayInputStream(codes), format, codes.length);
+        byte[] pcm = AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, encoded).readAllBytes();
+        short[] samples = new short[pcm.length / 2];
+        ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        return samples;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.voicechanger.audio;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to turn a stereo 16-bit WAV of {@code clipSeconds} into 8 kHz mono: {@link ChannelMixer}
+ * plus {@link Resampler}, against the Java Sound conversion it replaced ({@code javaSound} fails
+ * the trial for rates Java Sound can't convert). {@code resampleOnly} is the allocation-free
+ * resampling step on its own.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ResamplerBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResamplerBenchmark {
+
+    private static final int TARGET_RATE = 8000;
+
+    @Param({"48000", "44100", "16000"})
+    public int sampleRate;
+
+    @Param({"30"})
+    public int clipSeconds;
+
+    private byte[] wav;
+    private float[] mono;
+    private short[] output;
+    private AudioFormat targetFormat;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int frames = clipSeconds * sampleRate;
+        ByteBuffer pcm = ByteBuffer.allocate(frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            double t = (double) i / sampleRate;
+            pcm.putShort((short) (Math.sin(2 * Math.PI * 220 * t) * 8000));
+            pcm.putShort((short) (Math.sin(2 * Math.PI * 330 * t) * 8000));
+        }
+        AudioFormat sourceFormat = new AudioFormat(sampleRate, 16, 2, true, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm.array()), sourceFormat, frames),
+                AudioFileFormat.Type.WAVE, out);
+        wav = out.toByteArray();
+
+        mono = ChannelMixer.toMono(WavParser.parse(wav));
+        output = new short[Resampler.of(sampleRate, TARGET_RATE).outputLength(mono.length)];
+        targetFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, TARGET_RATE, 16, 1, 2, TARGET_RATE, false);
+    }
+
+    @Benchmark
+    public short[] mixAndResample() throws Exception {
+        WavData data = WavParser.parse(wav);
+        return Resampler.of(data.format().sampleRate(), TARGET_RATE).process(ChannelMixer.toMono(data));
+    }
+
+    @Benchmark
+    public short[] resampleOnly() {
+        Resampler.of(sampleRate, TARGET_RATE).process(mono, 0, mono.length, output, 0);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] javaSound() throws Exception {
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wav));
+             AudioInputStream converted = AudioSystem.getAudioInputStream(targetFormat, source)) {
+            return converted.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.voicechanger.audio;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResamplerTests {
+
+    /**
+     * A signal fed to {@link Resampler.Stream} in irregular pieces comes out sample for sample as
+     * {@link Resampler#process(float[])} makes of it whole.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "44100, 8000",
+            "48000, 8000",
+            "11025, 8000",
+            "8000, 16000",
+            "8000, 44100",
+            // More than 1024 phases, so output positions fall between table phases
+            "8001, 8000",
+            "8000, 8000"
+    })
+    void streamMatchesWholeSignal(int inputRate, int outputRate) {
+        Resampler resampler = Resampler.of(inputRate, outputRate);
+        Random random = new Random(inputRate * 31L + outputRate);
+        float[] input = new float[3 * inputRate + 17];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) (Math.sin(i * 0.05) * 9000 + random.nextGaussian() * 2000);
+        }
+        short[] expected = resampler.process(input);
+
+        Resampler.Stream stream = resampler.stream();
+        short[] actual = new short[expected.length];
+        short[] scratch = new short[stream.maxOutput(input.length)];
+        int written = 0;
+        int offset = 0;
+        while (offset < input.length) {
+            // Empty, single-sample, sub-filter and multi-block pieces
+            int length = Math.min(input.length - offset, switch (random.nextInt(4)) {
+                case 0 -> random.nextInt(2);
+                case 1 -> random.nextInt(64);
+                case 2 -> random.nextInt(1000);
+                default -> random.nextInt(10_000);
+            });
+            int count = stream.process(input, offset, length, scratch, 0);
+            System.arraycopy(scratch, 0, actual, written, count);
+            written += count;
+            offset += length;
+        }
+        int count = stream.finish(scratch, 0);
+        System.arraycopy(scratch, 0, actual, written, count);
+        written += count;
+
+        assertEquals(expected.length, written);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * A signal already at the output rate passes through unchanged.
+     */
+    @ParameterizedTest
+    @CsvSource({"8000", "44100"})
+    void sameRateIsIdentity(int rate) {
+        float[] input = new float[1000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) Math.round(Math.sin(i * 0.1) * 10_000);
+        }
+        short[] expected = new short[input.length];
+        for (int i = 0; i < input.length; i++) {
+            expected[i] = (short) input[i];
+        }
+        assertArrayEquals(expected, Resampler.of(rate, rate).process(input));
+    }
+}
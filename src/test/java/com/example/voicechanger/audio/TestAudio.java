@@ -0,0 +1,36 @@
+package com.example.voicechanger.audio;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+
+/**
+ * Signals and decoding shared by the tests.
+ */
+public final class TestAudio {
+
+    private TestAudio() {
+    }
+
+    /**
+     * A voice-like tone with a slow pitch glide, {@code length} samples at {@code sampleRate}.
+     */
+    public static short[] voice(int length, int sampleRate) {
+        short[] clip = new short[length];
+        for (int i = 0; i < length; i++) {
+            double t = (double) i / sampleRate;
+            double f = 120 + 30 * Math.sin(2 * Math.PI * 0.5 * t);
+            clip[i] = (short) (Math.sin(2 * Math.PI * f * t) * 8000);
+        }
+        return clip;
+    }
+
+    /**
+     * The samples of a WAV file.
+     */
+    public static short[] samples(byte[] wav) throws IOException {
+        ShortBuffer samples = WavParser.parse(wav).samples();
+        short[] result = new short[samples.remaining()];
+        samples.get(result);
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.voicechanger.dsp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Real-time factor of the native and pure-Java engines: milliseconds to process
+ * {@code clipSeconds} of 8 kHz audio, so RTF = score / (clipSeconds * 1000). Below 1 is faster than
+ * real time; the inverse is how many live streams one core could carry.
+ * <p>
+ * The JNI backend needs the native library. Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java --add-modules jdk.incubator.vector -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     org.openjdk.jmh.Main EngineRealTimeFactorBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "--enable-preview"})
+public class EngineRealTimeFactorBenchmark {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BUFFER_LENGTH = 8192;
+
+    @Param({"JNI", "JAVA"})
+    public DspBackend backend;
+
+    @Param({"STANDARD", "LOW_LATENCY"})
+    public DspQuality quality;
+
+    @Param({"10"})
+    public int clipSeconds;
+
+    private VoiceDsp processor;
+    private short[] clip;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        processor = new VoiceDspFactory(backend.name()).create();
+        processor.configure(SAMPLE_RATE, BUFFER_LENGTH, quality);
+
+        clip = new short[clipSeconds * SAMPLE_RATE];
+        for (int i = 0; i < clip.length; i++) {
+            // 150 Hz voice-like tone with a few harmonics and a slow glide
+            double t = (double) i / SAMPLE_RATE;
+            double f = 150 + 20 * Math.sin(2 * Math.PI * 0.5 * t);
+            double v = 0;
+            for (int h = 1; h <= 8; h++) {
+                v += Math.sin(2 * Math.PI * f * h * t) / h;
+            }
+            clip[i] = (short) (v * 6000);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processor.dispose();
+    }
+
+    @Benchmark
+    public short[] processClip() {
+        return processor.processAudio(clip, clip.length, 10.0f, 2.0f, 100.0f, SAMPLE_RATE);
+    }
+}
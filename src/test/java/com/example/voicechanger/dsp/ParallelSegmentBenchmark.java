@@ -0,0 +1,69 @@
+package com.example.voicechanger.dsp;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall-clock time to process one long recording with {@link ParallelSegmentProcessor} against
+ * worker count; {@code threads = 1} is the serial baseline (one segment at a time), so the
+ * speed-up for N threads is {@code score(1) / score(N)}.
+ * <p>
+ * Needs the native library. Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ParallelSegmentBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelSegmentBenchmark {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BLOCK_SIZE = 8192;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"300"})
+    public int recordingSeconds;
+
+    private VoiceProcessorPool pool;
+    private ParallelSegmentProcessor processor;
+    private short[] recording;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new VoiceProcessorPool(new VoiceDspFactory("jni"));
+        ReflectionTestUtils.setField(pool, "minSize", threads);
+        ReflectionTestUtils.setField(pool, "maxSize", threads);
+        ReflectionTestUtils.setField(pool, "waitTimeoutMs", 60_000L);
+        processor = new ParallelSegmentProcessor(pool, "auto", 10, 400, threads);
+
+        recording = new short[recordingSeconds * SAMPLE_RATE];
+        for (int i = 0; i < recording.length; i++) {
+            // Voice-like tone with a slow pitch glide
+            double t = (double) i / SAMPLE_RATE;
+            double f = 120 + 30 * Math.sin(2 * Math.PI * 0.2 * t);
+            recording[i] = (short) (Math.sin(2 * Math.PI * f * t) * 8000);
+        }
+        // Create and configure the processors outside the measurement
+        processor.process(recording, SAMPLE_RATE, BLOCK_SIZE, DspQuality.STANDARD, 10.0f, 2.0f, 100.0f);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processor.shutdown();
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public short[] processRecording() {
+        return processor.process(recording, SAMPLE_RATE, BLOCK_SIZE, DspQuality.STANDARD, 10.0f, 2.0f, 100.0f);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.voicechanger.dsp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoiceProcessorPoolTests {
+
+    /**
+     * Processors still checked out at shutdown are disposed when they come back, not kept idle.
+     */
+    @Test
+    void checkinAfterShutdownDisposes() {
+        VoiceProcessorPool pool = new VoiceProcessorPool(new VoiceDspFactory("java"));
+        ReflectionTestUtils.setField(pool, "minSize", 0);
+        ReflectionTestUtils.setField(pool, "maxSize", 2);
+        ReflectionTestUtils.setField(pool, "waitTimeoutMs", 1000L);
+
+        VoiceDsp idle = pool.checkout(8000, 1024, DspQuality.STANDARD);
+        VoiceDsp busy = pool.checkout(8000, 1024, DspQuality.STANDARD);
+        pool.checkin(idle);
+
+        pool.shutdown();
+        assertFalse(idle.isProcessorValid());
+        assertTrue(busy.isProcessorValid());
+
+        pool.checkin(busy);
+        assertFalse(busy.isProcessorValid());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.voicechanger.nativelib;
+
+import com.example.voicechanger.dsp.VoiceDsp;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clips per second for many short clips, each with its own settings:
+ * <ul>
+ *     <li>{@code perClip} - one {@link NativeVoiceProcessor#processAudio} call per clip</li>
+ *     <li>{@code batch} - all clips in one {@link NativeVoiceProcessor#processBatch} JNI call</li>
+ * </ul>
+ * Scores are batches per second; multiply by {@code clipCount} for clips per second.
+ * <p>
+ * Needs the native library. Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main BatchProcessingBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchProcessingBenchmark {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BUFFER_LENGTH = 8192;
+
+    @Param({"64"})
+    public int clipCount;
+
+    @Param({"800", "4000"})
+    public int clipSamples;
+
+    private NativeVoiceProcessor processor;
+    private short[] packed;
+    private int[] offsets;
+    private int[] lengths;
+    private float[] settings;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        processor = new NativeVoiceProcessor();
+        processor.configure(SAMPLE_RATE, BUFFER_LENGTH);
+
+        packed = new short[clipCount * clipSamples];
+        offsets = new int[clipCount];
+        lengths = new int[clipCount];
+        settings = new float[clipCount * 3];
+        for (int c = 0; c < clipCount; c++) {
+            offsets[c] = c * clipSamples;
+            lengths[c] = clipSamples;
+            // Alternate between a female-ish and a deep preset
+            settings[c * 3] = c % 2 == 0 ? 10.0f : -6.0f;
+            settings[c * 3 + 1] = c % 2 == 0 ? 2.0f : -2.0f;
+            settings[c * 3 + 2] = 100.0f;
+            for (int i = 0; i < clipSamples; i++) {
+                double t = (double) i / SAMPLE_RATE;
+                packed[offsets[c] + i] = (short) (Math.sin(2 * Math.PI * (120 + c) * t) * 8000);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processor.dispose();
+    }
+
+    @Benchmark
+    public void perClip(Blackhole blackhole) {
+        short[] clip = new short[clipSamples];
+        for (int c = 0; c < clipCount; c++) {
+            System.arraycopy(packed, offsets[c], clip, 0, clipSamples);
+            blackhole.consume(processor.processAudio(clip, clipSamples,
+                    settings[c * 3], settings[c * 3 + 1], settings[c * 3 + 2], SAMPLE_RATE));
+        }
+    }
+
+    @Benchmark
+    public VoiceDsp.BatchResult batch() {
+        return processor.processBatch(packed, offsets, lengths, settings);
+    }
+}
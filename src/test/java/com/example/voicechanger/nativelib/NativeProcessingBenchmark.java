@@ -0,0 +1,97 @@
+package com.example.voicechanger.nativelib;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JNI transfer paths of {@link NativeVoiceProcessor} for short clips:
+ * <ul>
+ *     <li>{@code legacyCopy} - processAudioNative: pin + two vector copies + new Java array</li>
+ *     <li>{@code regionCopy} - processBlock(short[]): Get/SetShortArrayRegion into the processor's buffer</li>
+ *     <li>{@code criticalInPlace} - processBlockInPlace: critical array, processed in place</li>
+ *     <li>{@code directInPlace} - processBlock(ByteBuffer): direct buffer, processed in place</li>
+ * </ul>
+ * The in-place variants restore the clip before each call so every variant processes the same audio.
+ * <p>
+ * Needs the native library. Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main NativeProcessingBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NativeProcessingBenchmark {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BUFFER_LENGTH = 8192;
+
+    @Param({"160", "1024", "8192"})
+    public int clipSamples;
+
+    private NativeVoiceProcessor processor;
+    private short[] clip;
+    private short[] work;
+    private ShortBuffer directSamples;
+    private ByteBuffer direct;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        processor = new NativeVoiceProcessor();
+        processor.configure(SAMPLE_RATE, BUFFER_LENGTH);
+        processor.beginStream(10.0f, 2.0f, 100.0f);
+
+        clip = new short[clipSamples];
+        for (int i = 0; i < clipSamples; i++) {
+            // 150 Hz voice-like tone with a few harmonics
+            double t = (double) i / SAMPLE_RATE;
+            double v = 0;
+            for (int h = 1; h <= 5; h++) {
+                v += Math.sin(2 * Math.PI * 150 * h * t) / h;
+            }
+            clip[i] = (short) (v * 6000);
+        }
+        work = new short[clipSamples];
+        direct = ByteBuffer.allocateDirect(clipSamples * 2).order(ByteOrder.nativeOrder());
+        directSamples = direct.asShortBuffer();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processor.dispose();
+    }
+
+    @Benchmark
+    public short[] legacyCopy() {
+        return processor.processAudioNative(processor.handle(), clip, clipSamples);
+    }
+
+    @Benchmark
+    public short[] regionCopy() {
+        processor.processBlock(clip, 0, work, 0, clipSamples);
+        return work;
+    }
+
+    @Benchmark
+    public short[] criticalInPlace() {
+        System.arraycopy(clip, 0, work, 0, clipSamples);
+        processor.processBlockInPlace(work, 0, clipSamples);
+        return work;
+    }
+
+    @Benchmark
+    public void directInPlace(Blackhole blackhole) {
+        directSamples.clear();
+        directSamples.put(clip);
+        blackhole.consume(processor.processBlock(direct, clipSamples));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.voicechanger.nativelib;
+
+import com.example.voicechanger.dsp.VoiceDsp;
+import com.example.voicechanger.dto.VoiceProcessRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One clip rendered with several presets:
+ * <ul>
+ *     <li>{@code independent} - each voice a separate stream, as {@link NativeVoiceProcessor#processBatch}
+ *     with every clip pointing at the same input</li>
+ *     <li>{@code shared} - {@link NativeVoiceProcessor#processMulti}, analysing the input once per
+ *     block for all voices</li>
+ * </ul>
+ * Both make a single JNI call, so the difference is the repeated analysis. Scores are clips per
+ * second (each rendered {@code voices} times).
+ * <p>
+ * Needs the native library. Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main SharedAnalysisBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SharedAnalysisBenchmark {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BUFFER_LENGTH = 8192;
+    private static final int CLIP_SAMPLES = 5 * SAMPLE_RATE;
+
+    // The presets of /api/process-presets
+    private static final String[] PRESETS = {"male-to-female", "female-to-male", "robot", "deep", "high-pitch"};
+
+    @Param({"2", "5"})
+    public int voices;
+
+    private NativeVoiceProcessor processor;
+    private short[] clip;
+    private int[] offsets;
+    private int[] lengths;
+    private float[] settings;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        processor = new NativeVoiceProcessor();
+        processor.configure(SAMPLE_RATE, BUFFER_LENGTH);
+
+        clip = new short[CLIP_SAMPLES];
+        for (int i = 0; i < CLIP_SAMPLES; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            // A gliding voiced tone with some harmonics
+            double f0 = 120 + 30 * Math.sin(2 * Math.PI * 0.5 * t);
+            clip[i] = (short) ((Math.sin(2 * Math.PI * f0 * t) + 0.5 * Math.sin(4 * Math.PI * f0 * t)) * 6000);
+        }
+        offsets = new int[voices];
+        lengths = new int[voices];
+        Arrays.fill(lengths, CLIP_SAMPLES);
+        settings = new float[voices * 3];
+        for (int v = 0; v < voices; v++) {
+            VoiceProcessRequest preset = VoiceProcessRequest.preset(PRESETS[v]);
+            settings[v * 3] = preset.getShift();
+            settings[v * 3 + 1] = preset.getFormant();
+            settings[v * 3 + 2] = preset.getBase();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processor.dispose();
+    }
+
+    @Benchmark
+    public VoiceDsp.BatchResult independent() {
+        return processor.processBatch(clip, offsets, lengths, settings);
+    }
+
+    @Benchmark
+    public VoiceDsp.BatchResult shared() {
+        return processor.processMulti(ShortBuffer.wrap(clip), settings);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.audio.FfmpegDecoderPool;
+import com.example.voicechanger.audio.TestAudio;
+import com.example.voicechanger.dsp.DspQuality;
+import com.example.voicechanger.dsp.ParallelSegmentProcessor;
+import com.example.voicechanger.dsp.VoiceDspFactory;
+import com.example.voicechanger.dsp.VoiceProcessorPool;
+import com.example.voicechanger.dto.VoiceProcessRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Live sessions on the Java backend: a clip sent as several chunks comes back sample for sample as
+ * {@code /api/process} returns it whole.
+ */
+class LiveSessionServiceTests {
+
+    private static final int SAMPLE_RATE = 8000;
+    // Deliberately uneven: shorter than a block, one sample, several blocks
+    private static final int[] CHUNKS = {1000, 8192, 1, 5000, 20_000, 333};
+
+    private VoiceProcessorPool pool;
+    private ParallelSegmentProcessor parallelProcessor;
+    private VoiceProcessingService processing;
+    private LiveSessionService sessions;
+
+    @BeforeEach
+    void setUp() {
+        VoiceDspFactory dspFactory = new VoiceDspFactory("java");
+        pool = new VoiceProcessorPool(dspFactory);
+        ReflectionTestUtils.setField(pool, "minSize", 0);
+        ReflectionTestUtils.setField(pool, "maxSize", 2);
+        ReflectionTestUtils.setField(pool, "waitTimeoutMs", 5000L);
+        // Serial, as /api/process handles clips too short to split
+        parallelProcessor = new ParallelSegmentProcessor(pool, "off", 10, 400, 1);
+        processing = new VoiceProcessingService(pool, dspFactory, parallelProcessor, new FfmpegDecoderPool());
+        ReflectionTestUtils.setField(processing, "blockSize", 8192);
+        ReflectionTestUtils.setField(processing, "latencyCompensation", true);
+
+        sessions = new LiveSessionService(processing);
+        ReflectionTestUtils.setField(sessions, "maxSessions", 4);
+        ReflectionTestUtils.setField(sessions, "idleTimeoutSeconds", 30L);
+        ReflectionTestUtils.setField(sessions, "latencyCompensation", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessions.shutdown();
+        parallelProcessor.shutdown();
+        pool.shutdown();
+    }
+
+    @ParameterizedTest
+    @EnumSource(DspQuality.class)
+    void chunkedSessionMatchesWholeClip(DspQuality quality) throws IOException {
+        short[] clip = TestAudio.voice(Arrays.stream(CHUNKS).sum(), SAMPLE_RATE);
+        VoiceProcessRequest request = new VoiceProcessRequest(10, 2, 100);
+        request.setQuality(quality);
+        short[] whole = TestAudio.samples(processing.processDecoded(ShortBuffer.wrap(clip), request));
+
+        String id = sessions.open(request, AudioOutputFormat.WAV).getId();
+        short[] chunked = new short[0];
+        int offset = 0;
+        for (int length : CHUNKS) {
+            byte[] response = sessions.process(id, ShortBuffer.wrap(clip, offset, length), null).orElseThrow();
+            chunked = append(chunked, TestAudio.samples(response));
+            offset += length;
+        }
+        chunked = append(chunked, TestAudio.samples(sessions.close(id).orElseThrow()));
+
+        assertArrayEquals(whole, chunked);
+    }
+
+    private static short[] append(short[] head, short[] tail) {
+        short[] result = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, result, head.length, tail.length);
+        return result;
+    }
+}
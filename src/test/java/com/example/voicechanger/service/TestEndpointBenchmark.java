@@ -0,0 +1,87 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.audio.FfmpegDecoderPool;
+import com.example.voicechanger.dsp.ParallelSegmentProcessor;
+import com.example.voicechanger.dsp.VoiceDspFactory;
+import com.example.voicechanger.dsp.VoiceProcessorPool;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ShortBuffer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second through the {@code /voicechanger/test-upload} rendering, with the
+ * in-process engine ({@code native}) against the old one that spawns SoX on temporary files
+ * ({@code sox}), from {@code threads} concurrent callers. The HTTP layer and the result cache are
+ * left out, so the difference is the rendering alone.
+ * <p>
+ * The {@code sox} runs need {@code sox} on the PATH, and all runs need {@code ffmpeg} (the service
+ * checks for it at start-up) and the native library unless run with {@code -p backend=java}. Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java --add-modules jdk.incubator.vector -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     org.openjdk.jmh.Main TestEndpointBenchmark -t 4
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class TestEndpointBenchmark {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    @Param({"native", "sox"})
+    public String engine;
+
+    @Param({"jni"})
+    public String backend;
+
+    @Param({"3"})
+    public int clipSeconds;
+
+    private VoiceProcessorPool pool;
+    private ParallelSegmentProcessor parallelProcessor;
+    private VoiceChangerService service;
+    private byte[] upload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        VoiceDspFactory dspFactory = new VoiceDspFactory(backend);
+        pool = new VoiceProcessorPool(dspFactory);
+        ReflectionTestUtils.setField(pool, "minSize", 1);
+        ReflectionTestUtils.setField(pool, "maxSize", Runtime.getRuntime().availableProcessors());
+        ReflectionTestUtils.setField(pool, "waitTimeoutMs", 60_000L);
+        parallelProcessor = new ParallelSegmentProcessor(pool, "auto", 10, 400, 0);
+        VoiceProcessingService processing = new VoiceProcessingService(pool, dspFactory, parallelProcessor,
+                new FfmpegDecoderPool());
+        ReflectionTestUtils.setField(processing, "blockSize", 8192);
+        ReflectionTestUtils.setField(processing, "latencyCompensation", true);
+        service = new VoiceChangerService(null, null, processing, engine);
+
+        short[] clip = new short[clipSeconds * SAMPLE_RATE];
+        for (int i = 0; i < clip.length; i++) {
+            // Voice-like tone with a slow pitch glide
+            double t = (double) i / SAMPLE_RATE;
+            double f = 120 + 30 * Math.sin(2 * Math.PI * 0.5 * t);
+            clip[i] = (short) (Math.sin(2 * Math.PI * f * t) * 8000);
+        }
+        upload = AudioOutputFormat.WAV.toByteArray(ShortBuffer.wrap(clip), SAMPLE_RATE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parallelProcessor.shutdown();
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public byte[] renderTestUpload() throws Exception {
+        return service.renderTestAudio(upload, Optional.empty(), "female", AudioOutputFormat.WAV);
+    }
+}
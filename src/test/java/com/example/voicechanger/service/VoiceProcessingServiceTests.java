@@ -0,0 +1,179 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.audio.AudioOutputFormat;
+import com.example.voicechanger.audio.FfmpegDecoderPool;
+import com.example.voicechanger.audio.TestAudio;
+import com.example.voicechanger.dsp.DspQuality;
+import com.example.voicechanger.dsp.ParallelSegmentProcessor;
+import com.example.voicechanger.dsp.VoiceDspFactory;
+import com.example.voicechanger.dsp.VoiceProcessorPool;
+import com.example.voicechanger.dto.VoiceProcessRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Streaming uploads on the Java backend: a WAV file read a few bytes at a time through
+ * {@code processStream} comes back byte for byte as {@code processAudio} returns it whole, and
+ * uploads longer or shorter than they should be are handled without buffering them.
+ */
+class VoiceProcessingServiceTests {
+
+    private VoiceProcessorPool pool;
+    private ParallelSegmentProcessor parallelProcessor;
+    private VoiceProcessingService processing;
+
+    @BeforeEach
+    void setUp() {
+        VoiceDspFactory dspFactory = new VoiceDspFactory("java");
+        pool = new VoiceProcessorPool(dspFactory);
+        ReflectionTestUtils.setField(pool, "minSize", 0);
+        ReflectionTestUtils.setField(pool, "maxSize", 2);
+        ReflectionTestUtils.setField(pool, "waitTimeoutMs", 5000L);
+        // Serial, as processStream always is
+        parallelProcessor = new ParallelSegmentProcessor(pool, "off", 10, 400, 1);
+        processing = new VoiceProcessingService(pool, dspFactory, parallelProcessor, new FfmpegDecoderPool());
+        ReflectionTestUtils.setField(processing, "blockSize", 8192);
+        ReflectionTestUtils.setField(processing, "latencyCompensation", true);
+        ReflectionTestUtils.setField(processing, "maxStreamSeconds", 60L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        parallelProcessor.shutdown();
+        pool.shutdown();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "8000, 1, LOW_LATENCY",
+            "8000, 2, STANDARD",
+            "16000, 1, HIGH",
+            "44100, 2, ECONOMY",
+            "11025, 1, STANDARD"
+    })
+    void streamMatchesWholeUpload(int sampleRate, int channels, DspQuality quality) throws IOException {
+        byte[] wav = wav(sampleRate, channels, 3 * sampleRate + 123);
+        VoiceProcessRequest request = new VoiceProcessRequest(10, 2, 100);
+        request.setQuality(quality);
+        byte[] whole = processing.processAudio(wav, request);
+
+        VoiceProcessingService.ProcessedStream stream = processing.processStream(
+                new TrickleInputStream(wav, sampleRate), Optional.empty(), wav.length, request, AudioOutputFormat.WAV);
+
+        assertEquals(whole.length, stream.size());
+        assertArrayEquals(whole, bytes(stream));
+    }
+
+    /**
+     * A header declaring more audio than the limit is rejected before anything is allocated for it,
+     * whether or not the size fits an {@code int}.
+     */
+    @ParameterizedTest
+    @CsvSource({"400000000", "4294967280"})
+    void declaredLengthOverLimitIsRejected(long dataLength) {
+        byte[] wav = wav(8000, 1, 0);
+        ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN).putInt(40, (int) dataLength);
+
+        assertThrows(IllegalArgumentException.class, () -> processing.processStream(new ByteArrayInputStream(wav),
+                Optional.empty(), wav.length, new VoiceProcessRequest(), AudioOutputFormat.WAV));
+    }
+
+    /**
+     * Without a declared length, the body fails once it passes the limit.
+     */
+    @Test
+    void undeclaredLengthOverLimitFails() throws IOException {
+        ReflectionTestUtils.setField(processing, "maxStreamSeconds", 1L);
+        byte[] wav = wav(8000, 1, 8000 + 8192);
+        ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN).putInt(4, -1).putInt(40, -1);
+
+        VoiceProcessingService.ProcessedStream stream = processing.processStream(new ByteArrayInputStream(wav),
+                Optional.empty(), -1, new VoiceProcessRequest(), AudioOutputFormat.WAV);
+
+        assertEquals(-1, stream.size());
+        RuntimeException e = assertThrows(RuntimeException.class, () -> bytes(stream));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    /**
+     * A body shorter than its header declares is padded with silence to the announced size.
+     */
+    @Test
+    void shortBodyIsPadded() throws IOException {
+        byte[] declared = wav(8000, 1, 40_000);
+        byte[] wav = Arrays.copyOf(declared, declared.length - 30_000 * 2);
+
+        VoiceProcessingService.ProcessedStream stream = processing.processStream(new ByteArrayInputStream(wav),
+                Optional.empty(), wav.length, new VoiceProcessRequest(), AudioOutputFormat.WAV);
+        byte[] output = bytes(stream);
+
+        assertEquals(stream.size(), output.length);
+        short[] samples = TestAudio.samples(output);
+        assertEquals(40_000, samples.length);
+        for (int i = 15_000; i < samples.length; i++) {
+            assertEquals(0, samples[i], "sample " + i);
+        }
+    }
+
+    private static byte[] bytes(VoiceProcessingService.ProcessedStream stream) {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        for (DataBuffer buffer : stream.body().collectList().block()) {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            DataBufferUtils.release(buffer);
+            streamed.writeBytes(bytes);
+        }
+        return streamed.toByteArray();
+    }
+
+    private static byte[] wav(int sampleRate, int channels, int frames) {
+        ByteBuffer file = ByteBuffer.allocate(AudioOutputFormat.WAV.headerSize() + frames * channels * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        AudioOutputFormat.WAV.writeHeader(file, sampleRate, channels, frames);
+        for (int i = 0; i < frames; i++) {
+            // Voice-like tone with a slow pitch glide, a little different on each channel
+            double t = (double) i / sampleRate;
+            double f = 120 + 30 * Math.sin(2 * Math.PI * 0.5 * t);
+            for (int channel = 0; channel < channels; channel++) {
+                file.putShort((short) (Math.sin(2 * Math.PI * f * t + channel) * 8000));
+            }
+        }
+        return file.array();
+    }
+
+    // Hands out at most a few bytes per read, so headers and samples arrive split at odd offsets
+    private static final class TrickleInputStream extends FilterInputStream {
+        private final Random random;
+
+        TrickleInputStream(byte[] bytes, long seed) {
+            super(new ByteArrayInputStream(bytes));
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 1 + random.nextInt(random.nextBoolean() ? 7 : 5000)));
+        }
+    }
+}